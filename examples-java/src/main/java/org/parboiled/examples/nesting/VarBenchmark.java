@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.nesting;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.support.IntVar;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.Var;
+
+/**
+ * Simple benchmark comparing the frame management overhead of a recursive grammar using a regular {@link Var}
+ * with the same grammar using an {@link IntVar}.
+ * Both parsers count the elements of every (arbitrarily nested) list, so each list entered opens a new var frame.
+ */
+public class VarBenchmark {
+
+    public static class BoxedParser extends BaseParser<Integer> {
+
+        public Rule Input() {
+            return Sequence(List(), EOI);
+        }
+
+        @SuppressWarnings({"InfiniteRecursion"})
+        public Rule List() {
+            Var<Integer> count = new Var<Integer>(0);
+            return Sequence(
+                    '[',
+                    ZeroOrMore(FirstOf(List(), Sequence('x', push(1))), count.set(count.get() + pop())),
+                    ']',
+                    push(count.get())
+            );
+        }
+    }
+
+    public static class PrimitiveParser extends BaseParser<Integer> {
+
+        public Rule Input() {
+            return Sequence(List(), EOI);
+        }
+
+        @SuppressWarnings({"InfiniteRecursion"})
+        public Rule List() {
+            IntVar count = new IntVar();
+            return Sequence(
+                    '[',
+                    ZeroOrMore(FirstOf(List(), Sequence('x', push(1))), count.add(pop())),
+                    ']',
+                    push(count.getInt())
+            );
+        }
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String input = createInput(6, 5);
+
+        Rule boxed = Parboiled.createParser(BoxedParser.class).Input();
+        Rule primitive = Parboiled.createParser(PrimitiveParser.class).Input();
+
+        System.out.printf("Input length: %s characters\n", input.length());
+        for (int round = 1; round <= 3; round++) { // the first rounds serve as JIT warm-up
+            System.out.printf("Round %s:\n", round);
+            time("Var<Integer>", boxed, input, iterations);
+            time("IntVar", primitive, input, iterations);
+        }
+    }
+
+    private static void time(String label, Rule rule, String input, int iterations) {
+        long start = System.nanoTime();
+        ParsingResult<Integer> result = null;
+        for (int i = 0; i < iterations; i++) {
+            result = new BasicParseRunner<Integer>(rule).run(input);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.printf("    %-12s: %5s ms for %s runs (%s leaves counted)\n", label, millis, iterations,
+                result != null ? result.resultValue : null);
+    }
+
+    // creates a list nested to the given depth, every list containing the given number of sub lists or leaves
+    static String createInput(int depth, int width) {
+        StringBuilder sb = new StringBuilder();
+        appendList(sb, depth, width);
+        return sb.toString();
+    }
+
+    private static void appendList(StringBuilder sb, int depth, int width) {
+        sb.append('[');
+        for (int i = 0; i < width; i++) {
+            if (depth > 1) {
+                appendList(sb, depth - 1, width);
+            } else {
+                sb.append('x');
+            }
+        }
+        sb.append(']');
+    }
+}
@@ -17,16 +17,24 @@
 package org.parboiled.examples.calculators;
 
 import org.parboiled.Parboiled;
+import org.parboiled.buffers.DefaultInputBuffer;
 import org.parboiled.common.StringBuilderSink;
+import org.parboiled.parserunners.TraceRenderer;
 import org.parboiled.support.ParsingResult;
 import org.testng.annotations.Test;
 import org.parboiled.parserunners.TracingParseRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
 import static org.parboiled.common.Predicates.*;
 import static org.parboiled.errors.ErrorUtils.printParseErrors;
 import static org.parboiled.support.Filters.rules;
 import static org.parboiled.support.Filters.rulesBelow;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TracingParseRunnerTest {
 
@@ -88,4 +96,69 @@ public class TracingParseRunnerTest {
                 "..(7)../Parens/')', failed, cursor at 1:7 after \"2*(4+5\"\n" +
                 "..(7)../Parens, failed, cursor at 1:7 after \"2*(4+5\"\n");
     }
+
+    @Test
+    public void testBinaryTraceOutput() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        String input = "2*(4+5\n*3-)";
+
+        StringBuilderSink log = new StringBuilderSink();
+        new TracingParseRunner<Integer>(parser.InputLine())
+                .withFilter(not(rulesBelow(parser.Digits())))
+                .withLog(log)
+                .run(input);
+
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        new TracingParseRunner<Integer>(parser.InputLine())
+                .withFilter(not(rulesBelow(parser.Digits())))
+                .withTraceOutput(trace)
+                .withTraceBufferSize(16) // small enough to make the parsing thread wait for the writer thread
+                .run(input);
+
+        StringBuilderSink rendered = new StringBuilderSink();
+        TraceRenderer.render(new ByteArrayInputStream(trace.toByteArray()),
+                new DefaultInputBuffer(input.toCharArray()), rendered);
+        assertEquals(rendered.toString(), log.toString());
+    }
+
+    @Test
+    public void testLongLabelTraceOutput() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < 40000; i++) label.append('\u00e4'); // two bytes each in UTF-8
+        String input = "1+2";
+
+        StringBuilderSink log = new StringBuilderSink();
+        new TracingParseRunner<Integer>(parser.InputLine().label(label.toString())).withLog(log).run(input);
+
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        new TracingParseRunner<Integer>(parser.InputLine().label(label.toString())).withTraceOutput(trace).run(input);
+
+        StringBuilderSink rendered = new StringBuilderSink();
+        TraceRenderer.render(new ByteArrayInputStream(trace.toByteArray()),
+                new DefaultInputBuffer(input.toCharArray()), rendered);
+        assertTrue(rendered.toString().contains(label));
+        assertEquals(rendered.toString(), log.toString());
+    }
+
+    @Test(timeOut = 10000)
+    public void testFailingTraceOutput() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        StringBuilder input = new StringBuilder("1");
+        for (int i = 0; i < 10000; i++) input.append("+1");
+
+        TracingParseRunner<Integer> runner = new TracingParseRunner<Integer>(parser.InputLine())
+                .withTraceOutput(new OutputStream() {
+                    public void write(int b) {
+                        throw new UnsupportedOperationException();
+                    }
+                })
+                .withTraceBufferSize(16);
+        try {
+            runner.run(input.toString());
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+/**
+ * A MatchGuard enforces the limits and the cancellation of a parsing run (see
+ * {@link org.parboiled.parserunners.ParseLimits}) on all matcher invocations of the run. Matchers running parts of the
+ * rule graph on root contexts of their own, e.g. on other threads, wrap the MatchHandlers of these contexts with the
+ * guard of the run (see {@link MatcherContext#getMatchGuard()}), so that their matcher invocations count towards the
+ * limits of the run as well.
+ */
+public interface MatchGuard {
+
+    /**
+     * Wraps the given MatchHandler with one checking the limits of the run before every matcher invocation.
+     * The returned handler must only be used by one thread at a time, but the handlers of several threads can share
+     * the same guard.
+     *
+     * @param handler the MatchHandler to wrap
+     * @param level   the level the root context using the handler would have in the context chain of the run
+     * @return the wrapping handler
+     */
+    MatchHandler guard(MatchHandler handler, int level);
+}
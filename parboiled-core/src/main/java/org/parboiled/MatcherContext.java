@@ -27,9 +27,8 @@ import org.parboiled.matchers.*;
 import org.parboiled.parserunners.RecoveringParseRunner;
 import org.parboiled.support.*;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 
 import static org.parboiled.errors.ErrorUtils.printParseError;
 import static org.parboiled.common.Preconditions.*;
@@ -50,7 +49,9 @@ import static org.parboiled.matchers.MatcherUtils.unwrap;
  * parse tree nodes, keeping track of input locations and error recovery.</p>
  * <p>At each point during the parsing process the matchers and action expressions have access to the current
  * MatcherContext and all "open" parent MatcherContexts through the {@link #getParent()} chain.</p>
- * <p>For performance reasons subcontext instances are reused instead of being recreated. If a MatcherContext instance
+ * <p>For performance reasons subcontext instances are reused instead of being recreated: a parsing run keeps exactly
+ * one MatcherContext per nesting level in a flat array, which is shared by all contexts of the run, so entering and
+ * leaving a level never allocates once the level has been reached for the first time. If a MatcherContext instance
  * returns null on a {@link #getMatcher()} call it has been retired (is invalid) and is waiting to be reinitialized
  * with a new Matcher by its parent</p>
  */
@@ -63,9 +64,11 @@ public class MatcherContext<V> implements Context<V> {
     private final MatcherContext<V> parent;
     private final int level;
     private final boolean fastStringMatching;
-    private final Set<MatcherPosition> memoizedMismatches;
+    private final MismatchMemo mismatchMemo;
+    private final PartialMatchHandler partialMatchHandler;
+    private final Frames frames;
 
-    private MatcherContext<V> subContext;
+    private int predicateDepth; // the number of Test/TestNot matchers in the context chain up to (and including) this
     private int startIndex;
     private int currentIndex;
     private char currentChar;
@@ -77,6 +80,7 @@ public class MatcherContext<V> implements Context<V> {
     private boolean hasError;
     private boolean nodeSuppressed;
     private boolean inErrorRecovery;
+    private boolean committed; // FirstOf contexts only: whether the current alternative has passed a COMMIT
 
     /**
      * Initializes a new root MatcherContext.
@@ -93,21 +97,42 @@ public class MatcherContext<V> implements Context<V> {
      *                           reporting and recovery, which relies on character level matches.
      *                           Therefore the {@link org.parboiled.parserunners.ReportingParseRunner} and {@link org.parboiled.parserunners.RecoveringParseRunner}
      *                           implementations only enable fast string matching during their basic first parsing run
-     *                           and disable it once the input has proven to contain errors.</p>
+     *                           and disable it once the input has proven to contain errors, unless the error analysis
+     *                           run supplies a {@link PartialMatchHandler}.</p>
      */
     public MatcherContext(InputBuffer inputBuffer, ValueStack<V> valueStack, List<ParseError> parseErrors,
                           MatchHandler matchHandler, Matcher matcher, boolean fastStringMatching) {
+        this(inputBuffer, valueStack, parseErrors, matchHandler, matcher, fastStringMatching, null);
+    }
+
+    /**
+     * Initializes a new root MatcherContext.
+     *
+     * @param inputBuffer         the InputBuffer for the parsing run
+     * @param valueStack          the ValueStack instance to use for the parsing run
+     * @param parseErrors         the parse error list to create ParseError objects in
+     * @param matchHandler        the MatcherHandler to use for the parsing run
+     * @param matcher             the root matcher
+     * @param fastStringMatching  whether to enable fast string matching
+     * @param partialMatchHandler the PartialMatchHandler deciding which (partial) string matches have to be rerun on
+     *                            the character level when fast string matching is enabled, can be null
+     */
+    public MatcherContext(InputBuffer inputBuffer, ValueStack<V> valueStack, List<ParseError> parseErrors,
+                          MatchHandler matchHandler, Matcher matcher, boolean fastStringMatching,
+                          PartialMatchHandler partialMatchHandler) {
         this(checkArgNotNull(inputBuffer, "inputBuffer"), checkArgNotNull(valueStack, "valueStack"),
                 checkArgNotNull(parseErrors, "parseErrors"), checkArgNotNull(matchHandler, "matchHandler"),
-                null, 0, fastStringMatching,  new HashSet<MatcherPosition>());
+                null, 0, fastStringMatching, new MismatchMemo(), partialMatchHandler, new Frames());
         this.currentChar = inputBuffer.charAt(0);
         this.matcher = ProxyMatcher.unwrap(checkArgNotNull(matcher, "matcher"));
         this.nodeSuppressed = matcher.isNodeSuppressed();
+        this.predicateDepth = isPredicate(this.matcher) ? 1 : 0;
+        frames.contexts[0] = this;
     }
 
     private MatcherContext(InputBuffer inputBuffer, ValueStack<V> valueStack, List<ParseError> parseErrors,
                            MatchHandler matchHandler, MatcherContext<V> parent, int level, boolean fastStringMatching,
-                           Set<MatcherPosition> memoizedMismatches) {
+                           MismatchMemo mismatchMemo, PartialMatchHandler partialMatchHandler, Frames frames) {
         this.inputBuffer = inputBuffer;
         this.valueStack = valueStack;
         this.parseErrors = parseErrors;
@@ -115,7 +140,9 @@ public class MatcherContext<V> implements Context<V> {
         this.parent = parent;
         this.level = level;
         this.fastStringMatching = fastStringMatching;
-        this.memoizedMismatches = memoizedMismatches;
+        this.mismatchMemo = mismatchMemo;
+        this.partialMatchHandler = partialMatchHandler;
+        this.frames = frames;
     }
 
     @Override
@@ -169,6 +196,27 @@ public class MatcherContext<V> implements Context<V> {
         return fastStringMatching;
     }
 
+    /**
+     * Determines whether a matcher that matched several characters at once (under fast string matching) has to be
+     * rerun on the character level, because the current parsing run is interested in the input region it touched.
+     *
+     * @param matchEndIndex the end index of the match or -1, if the matcher failed
+     * @param furthestIndex the index after the last input character matched by any of the matchers sub matchers
+     * @return true if the matcher has to fall back to char by char matching
+     */
+    public boolean requiresCharLevelMatching(int matchEndIndex, int furthestIndex) {
+        return partialMatchHandler != null &&
+                partialMatchHandler.requiresCharLevelMatching(currentIndex, matchEndIndex, furthestIndex);
+    }
+
+    /**
+     * @return true if the parsing run is interested in (partial) string matches, in which case fast matchers should
+     *         call {@link #requiresCharLevelMatching(int, int)}
+     */
+    public boolean hasPartialMatchHandler() {
+        return partialMatchHandler != null;
+    }
+
     public ImmutableLinkedList<Node<V>> getSubNodes() {
         return matcher.isNodeSkipped() ? subNodes : getSubNodes(subNodes, ImmutableLinkedList.<Node<V>>nil());
     }
@@ -188,8 +236,11 @@ public class MatcherContext<V> implements Context<V> {
     }
 
     public boolean inPredicate() {
-        return matcher instanceof TestMatcher || matcher instanceof TestNotMatcher ||
-                parent != null && parent.inPredicate();
+        return predicateDepth > 0;
+    }
+
+    private static boolean isPredicate(Matcher matcher) {
+        return matcher instanceof TestMatcher || matcher instanceof TestNotMatcher;
     }
 
     public boolean inErrorRecovery() {
@@ -206,7 +257,7 @@ public class MatcherContext<V> implements Context<V> {
 
     public String getMatch() {
         checkActionContext();
-        MatcherContext prevContext = subContext;
+        MatcherContext prevContext = frames.contexts[level + 1];
         if (hasError) {
             Node prevNode = prevContext.node;
             return prevNode != null ? ParseTreeUtils.getNodeText(prevNode, inputBuffer) : "";
@@ -216,8 +267,9 @@ public class MatcherContext<V> implements Context<V> {
 
     public char getFirstMatchChar() {
         checkActionContext();
-        int ix = subContext.startIndex;
-        if (subContext.currentIndex <= ix) {
+        MatcherContext prevContext = frames.contexts[level + 1];
+        int ix = prevContext.startIndex;
+        if (prevContext.currentIndex <= ix) {
             throw new GrammarException("getFirstMatchChar called but previous rule did not match anything");
         }
         return inputBuffer.charAt(ix);
@@ -225,17 +277,18 @@ public class MatcherContext<V> implements Context<V> {
 
     public int getMatchStartIndex() {
         checkActionContext();
-        return subContext.startIndex;
+        return frames.contexts[level + 1].startIndex;
     }
 
     public int getMatchEndIndex() {
         checkActionContext();
-        return subContext.currentIndex;
+        return frames.contexts[level + 1].currentIndex;
     }
 
     public int getMatchLength() {
         checkActionContext();
-        return subContext.currentIndex - subContext.getStartIndex();
+        MatcherContext prevContext = frames.contexts[level + 1];
+        return prevContext.currentIndex - prevContext.startIndex;
     }
 
     public Position getPosition() {
@@ -244,13 +297,14 @@ public class MatcherContext<V> implements Context<V> {
 
     public IndexRange getMatchRange() {
         checkActionContext();
-        return new IndexRange(subContext.startIndex, subContext.currentIndex);
+        MatcherContext prevContext = frames.contexts[level + 1];
+        return new IndexRange(prevContext.startIndex, prevContext.currentIndex);
     }
 
     private void checkActionContext() {
         // make sure all the constraints are met
         Checks.ensure(unwrap(matcher) instanceof SequenceMatcher && intTag > 0 &&
-                subContext.matcher instanceof ActionMatcher,
+                frames.contexts[level + 1].matcher instanceof ActionMatcher,
                 "Illegal call to getMatch(), getMatchStartIndex(), getMatchEndIndex() or getMatchRange(), " +
                         "only valid in Sequence rule actions that are not in first position");
     }
@@ -263,6 +317,7 @@ public class MatcherContext<V> implements Context<V> {
 
     public void setMatcher(Matcher matcher) {
         this.matcher = matcher;
+        this.predicateDepth = (parent != null ? parent.predicateDepth : 0) + (isPredicate(matcher) ? 1 : 0);
     }
 
     public void setStartIndex(int startIndex) {
@@ -304,12 +359,109 @@ public class MatcherContext<V> implements Context<V> {
         }
     }
 
+    /**
+     * Commits the innermost enclosing FirstOf rule to its current alternative, i.e. marks its context as
+     * {@link #isCommitted() committed}. Does not reach beyond the innermost enclosing predicate.
+     * Also drops the mismatch memoizations of the input windows the parser cannot backtrack to anymore (see
+     * {@link MismatchMemo#commit(int)}), i.e. the ones before the lowest index any other enclosing FirstOf, Optional,
+     * ZeroOrMore, OneOrMore or predicate rule could still resume matching at.
+     */
+    public void commit() {
+        MatcherContext<V> firstOf = null;
+        for (MatcherContext<V> context = parent; context != null; context = context.parent) {
+            if (unwrap(context.matcher) instanceof FirstOfMatcher) {
+                firstOf = context;
+                firstOf.committed = true;
+                break;
+            }
+            if (isPredicate(context.matcher)) break;
+        }
+        int backtrackIndex = currentIndex;
+        for (MatcherContext<V> context = parent; context != null; context = context.parent) {
+            // a sequence never resumes at an earlier index, all other composite rules might, at the index they
+            // are currently at (which is the start of their current child)
+            if (context != firstOf && !(unwrap(context.matcher) instanceof SequenceMatcher)) {
+                backtrackIndex = Math.min(backtrackIndex, context.currentIndex);
+            }
+        }
+        mismatchMemo.commit(backtrackIndex);
+    }
+
+    /**
+     * @return true if the current alternative of the FirstOf rule of this context has passed a
+     * {@link org.parboiled.matchers.CommitMatcher}, in which case no further alternatives must be tried
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
     public Boolean hasMismatched() {
-        return memoizedMismatches.contains(MatcherPosition.at(matcher, currentIndex));
+        return mismatchMemo.contains(matcher, currentIndex);
     }
 
     public void memoizeMismatch() {
-    	memoizedMismatches.add(MatcherPosition.at(matcher, currentIndex));
+        mismatchMemo.add(matcher, currentIndex);
+    }
+
+    /**
+     * @return the guard enforcing the limits of the current parsing run or null, if the run is not limited
+     */
+    public MatchGuard getMatchGuard() {
+        return frames.matchGuard;
+    }
+
+    /**
+     * Sets the guard enforcing the limits of the current parsing run. The guard must already be wrapped around the
+     * MatchHandler of the run, it is only made available to matchers creating root contexts of their own.
+     *
+     * @param matchGuard the guard
+     */
+    public void setMatchGuard(MatchGuard matchGuard) {
+        frames.matchGuard = matchGuard;
+    }
+
+    /**
+     * Limits the number of mismatches memoized in the current parsing pass, see {@link MismatchMemo}.
+     *
+     * @param capacity the maximum number of memo entries
+     */
+    public void setMemoCapacity(int capacity) {
+        mismatchMemo.setCapacity(capacity);
+    }
+
+    /**
+     * @return the number of mismatch memo lookups performed so far by all contexts of the current parsing run
+     */
+    public long getMemoLookups() {
+        return mismatchMemo.getLookups();
+    }
+
+    /**
+     * @return the number of mismatch memo lookups of the current parsing run that hit
+     */
+    public long getMemoHits() {
+        return mismatchMemo.getHits();
+    }
+
+    /**
+     * @return the number of mismatches memoized in the current parsing pass
+     */
+    public int getMemoSize() {
+        return mismatchMemo.size();
+    }
+
+    /**
+     * @return the largest number of mismatches memoized at any one time in the current parsing pass
+     */
+    public int getMemoPeakSize() {
+        return mismatchMemo.getPeakSize();
+    }
+
+    /**
+     * @return the number of mismatch memo entries evicted so far in the current parsing pass
+     */
+    public long getMemoEvictions() {
+        return mismatchMemo.getEvictions();
     }
 
     @SuppressWarnings({"ConstantConditions"})
@@ -323,11 +475,20 @@ public class MatcherContext<V> implements Context<V> {
         }
     }
 
+    @SuppressWarnings({"unchecked"})
     public final MatcherContext<V> getBasicSubContext() {
+        // there is exactly one context instance per nesting level, the one at the next level being our sub context
+        int subLevel = level + 1;
+        MatcherContext[] contexts = frames.contexts;
+        if (subLevel == contexts.length) {
+            contexts = frames.contexts = Arrays.copyOf(contexts, subLevel * 2);
+        }
+        MatcherContext<V> subContext = contexts[subLevel];
         if (subContext == null) {
             // init new level
-            subContext = new MatcherContext<V>(inputBuffer, valueStack, parseErrors, matchHandler, this, level + 1,
-                        fastStringMatching, memoizedMismatches);
+            subContext = new MatcherContext<V>(inputBuffer, valueStack, parseErrors, matchHandler, this, subLevel,
+                        fastStringMatching, mismatchMemo, partialMatchHandler, frames);
+            contexts[subLevel] = subContext;
         } else {
             subContext.path = null; // we always need to reset the MatcherPath, even for actions
         }
@@ -343,6 +504,8 @@ public class MatcherContext<V> implements Context<V> {
         sc.subNodes = ImmutableLinkedList.nil();
         sc.nodeSuppressed = nodeSuppressed || this.matcher.areSubnodesSuppressed() || matcher.isNodeSuppressed();
         sc.hasError = false;
+        sc.predicateDepth = predicateDepth + (isPredicate(matcher) ? 1 : 0);
+        sc.committed = false;
         return sc;
     }
 
@@ -369,4 +532,10 @@ public class MatcherContext<V> implements Context<V> {
                                     matcher instanceof ActionMatcher ? "action" : "rule", getPath())))) + '\n' + e);
         }
     }
+
+    // the flat stack of the context instances of a parsing run, indexed by level
+    private static class Frames {
+        private MatcherContext[] contexts = new MatcherContext[32];
+        private MatchGuard matchGuard;
+    }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+/**
+ * A PartialMatchHandler allows error analysis runs to keep fast string matching enabled.
+ * Matchers consuming several characters at once (like string matchers) ask it whether the region of the input they
+ * (partially) matched is of interest to the error analysis. If so they fall back to matching char by char, so that
+ * the {@link MatchHandler} gets to see all character level matches in that region.
+ */
+public interface PartialMatchHandler {
+
+    /**
+     * Determines whether a multi-character match has to be rerun with character level matching.
+     *
+     * @param startIndex    the index the matcher started at
+     * @param matchEndIndex the end index of the match or -1, if the matcher failed
+     * @param furthestIndex the index after the last input character that could be matched by any of the matchers
+     *                      sub matchers, i.e. for failed string matches the index of the first mismatching char
+     * @return true if the matcher has to match char by char
+     */
+    boolean requiresCharLevelMatching(int startIndex, int matchEndIndex, int furthestIndex);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.buffers;
+
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * Base class of the immutable InputBuffer implementations over an array holding one input char per element,
+ * implementing everything but the access to the individual elements.
+ */
+public abstract class AbstractArrayInputBuffer implements InputBuffer {
+    protected final int length;
+
+    // the line index of the buffer, built lazily if not given, since the newline information is normally only
+    // needed in the case of parse errors when error messages need to be generated
+    private LineIndex lineIndex;
+    private int lastLine; // the zero based line of the last position lookup, speeds up sequential lookups
+
+    protected AbstractArrayInputBuffer(int length) {
+        this.length = length;
+    }
+
+    protected AbstractArrayInputBuffer(int length, LineIndex lineIndex) {
+        this(length);
+        this.lineIndex = checkArgNotNull(lineIndex, "lineIndex");
+    }
+
+    /**
+     * Returns the char for an index outside of the array, i.e. EOI, unless the parser has read so far beyond
+     * EOI that it is likely caught in an endless loop.
+     *
+     * @param index the index outside of the array
+     * @return EOI
+     */
+    protected final char charOutside(int index) {
+        if (index - length > 100000) {
+            throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                    "verify that your grammar does not consume EOI indefinitely!");
+        }
+        return Chars.EOI;
+    }
+
+    public String extract(int start, int end) {
+        if (start < 0) start = 0;
+        if (end >= length) end = length;
+        if (end <= start) return "";
+        return newString(start, end);
+    }
+
+    public String extract(IndexRange range) {
+        return newString(range.start, Math.min(range.end, length));
+    }
+
+    /**
+     * Creates a string from the chars in the given range of the array.
+     *
+     * @param start the start index, inclusive
+     * @param end   the end index, exclusive and not beyond the end of the array
+     * @return the string
+     */
+    protected abstract String newString(int start, int end);
+
+    public Position getPosition(int index) {
+        LineIndex lineIndex = getLineIndex();
+        int line = lineIndex.getLine0(index, lastLine);
+        lastLine = line;
+        return new Position(line + 1, index - lineIndex.getLineStart0(line) + 1);
+    }
+
+    public int getOriginalIndex(int index) {
+        return index;
+    }
+
+    public String extractLine(int lineNumber) {
+        LineIndex lineIndex = getLineIndex();
+        checkArgument(0 < lineNumber && lineNumber <= lineIndex.getLineCount());
+        int start = lineIndex.getLineStart0(lineNumber - 1);
+        int end = lineIndex.getLineEnd0(lineNumber - 1, length);
+        if (charAt(end - 1) == '\r') end--;
+        return extract(start, end);
+    }
+
+    public int getLineCount() {
+        return getLineIndex().getLineCount();
+    }
+
+    /**
+     * Returns the line index of this buffer, building it if required.
+     * The index can be passed to other buffers on the same input in order to avoid rebuilding it.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = buildLineIndex();
+        }
+        return lineIndex;
+    }
+
+    /**
+     * @return a new line index of the array
+     */
+    protected abstract LineIndex buildLineIndex();
+}
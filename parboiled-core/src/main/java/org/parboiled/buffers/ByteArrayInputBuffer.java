@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.buffers;
+
+import java.nio.charset.Charset;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * Immutable InputBuffer implementation over ISO-8859-1 (Latin-1) encoded bytes, which includes plain ASCII.
+ * Every byte is one character, so the input requires half the memory of a {@link DefaultInputBuffer} and does not
+ * have to be decoded before parsing.
+ */
+public final class ByteArrayInputBuffer extends AbstractArrayInputBuffer {
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private final byte[] buffer;
+
+    /**
+     * Constructs a new ByteArrayInputBuffer wrapping the given byte array.
+     * CAUTION: For performance reasons the given byte array is not defensively copied.
+     *
+     * @param buffer the ISO-8859-1 encoded chars
+     */
+    public ByteArrayInputBuffer(byte[] buffer) {
+        super(checkArgNotNull(buffer, "buffer").length);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Constructs a new ByteArrayInputBuffer wrapping the given byte array and reusing the given line index.
+     * CAUTION: For performance reasons the given byte array is not defensively copied.
+     *
+     * @param buffer    the ISO-8859-1 encoded chars
+     * @param lineIndex the line index of the given bytes, as returned by {@link #getLineIndex()} of another buffer
+     *                  on the same input
+     */
+    public ByteArrayInputBuffer(byte[] buffer, LineIndex lineIndex) {
+        super(checkArgNotNull(buffer, "buffer").length, lineIndex);
+        this.buffer = buffer;
+    }
+
+    public char charAt(int index) {
+        return 0 <= index && index < length ? (char) (buffer[index] & 0xFF) : charOutside(index);
+    }
+
+    public boolean test(int index, char[] characters) {
+        int len = characters.length;
+        if (index < 0 || index > length - len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if ((buffer[index + i] & 0xFF) != characters[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the bytes starting at the given index match the given ones (in order).
+     *
+     * @param index the index into the input buffer where to start the comparison
+     * @param bytes the ISO-8859-1 encoded characters to test against the input buffer
+     * @return true if matched
+     */
+    public boolean test(int index, byte[] bytes) {
+        int len = bytes.length;
+        if (index < 0 || index > length - len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buffer[index + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected String newString(int start, int end) {
+        return new String(buffer, start, end - start, LATIN_1);
+    }
+
+    @Override
+    protected LineIndex buildLineIndex() {
+        return LineIndex.of(buffer);
+    }
+
+    /**
+     * Encodes the given characters into ISO-8859-1 bytes, as used by this buffer.
+     *
+     * @param characters the characters
+     * @return the encoded bytes or null if one of the characters cannot be represented in ISO-8859-1
+     */
+    public static byte[] encode(char[] characters) {
+        byte[] bytes = new byte[characters.length];
+        for (int i = 0; i < characters.length; i++) {
+            if (characters[i] > 0xFF) return null;
+            bytes[i] = (byte) characters[i];
+        }
+        return bytes;
+    }
+}
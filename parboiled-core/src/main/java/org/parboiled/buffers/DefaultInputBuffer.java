@@ -16,29 +16,14 @@
 
 package org.parboiled.buffers;
 
-import org.parboiled.common.IntArrayStack;
-import org.parboiled.errors.ParserRuntimeException;
-import org.parboiled.support.Chars;
-import org.parboiled.support.IndexRange;
-import org.parboiled.support.Position;
-
-import java.util.Arrays;
-
 import static org.parboiled.common.Preconditions.checkArgNotNull;
-import static org.parboiled.common.Preconditions.checkArgument;
 
 /**
  * Immutable default implementation of an InputBuffer.
  */
-public class DefaultInputBuffer implements InputBuffer {
-    private final int length;
+public class DefaultInputBuffer extends AbstractArrayInputBuffer {
     private final char[] buffer;
 
-    // the indices of the newline characters in the buffer
-    // built lazily, since the newline information is normally only needed in the case of parse errors when
-    // error messages need to be generated
-    private int[] newlines;
-
     /**
      * Constructs a new DefaultInputBuffer wrapping the given char array.
      * CAUTION: For performance reasons the given char array is not defensively copied.
@@ -46,19 +31,25 @@ public class DefaultInputBuffer implements InputBuffer {
      * @param buffer the chars
      */
     public DefaultInputBuffer(char[] buffer) {
-        checkArgNotNull(buffer, "buffer");
+        super(checkArgNotNull(buffer, "buffer").length);
         this.buffer = buffer;
-        this.length = buffer.length;
     }
 
-    public char charAt(int index) {
-        return 0 <= index && index < length ? buffer[index] :
-                index - length > 100000 ? throwParsingException() : Chars.EOI;
+    /**
+     * Constructs a new DefaultInputBuffer wrapping the given char array and reusing the given line index.
+     * CAUTION: For performance reasons the given char array is not defensively copied.
+     *
+     * @param buffer    the chars
+     * @param lineIndex the line index of the given chars, as returned by {@link #getLineIndex()} of another buffer
+     *                  on the same input
+     */
+    public DefaultInputBuffer(char[] buffer, LineIndex lineIndex) {
+        super(checkArgNotNull(buffer, "buffer").length, lineIndex);
+        this.buffer = buffer;
     }
 
-    private char throwParsingException() {
-        throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
-                "verify that your grammar does not consume EOI indefinitely!");
+    public char charAt(int index) {
+        return 0 <= index && index < length ? buffer[index] : charOutside(index);
     }
 
     public boolean test(int index, char[] characters) {
@@ -72,59 +63,13 @@ public class DefaultInputBuffer implements InputBuffer {
         return true;
     }
 
-    public String extract(int start, int end) {
-        if (start < 0) start = 0;
-        if (end >= length) end = length;
-        if (end <= start) return "";
+    @Override
+    protected String newString(int start, int end) {
         return new String(buffer, start, end - start);
     }
 
-    public String extract(IndexRange range) {
-        return new String(buffer, range.start, Math.min(range.end, length) - range.start);
-    }
-
-    public Position getPosition(int index) {
-        buildNewlines();
-        int line = getLine0(newlines, index);
-        int column = index - (line > 0 ? newlines[line - 1] : -1);
-        return new Position(line + 1, column);
-    }
-
-    public int getOriginalIndex(int index) {
-        return index;
-    }
-
-    // returns the zero based input line number the character with the given index is found in
-    private static int getLine0(int[] newlines, int index) {
-        int j = Arrays.binarySearch(newlines, index);
-        return j >= 0 ? j : -(j + 1);
-    }
-
-    public String extractLine(int lineNumber) {
-        buildNewlines();
-        checkArgument(0 < lineNumber && lineNumber <= newlines.length + 1);
-        int start = lineNumber > 1 ? newlines[lineNumber - 2] + 1 : 0;
-        int end = lineNumber <= newlines.length ? newlines[lineNumber - 1] : length;
-        if (charAt(end - 1) == '\r') end--;
-        return extract(start, end);
-    }
-
-    public int getLineCount() {
-        buildNewlines();
-        return newlines.length + 1;
-    }
-
-    private void buildNewlines() {
-        if (newlines == null) {
-            IntArrayStack newlines = new IntArrayStack();
-            for (int i = 0; i < length; i++) {
-                if (buffer[i] == '\n') {
-                    newlines.push(i);
-                }
-            }
-            this.newlines = new int[newlines.size()];
-            newlines.getElements(this.newlines, 0);
-        }
+    @Override
+    protected LineIndex buildLineIndex() {
+        return LineIndex.of(buffer);
     }
 }
-
@@ -18,14 +18,17 @@ package org.parboiled.buffers;
 
 import org.parboiled.common.IntArrayStack;
 import org.parboiled.errors.IllegalIndentationException;
+import org.parboiled.errors.ParserRuntimeException;
 import org.parboiled.support.Chars;
 import org.parboiled.support.IndexRange;
 import org.parboiled.support.Position;
 
+import java.util.Arrays;
+
 import static org.parboiled.common.Preconditions.checkArgument;
 
 /**
- * Special, immutable InputBuffer implementation for indentation based grammars.
+ * Special InputBuffer implementation for indentation based grammars.
  * <p>This InputBuffer collapses all space and tab characters at the beginning of a text line into either nothing (if
  * the line has the same indentation level as the previous line), a special {@link Chars#INDENT} character (if the line
  * has a greater indentation level than the previous line) or one or more {@link Chars#DEDENT} characters (if the line
@@ -37,17 +40,33 @@ import static org.parboiled.common.Preconditions.checkArgument;
  * buffer, since all line indentations and blank lines have been collapsed. However, the implementation will make sure
  * that {@link #getPosition(int)}, {@link #extract(int, int)}, etc. will work as expected and always return the
  * "correct" result from the underlying, original input buffer.</p>
+ * <p>The converted input is not stored as a copy of the original. Instead the buffer keeps a run-length encoded map
+ * of the converted input, with one entry per run of chars copied verbatim from the original input and one entry per
+ * inserted INDENT, DEDENT or newline char, i.e. a few entries per line rather than one per char.</p>
+ * <p>By default the whole input is converted during construction. In lazy mode the input is converted on demand,
+ * as far as the parser reads, which makes the buffer (unlike in eager mode) not thread-safe.</p>
  * <p>If the input contains illegal indentation the buffer throws an {@link org.parboiled.errors.IllegalIndentationException}
- * during construction</p>
+ * during construction (or, in lazy mode, when the parser reaches the illegal indentation)</p>
  */
 public class IndentDedentInputBuffer implements InputBuffer {
-    private final DefaultInputBuffer origBuffer;
-    private final DefaultInputBuffer convBuffer;
+    private static final char COPY = 0; // run marker for runs copied from the original input
 
-    private int[] indexMap; // maps convBuffer indices to origBuffer indices
+    private final DefaultInputBuffer origBuffer;
     private final boolean strict;
     private final boolean skipEmptyLines;
 
+    // the runs of the converted input, run i starts at converted index runStarts[i] and is either a single
+    // inserted char runChars[i] mapping to original index runOrigStarts[i] or a sequence of chars copied from the
+    // original input starting at runOrigStarts[i] (if runChars[i] == COPY)
+    private int[] runStarts = new int[16];
+    private int[] runOrigStarts = new int[16];
+    private char[] runChars = new char[16];
+    private int runCount;
+    private int length; // the number of converted chars
+    private int lastRun; // the run of the last lookup, speeds up sequential access
+
+    private BufferConverter converter; // null once the conversion is complete
+
     /**
      * Creates a new IndentDedentInputBuffer around the given char array. Note that for performance reasons the given
      * char array is not defensively copied.
@@ -79,24 +98,62 @@ public class IndentDedentInputBuffer implements InputBuffer {
      */
     public IndentDedentInputBuffer(char[] input, int tabStop, String lineCommentStart, boolean strict,
                                    boolean skipEmptyLines) {
+        this(input, tabStop, lineCommentStart, strict, skipEmptyLines, false);
+    }
+
+    /**
+     * Creates a new IndentDedentInputBuffer around the given char array. Note that for performance reasons the given
+     * char array is not defensively copied.
+     *
+     * @param input            the input text.
+     * @param tabStop          the number of characters in a tab stop.
+     * @param lineCommentStart the string starting a line comment or null, if line comments are not defined
+     * @param strict           signals whether the buffer should throw an {@link IllegalIndentationException} on
+     * "semi-dedents", if false the buffer silently accepts these
+     * @param skipEmptyLines   signals whether the buffer should swallow empty lines
+     * @param lazy             signals whether the input should be converted on demand rather than during construction
+     * @throws org.parboiled.errors.IllegalIndentationException
+     *          if the input contains illegal indentations and the strict flag is set
+     */
+    public IndentDedentInputBuffer(char[] input, int tabStop, String lineCommentStart, boolean strict,
+                                   boolean skipEmptyLines, boolean lazy) {
         this.strict = strict;
         this.skipEmptyLines = skipEmptyLines;
         checkArgument(tabStop > 0, "tabStop must be > 0");
         checkArgument(lineCommentStart == null || lineCommentStart.indexOf('\n') == -1,
                 "lineCommentStart must not contain newlines");
         origBuffer = new DefaultInputBuffer(input);
-        BufferConverter converter = new BufferConverter(tabStop,
-                lineCommentStart != null ? lineCommentStart.toCharArray() : null);
-        convBuffer = new DefaultInputBuffer(converter.builder.getChars());
-        indexMap = converter.builder.getIndexMap();
+        converter = new BufferConverter(tabStop, lineCommentStart != null ? lineCommentStart.toCharArray() : null);
+        if (!lazy) convert(Integer.MAX_VALUE);
     }
 
     public char charAt(int index) {
-        return convBuffer.charAt(index);
+        if (index < 0) return Chars.EOI;
+        if (index >= length) {
+            convert(index);
+            if (index >= length) {
+                if (index - length > 100000) {
+                    throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                            "verify that your grammar does not consume EOI indefinitely!");
+                }
+                return Chars.EOI;
+            }
+        }
+        int run = findRun(index);
+        char c = runChars[run];
+        return c != COPY ? c : origBuffer.charAt(runOrigStarts[run] + index - runStarts[run]);
     }
 
     public boolean test(int index, char[] characters) {
-        return convBuffer.test(index, characters);
+        int len = characters.length;
+        convert(index + len - 1);
+        if (index < 0 || index > length - len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (charAt(index + i) != characters[i]) return false;
+        }
+        return true;
     }
 
     public String extract(int start, int end) {
@@ -122,72 +179,138 @@ public class IndentDedentInputBuffer implements InputBuffer {
     public int getLineCount() {return origBuffer.getLineCount();}
 
     private int map(int convIndex) {
-        if (convIndex < 0) return indexMap[0];
-        if (convIndex < indexMap.length) return indexMap[convIndex];
-        if (indexMap.length == 0) return 1;
-        return indexMap[indexMap.length - 1] + 1;
+        if (convIndex < 0) convIndex = 0;
+        convert(convIndex);
+        if (convIndex < length) {
+            int run = findRun(convIndex);
+            return runOrigStarts[run] + (runChars[run] == COPY ? convIndex - runStarts[run] : 0);
+        }
+        if (length == 0) return 1;
+        return map(length - 1) + 1;
+    }
+
+    // true once the whole input has been converted, from then on lookups only change the lastRun hint
+    boolean isConverted() {
+        return converter == null;
+    }
+
+    // converts the input at least up to the given index (or the end of the input)
+    private void convert(int convIndex) {
+        while (converter != null && length <= convIndex) {
+            if (!converter.step()) converter = null;
+        }
+    }
+
+    // returns the run containing the given converted index, which must be smaller than length
+    private int findRun(int index) {
+        int run = lastRun;
+        if (index < runStarts[run]) {
+            run = binarySearch(index);
+        } else if (run + 1 < runCount && index >= runStarts[run + 1]) {
+            run = run + 2 < runCount && index >= runStarts[run + 2] ? binarySearch(index) : run + 1;
+        }
+        return lastRun = run;
+    }
+
+    private int binarySearch(int index) {
+        int j = Arrays.binarySearch(runStarts, 0, runCount, index);
+        return j >= 0 ? j : -(j + 1) - 1;
+    }
+
+    private void appendCopy(int origIndex) {
+        int last = runCount - 1;
+        if (last < 0 || runChars[last] != COPY || runOrigStarts[last] + length - runStarts[last] != origIndex) {
+            appendRun(COPY, origIndex);
+        }
+        length++;
+    }
+
+    private void appendChar(char c, int origIndex) {
+        appendRun(c, origIndex);
+        length++;
+    }
+
+    private void appendRun(char c, int origIndex) {
+        if (runCount == runStarts.length) {
+            int size = runCount * 2;
+            runStarts = Arrays.copyOf(runStarts, size);
+            runOrigStarts = Arrays.copyOf(runOrigStarts, size);
+            runChars = Arrays.copyOf(runChars, size);
+        }
+        runStarts[runCount] = length;
+        runOrigStarts[runCount] = origIndex;
+        runChars[runCount++] = c;
     }
 
     private class BufferConverter {
-        public final BufferBuilder builder = new BufferBuilder();
         private final int tabStop;
         private final char[] lineCommentStart;
         private final IntArrayStack previousLevels = new IntArrayStack();
         private int cursor = 0;
         private char currentChar;
+        private int currentLevel;
 
         public BufferConverter(int tabStop, char[] lineCommentStart) {
             this.tabStop = tabStop;
             this.lineCommentStart = lineCommentStart;
             this.currentChar = origBuffer.charAt(0);
-            build();
-        }
-
-        private void build() {
             previousLevels.push(0);
 
             // consume inital indent
-            int currentLevel = skipIndent();
+            currentLevel = skipIndent();
+        }
 
-            // transform all other input
-            while (currentChar != Chars.EOI) {
-                int commentChars = skipLineComment();
-                if (currentChar != '\n' && currentChar != Chars.EOI) {
-                    builder.append(currentChar);
-                    advance();
-                    continue;
+        // converts the next char (or the next line break incl. the indentation of the following line),
+        // returns false if the input has been converted completely
+        private boolean step() {
+            if (currentChar == Chars.EOI) {
+                // make sure to close all remaining indentation scopes
+                if (previousLevels.size() > 1) {
+                    appendChar('\n', cursor);
+                    while (previousLevels.size() > 1) {
+                        previousLevels.pop();
+                        appendChar(Chars.DEDENT, cursor);
+                    }
                 }
+                return false;
+            }
 
-                // register newline
-                builder.appendNewline(commentChars);
+            int commentChars = skipLineComment();
+            if (currentChar != '\n' && currentChar != Chars.EOI) {
+                appendCopy(cursor);
                 advance();
+                return true;
+            }
 
-                // consume line indent
-                int indent = skipIndent();
-
-                // generate INDENTS/DEDENTS
-                if (indent > currentLevel) {
-                    previousLevels.push(currentLevel);
-                    currentLevel = indent;
-                    builder.append(Chars.INDENT);
-                } else {
-                    while (indent < currentLevel && indent <= previousLevels.peek()) {
-                        currentLevel = previousLevels.pop();
-                        builder.append(Chars.DEDENT);
-                    }
-                    if (strict && indent < currentLevel) {
-                        throw new IllegalIndentationException(origBuffer, origBuffer.getPosition(cursor));
-                    }
+            // register newline
+            appendNewline(commentChars);
+            advance();
+
+            // consume line indent
+            int indent = skipIndent();
+
+            // generate INDENTS/DEDENTS
+            if (indent > currentLevel) {
+                previousLevels.push(currentLevel);
+                currentLevel = indent;
+                appendChar(Chars.INDENT, cursor);
+            } else {
+                while (indent < currentLevel && indent <= previousLevels.peek()) {
+                    currentLevel = previousLevels.pop();
+                    appendChar(Chars.DEDENT, cursor);
+                }
+                if (strict && indent < currentLevel) {
+                    throw new IllegalIndentationException(origBuffer, origBuffer.getPosition(cursor));
                 }
             }
+            return true;
+        }
 
-            // make sure to close all remaining indentation scopes
-            if (previousLevels.size() > 1) {
-                builder.append('\n');
-                while (previousLevels.size() > 1) {
-                    previousLevels.pop();
-                    builder.append(Chars.DEDENT);
-                }
+        private void appendNewline(int commentChars) {
+            if (commentChars == 0 && currentChar == '\n') {
+                appendCopy(cursor);
+            } else {
+                appendChar('\n', cursor - commentChars);
             }
         }
 
@@ -205,7 +328,7 @@ public class IndentDedentInputBuffer implements InputBuffer {
                         advance();
                         continue;
                     case '\n':
-                        if (!skipEmptyLines) builder.appendNewline(0);
+                        if (!skipEmptyLines) appendNewline(0);
                         indent = 0;
                         advance();
                         continue;
@@ -233,31 +356,5 @@ public class IndentDedentInputBuffer implements InputBuffer {
             }
             return 0;
         }
-
-        private class BufferBuilder {
-            private final StringBuilder sb = new StringBuilder();
-            private final IntArrayStack indexMap = new IntArrayStack();
-
-            private void append(char c) {
-                indexMap.push(cursor);
-                sb.append(c);
-            }
-
-            private void appendNewline(int commentChars) {
-                indexMap.push(cursor - commentChars);
-                sb.append('\n');
-            }
-
-            public char[] getChars() {
-                char[] buffer = new char[sb.length()];
-                sb.getChars(0, sb.length(), buffer, 0);
-                return buffer;
-            }
-
-            public int[] getIndexMap() {
-                return indexMap.toArray();
-            }
-        }
     }
 }
-
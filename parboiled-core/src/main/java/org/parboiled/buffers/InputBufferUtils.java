@@ -50,4 +50,46 @@ public final class InputBufferUtils {
         }
         return sb.toString();
     }
+
+    /**
+     * Determines whether the {@link InputBuffer#charAt(int)} and {@link InputBuffer#test(int, char[])} methods of the
+     * given input buffer can be called by several threads at once. This is the case for the immutable
+     * {@link DefaultInputBuffer} and {@link ByteArrayInputBuffer} as well as for {@link IndentDedentInputBuffer}s whose
+     * input has been converted completely. All other buffers, e.g. the {@link MutableInputBuffer}, are assumed to
+     * change internal state on every access.
+     * @param buf the input buffer
+     * @return true if the buffer can be read concurrently
+     */
+    public static boolean isThreadSafe(InputBuffer buf) {
+        return buf instanceof DefaultInputBuffer || buf instanceof ByteArrayInputBuffer ||
+                buf instanceof IndentDedentInputBuffer && ((IndentDedentInputBuffer) buf).isConverted();
+    }
+
+    /**
+     * Determines the number of characters in the given input buffer, i.e. the index of the first
+     * {@link org.parboiled.support.Chars#EOI} it returns. Since the gallop step is capped at 64K chars this takes
+     * O(n / 65536 + log n) charAt calls, which never probe further than 64K chars beyond the end of the input.
+     * @param buf the input buffer
+     * @return the length of the input buffer
+     */
+    public static int getLength(InputBuffer buf) {
+        // gallop forward until we have overshot the end of the input
+        int low = 0;
+        int high = 1;
+        while (buf.charAt(high - 1) != EOI) {
+            low = high;
+            high += Math.min(high, 0x10000);
+        }
+        // the first EOI index is now in [low, high - 1], so binary search it
+        high--;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buf.charAt(mid) == EOI) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.buffers;
+
+import java.util.Arrays;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * Immutable index of the newline characters of an input, used by the InputBuffer implementations to map indices to
+ * line numbers. Since it is immutable an index can be built eagerly once and shared by all buffers (and threads)
+ * working on the same input, e.g. with {@link DefaultInputBuffer#DefaultInputBuffer(char[], LineIndex)}.
+ */
+public final class LineIndex {
+    private final int[] newlines; // the indices of the newline characters in the input, in ascending order
+
+    private LineIndex(int[] newlines) {
+        this.newlines = newlines;
+    }
+
+    /**
+     * Builds the line index of the given characters.
+     *
+     * @param chars the input characters
+     * @return the index
+     */
+    public static LineIndex of(char[] chars) {
+        checkArgNotNull(chars, "chars");
+        // count first, so the result array can be filled directly without growing or copying
+        int count = 0;
+        for (char c : chars) {
+            if (c == '\n') count++;
+        }
+        int[] newlines = new int[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (chars[i] == '\n') newlines[j++] = i;
+        }
+        return new LineIndex(newlines);
+    }
+
+    /**
+     * Builds the line index of the given ISO-8859-1 (or ASCII) encoded characters.
+     *
+     * @param bytes the input bytes
+     * @return the index
+     */
+    public static LineIndex of(byte[] bytes) {
+        checkArgNotNull(bytes, "bytes");
+        int count = 0;
+        for (byte b : bytes) {
+            if (b == '\n') count++;
+        }
+        int[] newlines = new int[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (bytes[i] == '\n') newlines[j++] = i;
+        }
+        return new LineIndex(newlines);
+    }
+
+    /**
+     * @return the number of lines, which is the number of newline characters plus one
+     */
+    public int getLineCount() {
+        return newlines.length + 1;
+    }
+
+    /**
+     * Returns the zero based number of the line the character with the given index is found in.
+     * A newline character belongs to the line it terminates.
+     * If the given line number hint is correct or one line short (as is the case for sequential lookups) the
+     * result is determined in constant time, otherwise with a binary search.
+     *
+     * @param index the character index
+     * @param hint  a guess of the line, typically the result of the previous lookup
+     * @return the zero based line number
+     */
+    public int getLine0(int index, int hint) {
+        if (hint >= 0 && hint <= newlines.length && getLineStart0(hint) <= index) {
+            if (hint == newlines.length || index <= newlines[hint]) return hint;
+            if (hint + 1 == newlines.length || hint + 1 < newlines.length && index <= newlines[hint + 1]) {
+                return hint + 1;
+            }
+        }
+        int j = Arrays.binarySearch(newlines, index);
+        return j >= 0 ? j : -(j + 1);
+    }
+
+    /**
+     * Returns the index of the first character of the given line.
+     *
+     * @param line0 the zero based line number
+     * @return the index
+     */
+    public int getLineStart0(int line0) {
+        return line0 > 0 ? newlines[line0 - 1] + 1 : 0;
+    }
+
+    /**
+     * Returns the index of the newline character terminating the given line or the given input length
+     * for the last line.
+     *
+     * @param line0  the zero based line number
+     * @param length the length of the input
+     * @return the index
+     */
+    public int getLineEnd0(int line0, int length) {
+        return line0 < newlines.length ? newlines[line0] : length;
+    }
+}
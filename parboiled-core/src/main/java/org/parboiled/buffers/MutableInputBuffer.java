@@ -19,33 +19,52 @@ package org.parboiled.buffers;
 import org.parboiled.support.IndexRange;
 import org.parboiled.support.Position;
 
-import java.util.Arrays;
 import static org.parboiled.common.Preconditions.*;
 
 /**
  * An InputBuffer wrapping another InputBuffer and providing for the ability to insert (and undo) characters at
  * certain index positions. Inserted chars do not appear in extracted text and have the same positions as the
  * original chars at their indices.
- * Note that this implementation is optimized for a rather small number of insertions and will perform badly with
- * a large number of insertions.
+ * The inserted chars are kept in a randomized balanced tree (a treap) in index order, with every node also recording
+ * the number of original chars between its predecessor and itself. Inserting, undoing and replacing chars as well as
+ * mapping an index to the underlying buffer therefore take O(log n) time, with n being the number of insertions.
+ * Additionally the run of original chars around the last looked-up index is cached, so that sequential
+ * {@link #charAt(int)} calls do not have to descend the tree at all.
  */
 public class MutableInputBuffer implements InputBuffer {
     private final InputBuffer buffer;
-    private int[] inserts = new int[0];
-    private char[] chars = new char[0];
+    private Node root;
+    private int seed = 0x2545F491;
+
+    // the results of the last locate(...) call
+    private Node locatedNode; // the first inserted char at or after the located index, null if there is none
+    private int locatedOffset; // the number of original chars between the previous inserted char and the index
+    private int locatedRank; // the number of inserted chars before the located index
+
+    // the run of original chars around the last located index: indices [cacheStart, cacheEnd) map to index - cacheDelta
+    private int cacheStart = 1;
+    private int cacheEnd;
+    private int cacheDelta;
+
+    // the results of the last split(...) call
+    private Node splitLeft;
+    private Node splitRight;
 
     public MutableInputBuffer(InputBuffer buffer) {
         this.buffer = buffer;
     }
 
     public char charAt(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j >= 0) return chars[j];
-        return buffer.charAt(index + (j + 1));
+        if (index >= cacheStart && index < cacheEnd) return buffer.charAt(index - cacheDelta);
+        locate(index);
+        return isInsertion() ? locatedNode.c : buffer.charAt(index - locatedRank);
     }
 
     public boolean test(int index, char[] characters) {
-        throw new UnsupportedOperationException();
+        for (int i = 0; i < characters.length; i++) {
+            if (charAt(index + i) != characters[i]) return false;
+        }
+        return true;
     }
 
     public Position getPosition(int index) {
@@ -73,52 +92,160 @@ public class MutableInputBuffer implements InputBuffer {
     }
 
     private int map(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j < 0) j = -(j + 1);
-        return index - j;
+        locate(index);
+        return index - locatedRank;
     }
 
     public void insertChar(int index, char c) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j < 0) j = -(j + 1);
-
-        char[] newChars = new char[chars.length + 1];
-        System.arraycopy(chars, 0, newChars, 0, j);
-        newChars[j] = c;
-        System.arraycopy(chars, j, newChars, j + 1, chars.length - j);
-        chars = newChars;
-
-        int[] newInserts = new int[inserts.length + 1];
-        System.arraycopy(inserts, 0, newInserts, 0, j);
-        newInserts[j] = index;
-        for (int i = j; i < inserts.length; i++) {
-            newInserts[i + 1] = inserts[i] + 1;
-        }
-        inserts = newInserts;
+        locate(index);
+        Node node = new Node(c, locatedOffset, nextPriority());
+        split(root, locatedRank);
+        Node left = splitLeft;
+        Node right = splitRight;
+        // the new char takes over the original chars in front of it from its successor
+        if (right != null) addToFirstGap(right, -locatedOffset);
+        root = merge(merge(left, node), right);
+        invalidateCache();
     }
 
     public char undoCharInsertion(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        checkArgument(j >= 0, "Cannot undo a non-existing insertion");
-        char removedChar = chars[j];
-
-        char[] newChars = new char[chars.length - 1];
-        System.arraycopy(chars, 0, newChars, 0, j);
-        System.arraycopy(chars, j + 1, newChars, j, newChars.length - j);
-        chars = newChars;
-
-        int[] newInserts = new int[inserts.length - 1];
-        System.arraycopy(inserts, 0, newInserts, 0, j);
-        for (int i = j + 1; i < inserts.length; i++) {
-            newInserts[i - 1] = inserts[i] - 1;
-        }
-        inserts = newInserts;
-        return removedChar;
+        locate(index);
+        checkArgument(isInsertion(), "Cannot undo a non-existing insertion");
+        split(root, locatedRank);
+        Node left = splitLeft;
+        split(splitRight, 1);
+        Node removed = splitLeft;
+        Node right = splitRight;
+        // the successor takes over the original chars in front of the removed char
+        if (right != null) addToFirstGap(right, removed.gap);
+        root = merge(left, right);
+        invalidateCache();
+        return removed.c;
     }
     
     public void replaceInsertedChar(int index, char c) {
-        int j = Arrays.binarySearch(inserts, index);
-        checkArgument(j >= 0, "Can only replace chars that were previously inserted");
-        chars[j] = c;
+        locate(index);
+        checkArgument(isInsertion(), "Can only replace chars that were previously inserted");
+        locatedNode.c = c;
+    }
+
+    private void locate(int index) {
+        Node node = root;
+        Node found = null;
+        int base = 0; // the index of the first char in the subtree of the current node
+        int rank = 0; // the number of inserted chars before the subtree of the current node
+        int foundStart = 0;
+        int foundRank = 0;
+        while (node != null) {
+            int start = base + size(node.left);
+            int end = start + node.gap; // the index of the inserted char of the node
+            if (index <= end) {
+                found = node;
+                foundStart = start;
+                foundRank = rank + count(node.left);
+                node = node.left;
+            } else {
+                base = end + 1;
+                rank += count(node.left) + 1;
+                node = node.right;
+            }
+        }
+        locatedNode = found;
+        if (found != null) {
+            locatedOffset = index - foundStart;
+            locatedRank = foundRank;
+        } else {
+            locatedOffset = index - base;
+            locatedRank = rank;
+        }
+        if (!isInsertion()) {
+            cacheStart = index - locatedOffset;
+            cacheEnd = found != null ? foundStart + found.gap : Integer.MAX_VALUE;
+            cacheDelta = locatedRank;
+        }
+    }
+
+    private boolean isInsertion() {
+        return locatedNode != null && locatedOffset == locatedNode.gap;
+    }
+
+    private void invalidateCache() {
+        cacheStart = 1;
+        cacheEnd = 0;
+    }
+
+    private int nextPriority() {
+        // xorshift
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    // splits the given tree into the first count nodes (splitLeft) and the rest (splitRight)
+    private void split(Node node, int count) {
+        if (node == null) {
+            splitLeft = splitRight = null;
+        } else if (count(node.left) >= count) {
+            split(node.left, count);
+            node.left = splitRight;
+            node.update();
+            splitRight = node;
+        } else {
+            split(node.right, count - count(node.left) - 1);
+            node.right = splitLeft;
+            node.update();
+            splitLeft = node;
+        }
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static void addToFirstGap(Node node, int delta) {
+        for (; node != null; node = node.left) {
+            node.size += delta;
+            if (node.left == null) node.gap += delta;
+        }
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static int count(Node node) {
+        return node != null ? node.count : 0;
+    }
+
+    private static class Node {
+        private char c;
+        private int gap; // the number of original chars between the previous inserted char and this one
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size; // the number of chars (original and inserted) covered by the subtree
+        private int count; // the number of inserted chars in the subtree
+
+        private Node(char c, int gap, int priority) {
+            this.c = c;
+            this.gap = gap;
+            this.priority = priority;
+            update();
+        }
+
+        private void update() {
+            size = size(left) + gap + 1 + size(right);
+            count = count(left) + 1 + count(right);
+        }
     }
 }
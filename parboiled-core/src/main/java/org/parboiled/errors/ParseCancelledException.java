@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.errors;
+
+/**
+ * Exception thrown when a parsing run is aborted through its {@link org.parboiled.parserunners.CancellationToken}
+ * or by interrupting the parsing thread.
+ */
+public class ParseCancelledException extends ParserRuntimeException {
+
+    /**
+     * True if the run was aborted because the parsing thread was interrupted.
+     */
+    public final boolean interrupted;
+
+    /**
+     * The input index the parser was at when the run was aborted.
+     */
+    public final int index;
+
+    public ParseCancelledException(boolean interrupted, int index) {
+        super("Parsing run %s at input index %s", interrupted ? "interrupted" : "cancelled", index);
+        this.interrupted = interrupted;
+        this.index = index;
+    }
+}
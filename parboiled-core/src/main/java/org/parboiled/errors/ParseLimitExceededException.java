@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.errors;
+
+import org.parboiled.parserunners.ParseLimits;
+
+/**
+ * Exception thrown when a parsing run exceeds one of the {@link ParseLimits} configured on its parse runner.
+ */
+public class ParseLimitExceededException extends ParserRuntimeException {
+
+    /**
+     * The limit that was exceeded.
+     */
+    public final ParseLimits.Limit limit;
+
+    /**
+     * The input index the parser was at when the limit was exceeded.
+     */
+    public final int index;
+
+    public ParseLimitExceededException(ParseLimits.Limit limit, int index) {
+        super("Parse limit %s exceeded at input index %s", limit, index);
+        this.limit = limit;
+        this.index = index;
+    }
+}
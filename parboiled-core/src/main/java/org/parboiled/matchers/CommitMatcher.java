@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.MatcherContext;
+
+/**
+ * <p>A {@link Matcher} that always successfully matches nothing and commits the parser to the current alternative of
+ * the innermost enclosing {@link FirstOfMatcher} (the "cut" operator of other PEG implementations). Should the rest of
+ * the alternative fail to match the FirstOf fails as well, rather than trying its remaining alternatives.</p>
+ * <p>The mismatch memoizations for input locations the parser cannot backtrack to anymore are dropped as well, i.e.
+ * the ones before the commit point, unless an enclosing rule other than the committed FirstOf (e.g. an outer FirstOf,
+ * a ZeroOrMore or a predicate) can still resume matching at an earlier location.</p>
+ * <p>A commit only affects FirstOf rules. Within predicates it does not reach beyond the predicate, the optionality
+ * of Optional, ZeroOrMore or OneOrMore rules is not affected either.</p>
+ */
+public class CommitMatcher extends CustomMatcher {
+
+    public CommitMatcher() {
+        super("COMMIT");
+    }
+
+    public boolean match(MatcherContext context) {
+        context.commit();
+        context.createNode();
+        return true;
+    }
+
+    @Override
+    public boolean isSingleCharMatcher() {
+        return false;
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+        return true;
+    }
+
+    @Override
+    public boolean isStarterChar(char c) {
+        return false;
+    }
+
+    @Override
+    public char getStarterChar() {
+        throw new UnsupportedOperationException();
+    }
+}
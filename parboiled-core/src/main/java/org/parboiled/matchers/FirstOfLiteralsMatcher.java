@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A specialized FirstOfMatcher for FirstOf rules whose alternatives are all literals, i.e. single characters,
+ * case-sensitive strings, case-insensitive strings (as created by {@code IgnoreCase(String)}) or any mix thereof.</p>
+ * <p>If fast string matching is enabled this matcher determines the matching alternative with a single scan over
+ * the input, using a deterministic automaton compiled into flat transition arrays. Ordered choice semantics are
+ * preserved: if several alternatives match, the first one wins, even if it is not the longest one. Only the winning
+ * alternative is then run as a sub matcher (in order to create its parse tree node), or, if the parse tree nodes of
+ * this matcher are suppressed anyway, the input is consumed directly.</p>
+ */
+public class FirstOfLiteralsMatcher extends FirstOfMatcher {
+    private static final int NO_ALTERNATIVE = Integer.MAX_VALUE;
+    private static final int ASCII = 128;
+
+    private final int[] asciiClasses = new int[ASCII]; // the character class of each ASCII char, 0 for "none"
+    private final char[] otherChars; // sorted non-ASCII chars appearing in the literals
+    private final int[] otherClasses; // the character classes of the otherChars
+    private final int classCount;
+    private final int[] transitions; // (state * classCount + charClass) -> next state, -1 if there is none
+    private final int[] accepting; // state -> the first alternative completely matched in this state
+    private final int[] firstAlive; // state -> the first alternative that can still complete from this state
+
+    public FirstOfLiteralsMatcher(Rule[] subRules) {
+        super(checkArgNotNull(subRules, "subRules"));
+        char[][][] literals = new char[subRules.length][][];
+        for (int i = 0; i < subRules.length; i++) {
+            literals[i] = toLiteral(subRules[i]);
+            checkArgument(literals[i] != null, "Alternative " + subRules[i] + " is not a literal");
+        }
+
+        // assign a character class to each character appearing in the literals
+        TreeSet<Character> alphabet = new TreeSet<Character>();
+        for (char[][] literal : literals) {
+            for (char[] chars : literal) {
+                for (char c : chars) alphabet.add(c);
+            }
+        }
+        Map<Character, Integer> classes = new HashMap<Character, Integer>();
+        List<Character> others = new ArrayList<Character>();
+        for (char c : alphabet) {
+            int cls = classes.size() + 1;
+            classes.put(c, cls);
+            if (c < ASCII) {
+                asciiClasses[c] = cls;
+            } else {
+                others.add(c);
+            }
+        }
+        classCount = classes.size() + 1;
+        otherChars = new char[others.size()];
+        otherClasses = new int[others.size()];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherChars[i] = others.get(i);
+            otherClasses[i] = classes.get(otherChars[i]);
+        }
+
+        // subset construction over the (alternative, position) pairs of all literals
+        int[] offsets = new int[literals.length + 1];
+        for (int i = 0; i < literals.length; i++) {
+            offsets[i + 1] = offsets[i] + literals[i].length + 1;
+        }
+        BitSet start = new BitSet();
+        for (int i = 0; i < literals.length; i++) start.set(offsets[i]);
+
+        List<BitSet> states = new ArrayList<BitSet>();
+        Map<BitSet, Integer> stateIds = new HashMap<BitSet, Integer>();
+        states.add(start);
+        stateIds.put(start, 0);
+        int[] trans = new int[classCount * 16];
+        for (int s = 0; s < states.size(); s++) {
+            BitSet state = states.get(s);
+            if (trans.length < (s + 1) * classCount) trans = Arrays.copyOf(trans, trans.length * 2);
+            Arrays.fill(trans, s * classCount, (s + 1) * classCount, -1);
+            for (char c : alphabet) {
+                BitSet next = new BitSet();
+                for (int alt = 0; alt < literals.length; alt++) {
+                    for (int p = state.nextSetBit(offsets[alt]); p >= 0 && p < offsets[alt + 1] - 1;
+                         p = state.nextSetBit(p + 1)) {
+                        if (contains(literals[alt][p - offsets[alt]], c)) next.set(p + 1);
+                    }
+                }
+                if (next.isEmpty()) continue;
+                Integer id = stateIds.get(next);
+                if (id == null) {
+                    id = states.size();
+                    states.add(next);
+                    stateIds.put(next, id);
+                }
+                trans[s * classCount + classes.get(c)] = id;
+            }
+        }
+        transitions = Arrays.copyOf(trans, states.size() * classCount);
+
+        accepting = new int[states.size()];
+        firstAlive = new int[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            BitSet state = states.get(s);
+            accepting[s] = NO_ALTERNATIVE;
+            firstAlive[s] = NO_ALTERNATIVE;
+            for (int alt = literals.length - 1; alt >= 0; alt--) {
+                int end = offsets[alt + 1] - 1;
+                if (state.get(end)) accepting[s] = alt;
+                int p = state.nextSetBit(offsets[alt]);
+                if (p >= 0 && p < end) firstAlive[s] = alt;
+            }
+        }
+    }
+
+    /**
+     * Determines whether the given rule can be an alternative of a FirstOfLiteralsMatcher.
+     *
+     * @param rule the rule
+     * @return true if the rule is a single character, a case-sensitive or a case-insensitive string
+     */
+    public static boolean isLiteral(Rule rule) {
+        return toLiteral(rule) != null;
+    }
+
+    // returns the characters accepted at each position of the given literal rule or null if the rule is no literal
+    private static char[][] toLiteral(Rule rule) {
+        char[] chars = toChars(rule);
+        if (chars != null) return new char[][] {chars};
+        Class<?> type = rule.getClass();
+        if (type != SequenceMatcher.class && type != StringMatcher.class) return null;
+        List<Matcher> children = ((Matcher) rule).getChildren();
+        if (children.isEmpty()) return null;
+        char[][] literal = new char[children.size()][];
+        for (int i = 0; i < literal.length; i++) {
+            literal[i] = toChars(children.get(i));
+            if (literal[i] == null) return null;
+        }
+        return literal;
+    }
+
+    private static char[] toChars(Rule rule) {
+        if (rule.getClass() == CharMatcher.class) return new char[] {((CharMatcher) rule).character};
+        if (rule.getClass() == CharIgnoreCaseMatcher.class) {
+            CharIgnoreCaseMatcher matcher = (CharIgnoreCaseMatcher) rule;
+            return new char[] {matcher.charLow, matcher.charUp};
+        }
+        return null;
+    }
+
+    private static boolean contains(char[] chars, char c) {
+        for (char x : chars) {
+            if (x == c) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean match(MatcherContext context) {
+        if (!context.fastStringMatching()) {
+            return super.match(context);
+        }
+
+        InputBuffer buffer = context.getInputBuffer();
+        int ix = context.getCurrentIndex();
+        int state = 0;
+        int matchedAlternative = NO_ALTERNATIVE;
+        int endIx = -1;
+        while (true) {
+            int cls = charClass(buffer.charAt(ix));
+            if (cls == 0) break;
+            state = transitions[state * classCount + cls];
+            if (state < 0) break;
+            ix++;
+            if (accepting[state] < matchedAlternative) {
+                matchedAlternative = accepting[state];
+                endIx = ix;
+            }
+            // stop as soon as no alternative before the current best can still match
+            if (firstAlive[state] >= matchedAlternative) break;
+        }
+        if (context.hasPartialMatchHandler() &&
+                context.requiresCharLevelMatching(endIx, furthestIndex(context.getCurrentIndex(), buffer))) {
+            return super.match(context);
+        }
+        if (endIx == -1) return false;
+
+        if (context.isNodeSuppressed() || areSubnodesSuppressed()) {
+            context.advanceIndex(endIx - context.getCurrentIndex());
+        } else {
+            // run the winning alternative in order to create its parse tree node
+            Matcher matcher = getChildren().get(matchedAlternative);
+            if (!matcher.getSubContext(context).runMatcher()) return false;
+        }
+        context.createNode();
+        return true;
+    }
+
+    // returns the index after the last input char matched by any of the alternatives
+    private int furthestIndex(int ix, InputBuffer buffer) {
+        int state = 0;
+        while (true) {
+            int cls = charClass(buffer.charAt(ix));
+            if (cls == 0) return ix;
+            state = transitions[state * classCount + cls];
+            if (state < 0) return ix;
+            ix++;
+        }
+    }
+
+    private int charClass(char c) {
+        if (c < ASCII) return asciiClasses[c];
+        int i = Arrays.binarySearch(otherChars, c);
+        return i >= 0 ? otherClasses[i] : 0;
+    }
+}
@@ -19,22 +19,57 @@ package org.parboiled.matchers;
 import static org.parboiled.common.Preconditions.*;
 import org.parboiled.MatcherContext;
 import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
 import org.parboiled.matchervisitors.MatcherVisitor;
 
 import java.util.List;
 
 /**
  * A {@link Matcher} trying all of its submatchers in sequence and succeeding when the first submatcher succeeds.
+ * If a {@link LookaheadTable} is set (as done by the {@link MatcherInliner}) and the context runs with fast string
+ * matching only the alternatives the table does not rule out for the next input chars are tried.
  */
 public class FirstOfMatcher extends CustomDefaultLabelMatcher<FirstOfMatcher> {
+    private LookaheadTable lookaheadTable;
 
     public FirstOfMatcher(Rule[] subRules) {
         super(checkArgNotNull(subRules, "subRules"), "FirstOf");
     }
 
+    public LookaheadTable getLookaheadTable() {
+        return lookaheadTable;
+    }
+
+    /**
+     * Sets the lookahead table predicting the alternatives to try. Must be called before the matcher is used in a
+     * parsing run.
+     *
+     * @param lookaheadTable the table, must have been built for this matcher, null to try all alternatives
+     */
+    public void setLookaheadTable(LookaheadTable lookaheadTable) {
+        this.lookaheadTable = lookaheadTable;
+    }
+
     @SuppressWarnings( {"ForLoopReplaceableByForEach"})
     public boolean match(MatcherContext context) {
         List<Matcher> children = getChildren();
+        LookaheadTable table = lookaheadTable;
+        // error analysis needs to see all alternatives failing
+        if (table != null && context.fastStringMatching() && !context.hasPartialMatchHandler()) {
+            InputBuffer buffer = context.getInputBuffer();
+            int index = context.getCurrentIndex();
+            int[] candidates = table.getCandidates(buffer.charAt(index));
+            for (int i = 0; i < candidates.length; i++) {
+                int alternative = candidates[i];
+                if (!table.isViable(alternative, buffer, index)) continue;
+                if (children.get(alternative).getSubContext(context).runMatcher()) {
+                    context.createNode();
+                    return true;
+                }
+                if (context.isCommitted()) return false;
+            }
+            return false;
+        }
         int size = children.size();
         for (int i = 0; i < size; i++) {
             Matcher matcher = children.get(i);
@@ -42,6 +77,7 @@ public class FirstOfMatcher extends CustomDefaultLabelMatcher<FirstOfMatcher> {
                 context.createNode();
                 return true;
             }
+            if (context.isCommitted()) return false;
         }
         return false;
     }
@@ -63,10 +63,24 @@ public class FirstOfStringsMatcher extends FirstOfMatcher {
             return super.match(context);
         }
 
-        Record rec = root;
-        int ix = context.getCurrentIndex();
         InputBuffer buffer = context.getInputBuffer();
-        char c = context.getCurrentChar();
+        int endIx = matchChars(context.getCurrentIndex(), buffer, context.getCurrentChar());
+
+        if (context.hasPartialMatchHandler() &&
+                context.requiresCharLevelMatching(endIx, furthestIndex(context.getCurrentIndex(), buffer))) {
+            return super.match(context);
+        }
+
+        if (endIx == -1) return false; // we matched no complete path, so fail
+
+        context.advanceIndex(endIx - context.getCurrentIndex());
+        context.createNode();
+        return true;
+    }
+
+    // returns the end index of the longest match or -1
+    private int matchChars(int ix, InputBuffer buffer, char c) {
+        Record rec = root;
         int endIx = -1;
 
         loop:
@@ -90,12 +104,26 @@ public class FirstOfStringsMatcher extends FirstOfMatcher {
             // we checked all sub branches of the current node, none matched, so we are done
             break;
         }
+        return endIx;
+    }
 
-        if (endIx == -1) return false; // we matched no complete path, so fail
-
-        context.advanceIndex(endIx - context.getCurrentIndex());
-        context.createNode();
-        return true;
+    // returns the index after the last input char matched by any path through the character tree
+    private int furthestIndex(int ix, InputBuffer buffer) {
+        Record rec = root;
+        loop:
+        while (rec != null) {
+            char c = buffer.charAt(ix);
+            char[] chars = rec.chars;
+            for (int i = 0; i < chars.length; i++) {
+                if (c == chars[i]) {
+                    ix++;
+                    rec = rec.subs[i];
+                    continue loop;
+                }
+            }
+            break;
+        }
+        return ix;
     }
 
     static Record createRecord(int pos, char[][] strings) {
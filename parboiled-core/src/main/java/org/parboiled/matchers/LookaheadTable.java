@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.support.Characters;
+import org.parboiled.support.GrammarAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>The lookahead decision table of a {@link FirstOfMatcher}, mapping the next input chars to the alternatives that
+ * can possibly succeed on them. Alternatives ruled out by the table are never entered, if the table rules out all of
+ * them the FirstOf fails without creating a single sub context.</p>
+ * <p>The table is built from a {@link GrammarAnalyzer} with a lookahead depth of k: every alternative is checked
+ * against up to k chars, fewer if the alternative can match fewer chars or might run an action or a custom matcher
+ * before consuming k chars (see {@link GrammarAnalyzer#getPredictionDepth(org.parboiled.Rule)}), so that skipping an
+ * alternative never skips any side effects. The first char is resolved with a precomputed table for ASCII chars, all
+ * following ones with per-alternative bit sets.</p>
+ */
+public final class LookaheadTable {
+    private static final int ASCII = 128;
+
+    private final int[][] asciiCandidates; // first char -> the alternatives not ruled out by it, in order
+    private final int[] allAlternatives;
+    private final int[] depths; // alternative -> the number of chars to check
+    private final long[][] asciiMasks; // alternative -> 2 words of ASCII bits per offset
+    private final Characters[][] chars; // alternative -> the lookahead set per offset
+
+    private LookaheadTable(int[] depths, Characters[][] chars) {
+        this.depths = depths;
+        this.chars = chars;
+        int count = depths.length;
+        allAlternatives = new int[count];
+        asciiMasks = new long[count][];
+        for (int i = 0; i < count; i++) {
+            allAlternatives[i] = i;
+            asciiMasks[i] = new long[2 * depths[i]];
+            for (int j = 0; j < depths[i]; j++) {
+                for (char c = 0; c < ASCII; c++) {
+                    if (chars[i][j].contains(c)) asciiMasks[i][2 * j + (c >> 6)] |= 1L << c;
+                }
+            }
+        }
+        asciiCandidates = new int[ASCII][];
+        List<Integer> candidates = new ArrayList<Integer>(count);
+        for (char c = 0; c < ASCII; c++) {
+            candidates.clear();
+            for (int i = 0; i < count; i++) {
+                if (depths[i] == 0 || chars[i][0].contains(c)) candidates.add(i);
+            }
+            asciiCandidates[c] = new int[candidates.size()];
+            for (int i = 0; i < candidates.size(); i++) asciiCandidates[c][i] = candidates.get(i);
+        }
+    }
+
+    /**
+     * Builds the lookahead table for the given FirstOf matcher.
+     *
+     * @param firstOf  the FirstOf matcher
+     * @param analyzer an analysis of a rule graph containing the matcher
+     * @return the table or null, if the analysis does not allow to rule out any alternative on any input
+     */
+    public static LookaheadTable build(FirstOfMatcher firstOf, GrammarAnalyzer analyzer) {
+        checkArgNotNull(firstOf, "firstOf");
+        checkArgNotNull(analyzer, "analyzer");
+        List<Matcher> alternatives = firstOf.getChildren();
+        int[] depths = new int[alternatives.size()];
+        Characters[][] chars = new Characters[alternatives.size()][];
+        boolean predictive = false;
+        for (int i = 0; i < depths.length; i++) {
+            Matcher alternative = alternatives.get(i);
+            depths[i] = analyzer.getPredictionDepth(alternative);
+            chars[i] = new Characters[depths[i]];
+            for (int j = 0; j < depths[i]; j++) {
+                chars[i][j] = analyzer.getLookahead(alternative, j);
+                predictive |= !chars[i][j].equals(Characters.ALL);
+            }
+        }
+        return predictive ? new LookaheadTable(depths, chars) : null;
+    }
+
+    /**
+     * @param alternative the index of an alternative
+     * @return the number of input chars the alternative is checked against
+     */
+    public int getDepth(int alternative) {
+        checkArgument(alternative >= 0 && alternative < depths.length, "alternative out of range");
+        return depths[alternative];
+    }
+
+    /**
+     * Returns the alternatives to try for the given first input char, in order. For non-ASCII chars all
+     * alternatives are returned, {@link #isViable(int, InputBuffer, int)} then also checks the first char.
+     *
+     * @param c the input char at the current location
+     * @return the candidate alternatives
+     */
+    public int[] getCandidates(char c) {
+        return c < ASCII ? asciiCandidates[c] : allAlternatives;
+    }
+
+    /**
+     * Determines whether the given candidate alternative can succeed on the input at the given index. The first
+     * char is only checked if it is a non-ASCII char, since all others have been checked by
+     * {@link #getCandidates(char)} already.
+     *
+     * @param alternative the index of the candidate alternative
+     * @param buffer      the input buffer
+     * @param index       the current input index
+     * @return false if the alternative is certain to fail
+     */
+    public boolean isViable(int alternative, InputBuffer buffer, int index) {
+        int depth = depths[alternative];
+        if (depth == 0) return true;
+        long[] masks = asciiMasks[alternative];
+        Characters[] sets = chars[alternative];
+        for (int j = buffer.charAt(index) < ASCII ? 1 : 0; j < depth; j++) {
+            char c = buffer.charAt(index + j);
+            if (c < ASCII ? (masks[2 * j + (c >> 6)] & (1L << c)) == 0 : !sets[j].contains(c)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.Rule;
+import org.parboiled.support.GrammarAnalyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Post-construction pass flattening the matcher graph of a fully constructed rule tree.
+ * The matcher graph is rebuilt, leaving the original rule tree untouched, in the following way:</p>
+ * <ul>
+ * <li>{@link ProxyMatcher}s are replaced by their (armed) targets. Only the proxies required for closing the cycles
+ * of recursive rules remain in the graph.</li>
+ * <li>If the root rule suppresses its parse tree node (and therefore the complete parse tree) single-child
+ * {@link SequenceMatcher}s and {@link FirstOfMatcher}s without a custom label are replaced by their child.</li>
+ * <li>If the root rule suppresses its parse tree node adjacent {@link CharMatcher}s in a {@link SequenceMatcher}
+ * are merged into a {@link StringMatcher}.</li>
+ * <li>If the root rule suppresses its parse tree node adjacent {@link FirstOfMatcher} alternatives starting with
+ * the same action-free elements are left-factored, i.e. {@code FirstOf(Sequence("abc", X), Sequence("abd", Y))}
+ * becomes {@code Sequence("ab", FirstOf(Sequence('c', X), Sequence('d', Y)))}. Since the shared prefix does not
+ * contain actions it matches the same input for all alternatives, so the ordered choice semantics are preserved.
+ * Alternatives carrying actions directly in their top-level sequence are never factored, since these actions might
+ * depend on the input matched by their sequence. The same holds for alternatives containing a {@link CommitMatcher},
+ * which would otherwise only cut the FirstOf of the factored rests.</li>
+ * <li>All {@link FirstOfMatcher}s of the rebuilt graph are made predictive: a {@link GrammarAnalyzer} determines the
+ * chars each alternative can start with (up to a lookahead depth of k chars) and the resulting {@link LookaheadTable}
+ * lets the FirstOf skip all alternatives that cannot possibly succeed on the next input chars, without entering
+ * them. Since alternatives are only ruled out before they could run any action the parsing result is unaffected.</li>
+ * </ul>
+ * <p>Shared sub rules stay shared in the rebuilt graph. However, since all composite matchers are recreated, the
+ * rebuilt graph does not contain the matcher instances of the original graph, so matcher filters relying on
+ * instance identity (e.g. the ones of the {@link org.parboiled.support.Filters} class) have to be created from the
+ * optimized rules. Also, when the parse tree is not completely suppressed, it stays unchanged, so only the proxies
+ * are removed in this case.</p>
+ */
+public class MatcherInliner {
+    public static final int DEFAULT_LOOKAHEAD = 2;
+
+    private final boolean treeSuppressed;
+    private final Map<Matcher, Matcher> inlined = new IdentityHashMap<Matcher, Matcher>();
+    private final Map<Matcher, ProxyMatcher> inProgress = new IdentityHashMap<Matcher, ProxyMatcher>();
+    private final Map<Matcher, Matcher> proxyOriginals = new IdentityHashMap<Matcher, Matcher>();
+    private final Map<Matcher, Boolean> actionFree = new IdentityHashMap<Matcher, Boolean>();
+    private final Map<Matcher, Boolean> firstOfs = new IdentityHashMap<Matcher, Boolean>(); // the ones we created
+
+    private MatcherInliner(boolean treeSuppressed) {
+        this.treeSuppressed = treeSuppressed;
+    }
+
+    /**
+     * Creates an optimized copy of the matcher graph of the given rule.
+     *
+     * @param rule the root rule
+     * @return the root rule of the optimized graph
+     */
+    public static Rule inline(Rule rule) {
+        return inline(rule, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * Creates an optimized copy of the matcher graph of the given rule, with FirstOf lookahead tables considering
+     * the given number of input chars.
+     *
+     * @param rule      the root rule
+     * @param lookahead the lookahead depth, between 1 and 16, or zero for no lookahead tables
+     * @return the root rule of the optimized graph
+     */
+    public static Rule inline(Rule rule, int lookahead) {
+        Matcher matcher = (Matcher) checkArgNotNull(rule, "rule");
+        checkArgument(lookahead >= 0, "lookahead must not be negative");
+        MatcherInliner inliner = new MatcherInliner(matcher.isNodeSuppressed());
+        Matcher result = inliner.inline(matcher);
+        if (lookahead > 0) inliner.predict(result, lookahead);
+        return result;
+    }
+
+    // the tables are built on the complete graph, since the alternatives might refer to rules still under
+    // construction while their FirstOf is rebuilt
+    private void predict(Matcher root, int lookahead) {
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(root, lookahead);
+        for (Matcher matcher : analyzer.getMatchers()) {
+            if (firstOfs.containsKey(matcher)) {
+                FirstOfMatcher firstOf = (FirstOfMatcher) matcher;
+                firstOf.setLookaheadTable(LookaheadTable.build(firstOf, analyzer));
+            }
+        }
+    }
+
+    private Matcher inline(Matcher matcher) {
+        while (matcher instanceof ProxyMatcher) {
+            matcher = ProxyMatcher.unwrap(matcher);
+        }
+        Matcher result = inlined.get(matcher);
+        if (result != null) return result;
+
+        if (inProgress.containsKey(matcher)) {
+            // we are closing a cycle, so we need a proxy here
+            ProxyMatcher proxy = inProgress.get(matcher);
+            if (proxy == null) {
+                proxy = new ProxyMatcher();
+                inProgress.put(matcher, proxy);
+                proxyOriginals.put(proxy, matcher);
+            }
+            return proxy;
+        }
+
+        inProgress.put(matcher, null);
+        result = rebuild(matcher);
+        ProxyMatcher proxy = inProgress.remove(matcher);
+        if (proxy != null) proxy.arm(result);
+        inlined.put(matcher, result);
+        return result;
+    }
+
+    private Matcher rebuild(Matcher matcher) {
+        if (matcher instanceof MemoMismatchesMatcher) {
+            return new MemoMismatchesMatcher(inline(MemoMismatchesMatcher.unwrap(matcher)));
+        }
+        if (matcher instanceof VarFramingMatcher) {
+            VarFramingMatcher varFramingMatcher = (VarFramingMatcher) matcher;
+            return new VarFramingMatcher(inline(varFramingMatcher.getInner()), varFramingMatcher.getVariables());
+        }
+
+        // we only rebuild the exact types we know, subclasses (e.g. StringMatcher) as well as leaf matchers
+        // are reused as is
+        Class<?> type = matcher.getClass();
+        if (type == SequenceMatcher.class) return rebuildSequence((SequenceMatcher) matcher);
+        if (type == FirstOfMatcher.class) {
+            Rule[] children = inlineChildren(matcher);
+            if (treeSuppressed) children = factorAlternatives(children);
+            if (children.length == 1 && canCollapse(matcher, children[0]) &&
+                    !commits(children[0], new IdentityHashMap<Matcher, Boolean>())) {
+                return collapse(matcher, children[0]);
+            }
+            return created(copyAttributes(matcher, new FirstOfMatcher(children)));
+        }
+        if (type == ParallelFirstOfMatcher.class) {
+            return copyAttributes(matcher, new ParallelFirstOfMatcher(inlineChildren(matcher)));
+        }
+        if (type == OptionalMatcher.class) return copyAttributes(matcher, new OptionalMatcher(inlineChild(matcher)));
+        if (type == ZeroOrMoreMatcher.class) {
+            return copyAttributes(matcher, new ZeroOrMoreMatcher(inlineChild(matcher)));
+        }
+        if (type == OneOrMoreMatcher.class) {
+            return copyAttributes(matcher, new OneOrMoreMatcher(inlineChild(matcher)));
+        }
+        if (type == TestMatcher.class) return copyAttributes(matcher, new TestMatcher(inlineChild(matcher)));
+        if (type == TestNotMatcher.class) return copyAttributes(matcher, new TestNotMatcher(inlineChild(matcher)));
+        return matcher;
+    }
+
+    private Matcher created(Matcher firstOf) {
+        firstOfs.put(firstOf, true);
+        return firstOf;
+    }
+
+    private Matcher rebuildSequence(SequenceMatcher matcher) {
+        Rule[] children = inlineChildren(matcher);
+        if (treeSuppressed) children = mergeCharMatchers(children);
+        if (children.length == 1 && canCollapse(matcher, children[0])) return collapse(matcher, children[0]);
+        return copyAttributes(matcher, new SequenceMatcher(children));
+    }
+
+    private Rule[] inlineChildren(Matcher matcher) {
+        List<Matcher> children = matcher.getChildren();
+        Rule[] rules = new Rule[children.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = inline(children.get(i));
+        }
+        return rules;
+    }
+
+    private Matcher inlineChild(Matcher matcher) {
+        return inline(matcher.getChildren().get(0));
+    }
+
+    private Rule[] factorAlternatives(Rule[] alternatives) {
+        List<Rule> factored = new ArrayList<Rule>(alternatives.length);
+        int i = 0;
+        while (i < alternatives.length) {
+            Rule[] elements = factorableElementsOf(alternatives[i]);
+            int common = elements != null ? commonPrefix(elements, elements, elements.length) : 0;
+            int end = i + 1;
+            while (common > 0 && end < alternatives.length) {
+                Rule[] next = factorableElementsOf(alternatives[end]);
+                int c = next != null ? commonPrefix(elements, next, common) : 0;
+                if (c == 0) break;
+                common = c;
+                end++;
+            }
+            if (end - i < 2) {
+                factored.add(alternatives[i++]);
+                continue;
+            }
+
+            Rule[] rests = new Rule[end - i];
+            for (int j = i; j < end; j++) {
+                Rule[] alternative = elementsOf(alternatives[j]);
+                rests[j - i] = toRule(Arrays.copyOfRange(alternative, common, alternative.length));
+            }
+            rests = factorAlternatives(rests);
+            Rule[] sequence = Arrays.copyOf(elements, common + 1);
+            sequence[common] = rests.length == 1 ? rests[0] : created(new FirstOfMatcher(rests));
+            factored.add(new SequenceMatcher(mergeCharMatchers(sequence)));
+            i = end;
+        }
+        return factored.size() == alternatives.length ? alternatives : factored.toArray(new Rule[factored.size()]);
+    }
+
+    // a COMMIT in the rest of an alternative would only cut the nested FirstOf of the factored rests rather than
+    // the original FirstOf, so committing alternatives are never factored
+    private Rule[] factorableElementsOf(Rule alternative) {
+        return commits(alternative, new IdentityHashMap<Matcher, Boolean>()) ? null : elementsOf(alternative);
+    }
+
+    // returns the top-level elements of the given alternative (with strings split into their characters),
+    // or null if the alternative cannot take part in the factoring
+    private static Rule[] elementsOf(Rule alternative) {
+        if (isPlainString(alternative)) return ((Matcher) alternative).getChildren().toArray(new Rule[0]);
+        if (alternative.getClass() != SequenceMatcher.class) return new Rule[] {alternative};
+
+        SequenceMatcher sequence = (SequenceMatcher) alternative;
+        if (sequence.hasCustomLabel()) return null;
+        List<Rule> elements = new ArrayList<Rule>();
+        for (Matcher child : sequence.getChildren()) {
+            if (child instanceof ActionMatcher) return null;
+            if (isPlainString(child)) {
+                elements.addAll(child.getChildren());
+            } else {
+                elements.add(child);
+            }
+        }
+        return elements.toArray(new Rule[elements.size()]);
+    }
+
+    private static boolean isPlainString(Rule rule) {
+        if (rule.getClass() != StringMatcher.class) return false;
+        StringMatcher matcher = (StringMatcher) rule;
+        return matcher.getLabel().equals('"' + String.valueOf(matcher.characters) + '"');
+    }
+
+    private int commonPrefix(Rule[] a, Rule[] b, int max) {
+        int i = 0;
+        while (i < max && i < b.length && isSameElement(a[i], b[i]) && isActionFree((Matcher) a[i])) i++;
+        return i;
+    }
+
+    private static boolean isSameElement(Rule a, Rule b) {
+        if (a == b) return true;
+        if (a.getClass() != b.getClass()) return false;
+        if (a.getClass() == CharMatcher.class) return ((CharMatcher) a).character == ((CharMatcher) b).character;
+        if (a.getClass() == CharIgnoreCaseMatcher.class) {
+            return ((CharIgnoreCaseMatcher) a).charLow == ((CharIgnoreCaseMatcher) b).charLow &&
+                    ((CharIgnoreCaseMatcher) a).charUp == ((CharIgnoreCaseMatcher) b).charUp;
+        }
+        if (a.getClass() == CharRangeMatcher.class) {
+            return ((CharRangeMatcher) a).cLow == ((CharRangeMatcher) b).cLow &&
+                    ((CharRangeMatcher) a).cHigh == ((CharRangeMatcher) b).cHigh;
+        }
+        return false;
+    }
+
+    private Rule toRule(Rule[] elements) {
+        switch (elements.length) {
+            case 0:
+                return new EmptyMatcher();
+            case 1:
+                return elements[0];
+            default:
+                return new SequenceMatcher(mergeCharMatchers(elements));
+        }
+    }
+
+    // determines whether the given matcher contains no actions or custom matchers, i.e. always matches the same
+    // input at a given position without side effects; proxies to rules still under construction are checked in the
+    // original graph
+    private boolean isActionFree(Matcher matcher) {
+        while (matcher instanceof ProxyMatcher) {
+            Matcher original = proxyOriginals.get(matcher);
+            matcher = original != null ? original : ProxyMatcher.unwrap(matcher);
+        }
+        Boolean cached = actionFree.get(matcher);
+        if (cached != null) return cached;
+
+        actionFree.put(matcher, true); // cycles do not add any actions
+        boolean free = !(matcher instanceof ActionMatcher) && !(matcher instanceof CustomMatcher) &&
+                !(matcher instanceof VarFramingMatcher);
+        if (free) {
+            for (Matcher child : matcher.getChildren()) {
+                if (!isActionFree(child)) {
+                    free = false;
+                    break;
+                }
+            }
+        }
+        actionFree.put(matcher, free);
+        return free;
+    }
+
+    private static Rule[] mergeCharMatchers(Rule[] children) {
+        List<Rule> merged = new ArrayList<Rule>(children.length);
+        int i = 0;
+        while (i < children.length) {
+            int end = i;
+            while (end < children.length && isPlainCharMatcher(children[end])) end++;
+            if (end - i > 1) {
+                Rule[] charMatchers = new Rule[end - i];
+                char[] characters = new char[end - i];
+                for (int j = i; j < end; j++) {
+                    charMatchers[j - i] = children[j];
+                    characters[j - i] = ((CharMatcher) children[j]).character;
+                }
+                merged.add(new StringMatcher(charMatchers, characters));
+                i = end;
+            } else {
+                merged.add(children[i++]);
+            }
+        }
+        return merged.size() == children.length ? children : merged.toArray(new Rule[merged.size()]);
+    }
+
+    private static boolean isPlainCharMatcher(Rule rule) {
+        if (rule.getClass() != CharMatcher.class) return false;
+        Matcher matcher = (Matcher) rule;
+        return !matcher.isNodeSkipped() && !matcher.areSubnodesSuppressed();
+    }
+
+    // a single-child wrapper can only be removed if this does not change the labels, parse tree and action contexts
+    private boolean canCollapse(Matcher wrapper, Rule child) {
+        return treeSuppressed && !wrapper.hasCustomLabel() && !wrapper.areSubnodesSuppressed() &&
+                !wrapper.isNodeSkipped() && !(MatcherUtils.unwrap((Matcher) child) instanceof ActionMatcher) &&
+                !(child instanceof ProxyMatcher); // the target of a proxy still under construction is unknown
+    }
+
+    // determines whether the given rule contains a COMMIT binding to the FirstOf around it; proxies to rules still
+    // under construction are checked in the original graph
+    private boolean commits(Rule rule, Map<Matcher, Boolean> visited) {
+        Matcher matcher = (Matcher) rule;
+        while (matcher instanceof ProxyMatcher || matcher instanceof VarFramingMatcher ||
+                matcher instanceof MemoMismatchesMatcher) {
+            Matcher original = proxyOriginals.get(matcher);
+            if (original != null) {
+                matcher = original;
+            } else if (matcher instanceof ProxyMatcher) {
+                matcher = ProxyMatcher.unwrap(matcher);
+            } else if (matcher instanceof VarFramingMatcher) {
+                matcher = VarFramingMatcher.unwrap(matcher);
+            } else {
+                matcher = MemoMismatchesMatcher.unwrap(matcher);
+            }
+        }
+        if (matcher instanceof CommitMatcher) return true;
+        if (matcher instanceof FirstOfMatcher || matcher instanceof TestMatcher || matcher instanceof TestNotMatcher ||
+                visited.containsKey(matcher)) {
+            return false;
+        }
+        visited.put(matcher, true);
+        for (Matcher child : matcher.getChildren()) {
+            if (commits(child, visited)) return true;
+        }
+        return false;
+    }
+
+    private static Matcher collapse(Matcher wrapper, Rule child) {
+        return (Matcher) (wrapper.isNodeSuppressed() ? child.suppressNode() : child);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static Matcher copyAttributes(Matcher original, Matcher copy) {
+        Rule rule = copy;
+        if (original.hasCustomLabel()) {
+            rule = rule.label(original.getLabel());
+        } else if (copy instanceof CustomDefaultLabelMatcher) {
+            ((CustomDefaultLabelMatcher) copy).defaultLabel(original.getLabel());
+        }
+        if (original.isNodeSuppressed()) rule = rule.suppressNode();
+        if (original.areSubnodesSuppressed()) rule = rule.suppressSubnodes();
+        if (original.isNodeSkipped()) rule = rule.skipNode();
+        return (Matcher) rule;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.MatchGuard;
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.errors.GrammarException;
+import org.parboiled.errors.ParseError;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ValueStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>A {@link FirstOfMatcher} that speculatively evaluates all of its alternatives concurrently before committing to
+ * one of them. Meant for FirstOf rules with several expensive alternatives that often have to be tried one after the
+ * other, e.g. the statement level of a large grammar.</p>
+ * <p>Each alternative is matched on a forked root context at the current input location, with its own value stack
+ * initialized from a snapshot of the current one, on the common {@link ForkJoinPool}. The forks only determine
+ * verdicts: alternatives that definitely fail are skipped, the first remaining one (in order) is then run for real on
+ * the actual context, so that parse tree nodes, value stack changes and action side effects are exactly those of a
+ * regular {@link FirstOfMatcher}. As soon as an alternative has matched all forks of later alternatives are
+ * cancelled.</p>
+ * <p>Since parser actions generally share state (the parser instance, action variables,
+ * {@link org.parboiled.support.Var} frames) they are never run speculatively. A fork reaching an action or a Var
+ * framing rule gives up, the respective alternative is then simply tried sequentially, as is done for all
+ * alternatives if the context performs error analysis (i.e. runs without fast string matching or with a
+ * {@link org.parboiled.PartialMatchHandler}), the parser does not use a {@link DefaultValueStack} or the input buffer
+ * cannot be read by several threads at once (see {@link InputBufferUtils#isThreadSafe(InputBuffer)}).</p>
+ * <p>The matcher invocations of the forks count towards the {@link org.parboiled.parserunners.ParseLimits} of the
+ * parsing run and are subject to its cancellation, just like the regular ones.</p>
+ */
+public class ParallelFirstOfMatcher extends FirstOfMatcher {
+    private static final int UNKNOWN = 0;
+    private static final int MATCHED = 1;
+    private static final int FAILED = 2;
+
+    public ParallelFirstOfMatcher(Rule[] subRules) {
+        super(subRules);
+    }
+
+    /**
+     * Turns the given FirstOf rule into its speculatively parallel equivalent, retaining its label and flags.
+     * FirstOf rules over literals only are returned unchanged since they are matched with a single input scan anyway.
+     *
+     * @param rule the FirstOf rule
+     * @return the ParallelFirstOfMatcher
+     * @throws GrammarException if the given rule is not a FirstOf rule
+     */
+    public static Rule parallelize(Rule rule) {
+        checkArgNotNull(rule, "rule");
+        if (rule instanceof ParallelFirstOfMatcher || rule instanceof FirstOfLiteralsMatcher ||
+                rule instanceof FirstOfStringsMatcher) {
+            return rule;
+        }
+        if (rule.getClass() != FirstOfMatcher.class) {
+            throw new GrammarException("Parallel alternatives can only be evaluated for FirstOf rules, not for '%s'",
+                    rule);
+        }
+        Matcher matcher = (Matcher) rule;
+        List<Matcher> children = matcher.getChildren();
+        ParallelFirstOfMatcher parallel = new ParallelFirstOfMatcher(children.toArray(new Rule[children.size()]));
+        Rule result = parallel.defaultLabel(matcher.getLabel());
+        if (matcher.hasCustomLabel()) result = result.label(matcher.getLabel());
+        if (matcher.isNodeSuppressed()) result = result.suppressNode();
+        if (matcher.areSubnodesSuppressed()) result = result.suppressSubnodes();
+        if (matcher.isNodeSkipped()) result = result.skipNode();
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public boolean match(MatcherContext context) {
+        ValueStack valueStack = context.getValueStack();
+        List<Matcher> children = getChildren();
+        if (!context.fastStringMatching() || context.hasPartialMatchHandler() ||
+                !(valueStack instanceof DefaultValueStack) || children.size() < 2 ||
+                !InputBufferUtils.isThreadSafe(context.getInputBuffer())) {
+            return super.match(context);
+        }
+
+        int[] verdicts = speculate(context, valueStack.takeSnapshot());
+        for (int i = 0; i < verdicts.length; i++) {
+            if (verdicts[i] == FAILED) continue;
+            if (children.get(i).getSubContext(context).runMatcher()) {
+                context.createNode();
+                return true;
+            }
+            if (context.isCommitted()) return false;
+        }
+        return false;
+    }
+
+    private int[] speculate(MatcherContext<?> context, Object snapshot) {
+        List<Matcher> children = getChildren();
+        final Speculation speculation = new Speculation(children.size());
+        final List<Fork> forks = new ArrayList<Fork>(children.size());
+        for (int i = 0; i < children.size(); i++) {
+            forks.add(new Fork(speculation, i, children.get(i), context.getInputBuffer(), context.getCurrentIndex(),
+                    snapshot, context.getMatchGuard(), context.getLevel() + 1));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(forks);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(forks);
+                }
+            });
+        }
+        int[] verdicts = new int[forks.size()];
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = forks.get(i).verdict;
+        }
+        return verdicts;
+    }
+
+    // the state shared by the forks of one speculation
+    private static class Speculation {
+        private volatile int firstMatched;
+
+        private Speculation(int alternatives) {
+            this.firstMatched = alternatives;
+        }
+
+        private synchronized void matched(int alternative) {
+            if (alternative < firstMatched) firstMatched = alternative;
+        }
+
+        private boolean isObsolete(int alternative) {
+            return firstMatched < alternative;
+        }
+    }
+
+    // thrown inside a fork in order to give up on its alternative
+    private static class Abort extends ParserRuntimeException {
+        private static final Abort INSTANCE = new Abort();
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this; // thrown for control flow only
+        }
+    }
+
+    private static class Fork extends RecursiveAction implements MatchHandler {
+        private final Speculation speculation;
+        private final int alternative;
+        private final Matcher matcher;
+        private final InputBuffer inputBuffer;
+        private final int index;
+        private final Object snapshot;
+        private final MatchGuard guard;
+        private final int level;
+        private boolean approximate; // set if a FAILED verdict would not be reliable
+        private int verdict = UNKNOWN;
+
+        private Fork(Speculation speculation, int alternative, Matcher matcher, InputBuffer inputBuffer, int index,
+                     Object snapshot, MatchGuard guard, int level) {
+            this.speculation = speculation;
+            this.alternative = alternative;
+            this.matcher = matcher;
+            this.inputBuffer = inputBuffer;
+            this.index = index;
+            this.snapshot = snapshot;
+            this.guard = guard;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            if (speculation.isObsolete(alternative)) return;
+            DefaultValueStack<Object> valueStack = new DefaultValueStack<Object>();
+            valueStack.restoreSnapshot(snapshot);
+            MatcherContext<Object> root = new MatcherContext<Object>(inputBuffer, valueStack,
+                    new ArrayList<ParseError>(), guard != null ? guard.guard(this, level) : this, matcher, true);
+            root.setStartIndex(index);
+            root.setCurrentIndex(index);
+            try {
+                if (root.runMatcher()) {
+                    speculation.matched(alternative);
+                    verdict = MATCHED;
+                } else {
+                    verdict = approximate ? UNKNOWN : FAILED;
+                }
+            } catch (Abort e) {
+                verdict = UNKNOWN;
+            }
+        }
+
+        public boolean match(MatcherContext<?> context) {
+            if (speculation.isObsolete(alternative)) throw Abort.INSTANCE;
+            Matcher matcher = context.getMatcher();
+            if (matcher instanceof ActionMatcher) {
+                // actions skipped in predicates are side effect free enough to be skipped here as well,
+                // however, they might still fail when run for real
+                if (!((ActionMatcher) matcher).skipInPredicates) throw Abort.INSTANCE;
+                approximate = true;
+                return true;
+            }
+            if (matcher instanceof VarFramingMatcher) throw Abort.INSTANCE;
+            // a failing alternative that committed must not be skipped, since it also fails the FirstOf
+            if (matcher instanceof CommitMatcher) approximate = true;
+            return matcher.match(context);
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.parboiled.matchers;
 import static org.parboiled.common.Preconditions.*;
 import org.parboiled.MatcherContext;
 import org.parboiled.Rule;
+import org.parboiled.buffers.ByteArrayInputBuffer;
+import org.parboiled.buffers.InputBuffer;
 
 /**
  * A {@link SequenceMatcher} specialization for sequences of CharMatchers. Performs fast string matching if the
@@ -26,10 +28,12 @@ import org.parboiled.Rule;
  */
 public class StringMatcher extends SequenceMatcher {
     public final char[] characters;
+    private final byte[] bytes; // the ISO-8859-1 encoded characters, null if not encodable
 
     public StringMatcher(Rule[] charMatchers, char[] characters) {
         super(checkArgNotNull(charMatchers, "charMatchers"));
         this.characters = characters;
+        this.bytes = ByteArrayInputBuffer.encode(characters);
     }
 
     @Override
@@ -48,9 +52,26 @@ public class StringMatcher extends SequenceMatcher {
             return super.match(context);
         }
 
-        if (!context.getInputBuffer().test(context.getCurrentIndex(), characters)) return false;
+        InputBuffer buffer = context.getInputBuffer();
+        int ix = context.getCurrentIndex();
+        boolean matched = buffer instanceof ByteArrayInputBuffer ?
+                bytes != null && ((ByteArrayInputBuffer) buffer).test(ix, bytes) : buffer.test(ix, characters);
+        if (context.hasPartialMatchHandler()) {
+            // error analysis runs might be interested in the characters we matched (partially)
+            int furthest = matched ? ix + characters.length : ix + matchingPrefixLength(buffer, ix);
+            if (context.requiresCharLevelMatching(matched ? furthest : -1, furthest)) {
+                return super.match(context);
+            }
+        }
+        if (!matched) return false;
         context.advanceIndex(characters.length);
         context.createNode();
         return true;
     }
+
+    private int matchingPrefixLength(InputBuffer buffer, int ix) {
+        int i = 0;
+        while (i < characters.length && buffer.charAt(ix + i) == characters[i]) i++;
+        return i;
+    }
 }
@@ -36,6 +36,14 @@ public class VarFramingMatcher implements Matcher {
         this.variables = checkArgNotNull(variables, "variables");
     }
 
+    public Matcher getInner() {
+        return inner;
+    }
+
+    public Var[] getVariables() {
+        return variables;
+    }
+
     public <V> boolean match(MatcherContext<V> context) {
         for (Var var : variables) {
             var.enterFrame();
@@ -18,25 +18,51 @@ package org.parboiled.parserunners;
 
 import org.parboiled.MatchHandler;
 import org.parboiled.MatcherContext;
+import org.parboiled.PartialMatchHandler;
 import org.parboiled.Rule;
+import org.parboiled.buffers.ByteArrayInputBuffer;
 import org.parboiled.buffers.DefaultInputBuffer;
 import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.errors.ParseCancelledException;
 import org.parboiled.errors.ParseError;
 import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.MatcherUtils;
 import org.parboiled.support.DefaultValueStack;
 import org.parboiled.support.ParsingResult;
 import org.parboiled.support.ValueStack;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
 
 public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
     private final Matcher rootMatcher;
     private List<ParseError> parseErrors;
     private ValueStack<V> valueStack;
     private Object initialValueStackSnapshot;
+    private ParseMetrics metrics;
+    private AbstractParseRunner<?> enclosingRunner; // non-null if this runner performs a pass of another runner
+    private int ruleSamplingInterval;
+    private int ruleSamplingCountdown;
+    private int passes;
+    private long memoLookups;
+    private long memoHits;
+    private int memoPeakSize;
+    private long memoEvictions;
+    private int memoCapacity;
+    private Set<Matcher> memoizedRules; // rules getting mismatch memoization without being marked with @MemoMismatches
+    private ParseLimits limits;
+    private CancellationToken cancellationToken;
+    private ParseGuard guard; // the guard of the current run, shared with all passes of the run
+    private ParseGuard presetGuard; // the guard to use for all runs instead of one for the own limits, if set
+    private int startIndex;
 
     public AbstractParseRunner(Rule rule) {
         this.rootMatcher = checkArgNotNull((Matcher) rule, "rule");
@@ -71,6 +97,117 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
         return valueStack;
     }    
 
+    /**
+     * Attaches the given {@link ParseMetrics} to this runner. All subsequent parsing runs will report to it.
+     *
+     * @param metrics the metrics to report to, can be null
+     * @return this instance
+     */
+    public ParseRunner<V> withMetrics(ParseMetrics metrics) {
+        this.metrics = metrics;
+        this.ruleSamplingInterval = metrics != null ? Math.max(metrics.getRuleSamplingInterval(), 0) : 0;
+        this.ruleSamplingCountdown = ruleSamplingInterval;
+        return this;
+    }
+
+    public ParseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Attaches the given {@link ParseLimits} to this runner. All subsequent parsing runs exceeding one of the limits
+     * will be aborted with a {@link org.parboiled.errors.ParseLimitExceededException}.
+     *
+     * @param limits the limits to enforce, can be null
+     * @return this instance
+     */
+    public ParseRunner<V> withLimits(ParseLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Attaches the given {@link CancellationToken} to this runner. All subsequent parsing runs will be aborted with
+     * a {@link ParseCancelledException} when the token is cancelled or the parsing thread is interrupted.
+     * Note that an interrupt is detected at the start of every run, even without a token, but only polled during
+     * the run if a token or {@link ParseLimits} are attached.
+     *
+     * @param cancellationToken the token to poll, can be null
+     * @return this instance
+     */
+    public ParseRunner<V> withCancellation(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Makes all subsequent parsing runs start matching at the given input index rather than at the beginning of the
+     * input buffer. All indices reported by the run (parse tree nodes, parse errors, etc.) are still indices into
+     * the complete input buffer.
+     *
+     * @param startIndex the index to start parsing at
+     * @return this instance
+     */
+    public ParseRunner<V> withStartIndex(int startIndex) {
+        checkArgument(startIndex >= 0, "startIndex must not be negative");
+        this.startIndex = startIndex;
+        return this;
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    /**
+     * Limits the number of mismatches memoized for rules marked with @MemoMismatches in each parsing pass. Once the
+     * limit is reached the memoizations for the lowest input windows are evicted, see
+     * {@link org.parboiled.support.MismatchMemo}. In contrast to {@link ParseLimits#withMaxMemoEntries(int)}
+     * reaching the capacity does not abort the run.
+     *
+     * @param memoCapacity the maximum number of memo entries
+     * @return this instance
+     */
+    public ParseRunner<V> withMemoCapacity(int memoCapacity) {
+        checkArgument(memoCapacity > 0, "memoCapacity must be positive");
+        this.memoCapacity = memoCapacity;
+        return this;
+    }
+
+    public int getMemoCapacity() {
+        return memoCapacity;
+    }
+
+    /**
+     * Enables the memoization of mismatches for the given rules in all subsequent parsing runs, just as if they were
+     * marked with @MemoMismatches. In contrast to {@link Rule#memoMismatches()} this does not require the rule graph
+     * to be rebuilt, which makes it suitable for applying the recommendations of a {@link MemoizationAdvisor} to an
+     * existing parser.
+     *
+     * @param rules the rules to memoize the mismatches of
+     * @return this instance
+     */
+    public ParseRunner<V> withMemoizedMismatches(Collection<? extends Rule> rules) {
+        checkArgNotNull(rules, "rules");
+        Set<Matcher> matchers = Collections.newSetFromMap(new IdentityHashMap<Matcher, Boolean>());
+        for (Rule rule : rules) {
+            matchers.add(MatcherUtils.unwrap((Matcher) rule));
+        }
+        this.memoizedRules = matchers.isEmpty() ? null : matchers;
+        return this;
+    }
+
+    public Collection<Matcher> getMemoizedMismatches() {
+        return memoizedRules != null ? Collections.unmodifiableSet(memoizedRules) : Collections.<Matcher>emptySet();
+    }
+
     public ParsingResult<V> run(String input) {
         checkArgNotNull(input, "input");
         return run(input.toCharArray());
@@ -81,18 +218,182 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
         return run(new DefaultInputBuffer(input));
     }
 
+    /**
+     * Performs a parsing run on the given ISO-8859-1 (or plain ASCII) encoded input, without decoding it first.
+     *
+     * @param input the input bytes
+     * @return the ParsingResult for the run
+     */
+    public ParsingResult<V> run(byte[] input) {
+        checkArgNotNull(input, "input");
+        return run(new ByteArrayInputBuffer(input));
+    }
+
     protected void resetValueStack() {
         getValueStack().restoreSnapshot(initialValueStackSnapshot);
     }
 
     protected MatcherContext<V> createRootContext(InputBuffer inputBuffer, MatchHandler matchHandler,
                                                      boolean fastStringMatching) {
-        return new MatcherContext<V>(inputBuffer, getValueStack(), getParseErrors(), matchHandler, rootMatcher,
-                fastStringMatching);
+        if (memoizedRules != null) matchHandler = memoizing(matchHandler);
+        if (guard != null) matchHandler = guard.guard(matchHandler);
+        return configured(new MatcherContext<V>(inputBuffer, getValueStack(), getParseErrors(), matchHandler,
+                rootMatcher, fastStringMatching));
+    }
+
+    /**
+     * Creates a root context with fast string matching enabled, which reruns the (partial) string matches the given
+     * PartialMatchHandler is interested in on the character level.
+     */
+    protected MatcherContext<V> createRootContext(InputBuffer inputBuffer, MatchHandler matchHandler,
+                                                     PartialMatchHandler partialMatchHandler) {
+        if (memoizedRules != null) matchHandler = memoizing(matchHandler);
+        if (guard != null) matchHandler = guard.guard(matchHandler);
+        return configured(new MatcherContext<V>(inputBuffer, getValueStack(), getParseErrors(), matchHandler,
+                rootMatcher, true, partialMatchHandler));
+    }
+
+    private MatchHandler memoizing(final MatchHandler handler) {
+        final Set<Matcher> rules = memoizedRules;
+        return new MatchHandler() {
+            public boolean match(MatcherContext<?> context) {
+                if (!rules.contains(context.getMatcher())) return handler.match(context);
+                if (context.hasMismatched()) return false;
+                if (handler.match(context)) return true;
+                context.memoizeMismatch();
+                return false;
+            }
+        };
+    }
+
+    private MatcherContext<V> configured(MatcherContext<V> rootContext) {
+        if (guard != null) rootContext.setMatchGuard(guard);
+        if (startIndex > 0) {
+            rootContext.setStartIndex(startIndex);
+            rootContext.setCurrentIndex(startIndex);
+        }
+        if (memoCapacity > 0) rootContext.setMemoCapacity(memoCapacity);
+        return rootContext;
     }
     
     protected ParsingResult<V> createParsingResult(boolean matched, MatcherContext<V> rootContext) {
+        if (metrics != null) {
+            AbstractParseRunner<?> runner = enclosingRunner != null ? enclosingRunner : this;
+            runner.passes++;
+            runner.memoLookups += rootContext.getMemoLookups();
+            runner.memoHits += rootContext.getMemoHits();
+            runner.memoPeakSize = Math.max(runner.memoPeakSize, rootContext.getMemoPeakSize());
+            runner.memoEvictions += rootContext.getMemoEvictions();
+        }
         return new ParsingResult<V>(matched, rootContext.getNode(), getValueStack(), getParseErrors(),
                 rootContext.getInputBuffer());
     }
+
+    /**
+     * Adds the pass and memo statistics of a run performed on behalf of the current run of this runner, e.g. on a
+     * part of the input, to the statistics reported for the current run.
+     *
+     * @param stats the statistics of the other run
+     */
+    void addRunStats(ParseMetrics.RunStats stats) {
+        passes += stats.passes;
+        memoLookups += stats.memoLookups;
+        memoHits += stats.memoHits;
+        memoPeakSize = Math.max(memoPeakSize, stats.memoPeakSize);
+        memoEvictions += stats.memoEvictions;
+    }
+
+    /**
+     * Performs one parsing pass of this runner's parsing run with the given runner. The given runner reports rule
+     * samples and pass statistics to the metrics of this runner but does not report a run of its own. It is
+     * also subject to the limits of this runner's run.
+     *
+     * @param pass        the runner performing the pass
+     * @param inputBuffer the input buffer to run on
+     * @return the ParsingResult of the pass
+     */
+    protected ParsingResult<V> runPass(AbstractParseRunner<V> pass, InputBuffer inputBuffer) {
+        if (metrics != null) pass.withMetrics(metrics);
+        pass.enclosingRunner = enclosingRunner != null ? enclosingRunner : this;
+        pass.guard = guard;
+        pass.startIndex = startIndex;
+        pass.memoCapacity = memoCapacity;
+        pass.memoizedRules = memoizedRules;
+        return pass.run(inputBuffer);
+    }
+
+    /**
+     * @return the guard enforcing the limits and the cancellation of the current run, null if there are none
+     */
+    ParseGuard getGuard() {
+        return guard;
+    }
+
+    /**
+     * Makes all subsequent runs of this runner use the given guard rather than one for the limits and the
+     * cancellation token of this runner, e.g. in order to share the limits of the run of another runner.
+     *
+     * @param guard the guard
+     */
+    void withGuard(ParseGuard guard) {
+        this.presetGuard = guard;
+    }
+
+    /**
+     * Starts the metrics collection and the limit and cancellation checks for a new parsing run. Runs whose
+     * cancellation token has already been cancelled or whose thread has already been interrupted are aborted
+     * right away.
+     *
+     * @return the time stamp to pass to {@link #completeRun(long, ParsingResult, int)}
+     */
+    protected long startRun() {
+        if (enclosingRunner != null) return 0L;
+        if (cancellationToken != null && cancellationToken.isCancelled()) {
+            throw new ParseCancelledException(false, startIndex);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ParseCancelledException(true, startIndex);
+        }
+        guard = presetGuard != null ? presetGuard :
+                limits != null || cancellationToken != null ? new ParseGuard(limits, cancellationToken) : null;
+        if (metrics == null) return 0L;
+        passes = 0;
+        memoLookups = 0;
+        memoHits = 0;
+        memoPeakSize = 0;
+        memoEvictions = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Completes the metrics collection for the current parsing run and reports it to the attached metrics, if any.
+     *
+     * @param timeStamp          the time stamp returned by {@link #startRun()}
+     * @param result             the result of the run
+     * @param recoveryIterations the number of error recovery iterations performed during the run
+     * @return the given result
+     */
+    protected ParsingResult<V> completeRun(long timeStamp, ParsingResult<V> result, int recoveryIterations) {
+        if (metrics != null && enclosingRunner == null) {
+            metrics.runCompleted(new ParseMetrics.RunStats(getClass(), System.nanoTime() - timeStamp,
+                    InputBufferUtils.getLength(result.inputBuffer), result.matched, result.parseErrors.size(), passes,
+                    recoveryIterations, memoLookups, memoHits, memoPeakSize, memoEvictions));
+        }
+        return result;
+    }
+
+    /**
+     * Reports every n-th matcher invocation to the attached metrics. Called by the MatchHandler implementations
+     * right after having run a matcher.
+     *
+     * @param matcher the matcher that was run
+     * @param matched true if the matcher matched
+     */
+    protected final void sampleRule(Matcher matcher, boolean matched) {
+        if (ruleSamplingInterval > 0 && --ruleSamplingCountdown == 0) {
+            ruleSamplingCountdown = ruleSamplingInterval;
+            metrics.ruleSampled(matcher, matched);
+        }
+    }
+
 }
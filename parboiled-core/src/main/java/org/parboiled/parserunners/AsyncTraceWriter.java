@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.matchers.Matcher;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the compact trace event stream of one {@link TracingParseRunner} run.
+ * Events are encoded into longs and put into a single-producer/single-consumer ring buffer, which is drained by a
+ * background thread into the given output stream. The stream format is documented in {@link TraceRenderer}.
+ */
+class AsyncTraceWriter implements Runnable {
+    static final int RUN_RECORD = 'R';
+    static final int DEFINITION_RECORD = 'D';
+    static final int ENTER_RECORD = 'E';
+    static final int MATCHED_RECORD = 'M';
+    static final int FAILED_RECORD = 'F';
+    static final int SKIPPED_EXIT_RECORD = 'X';
+    static final Charset UTF8 = Charset.forName("UTF8");
+
+    // event encoding: the lowest two bits hold the kind, enter events carry the matcher id in the upper bits,
+    // exit events a "matched" and a "selected" flag as well as the input index
+    private static final int ENTER = 0;
+    private static final int EXIT = 1;
+    private static final int RUN = 2;
+    private static final int EXIT_MATCHED = 4;
+    private static final int EXIT_SELECTED = 8;
+
+    private static final long PARK_NANOS = 50000;
+
+    private final long[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // the number of events put by the parsing thread
+    private final AtomicLong tail = new AtomicLong(); // the number of events drained by the writer thread
+    private final DataOutputStream out;
+    private final Thread thread;
+    private final Map<Matcher, Integer> matcherIds = new IdentityHashMap<Matcher, Integer>();
+    private Matcher[] matchers = new Matcher[64]; // published to the writer thread through the head counter
+    private long cachedTail;
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    AsyncTraceWriter(OutputStream out, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.ring = new long[size];
+        this.mask = size - 1;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        this.thread = new Thread(this, "parboiled-trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+        put(RUN);
+    }
+
+    void enter(Matcher matcher) {
+        Integer id = matcherIds.get(matcher);
+        if (id == null) {
+            id = matcherIds.size();
+            matcherIds.put(matcher, id);
+            if (id == matchers.length) matchers = Arrays.copyOf(matchers, id * 2);
+            matchers[id] = matcher;
+        }
+        put(((long) id << 2) | ENTER);
+    }
+
+    void exit(int index, boolean matched, boolean selected) {
+        put(((long) index << 4) | (selected ? EXIT_SELECTED : 0) | (matched ? EXIT_MATCHED : 0) | EXIT);
+    }
+
+    private void put(long event) {
+        long h = head.get();
+        if (h - cachedTail == ring.length) {
+            while (h - (cachedTail = tail.get()) == ring.length) {
+                checkError();
+                if (!thread.isAlive()) {
+                    checkError(); // the error might have been set right before the thread died
+                    throw new IllegalStateException("The trace writer thread has terminated");
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        ring[(int) h & mask] = event;
+        head.lazySet(h + 1);
+    }
+
+    /**
+     * Waits until all events have been written and flushed. Does not close the underlying output stream.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the trace writer", e);
+        }
+        checkError();
+    }
+
+    private void checkError() {
+        if (error != null) {
+            throw new RuntimeException("Could not write parse trace", error);
+        }
+    }
+
+    public void run() {
+        try {
+            long t = 0;
+            int defined = 0;
+            while (true) {
+                boolean done = closed; // must be read before the head counter in order not to miss final events
+                long h = head.get();
+                if (t == h) {
+                    if (done) break;
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
+                }
+                for (; t < h; t++) {
+                    long event = ring[(int) t & mask];
+                    switch ((int) event & 3) {
+                        case ENTER:
+                            int id = (int) (event >>> 2);
+                            for (; defined <= id; defined++) {
+                                // not writeUTF, which is limited to 64K bytes and custom labels can be longer
+                                byte[] label = String.valueOf(matchers[defined]).getBytes(UTF8);
+                                out.writeByte(DEFINITION_RECORD);
+                                out.writeInt(label.length);
+                                out.write(label);
+                            }
+                            out.writeByte(ENTER_RECORD);
+                            out.writeInt(id);
+                            break;
+                        case EXIT:
+                            if ((event & EXIT_SELECTED) != 0) {
+                                out.writeByte((event & EXIT_MATCHED) != 0 ? MATCHED_RECORD : FAILED_RECORD);
+                                out.writeInt((int) (event >>> 4));
+                            } else {
+                                out.writeByte(SKIPPED_EXIT_RECORD);
+                            }
+                            break;
+                        case RUN:
+                            out.writeByte(RUN_RECORD);
+                            break;
+                    }
+                }
+                tail.lazySet(t);
+            }
+            out.flush();
+        } catch (Throwable t) {
+            error = t; // reported to the parsing thread, which would otherwise wait for the dead writer forever
+        }
+    }
+}
@@ -66,14 +66,18 @@ public class BasicParseRunner<V> extends AbstractParseRunner<V> implements Match
 
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
+        long timeStamp = startRun();
         resetValueStack();
         
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
         boolean matched = rootContext.runMatcher();
-        return createParsingResult(matched, rootContext);
+        return completeRun(timeStamp, createParsingResult(matched, rootContext), 0);
     }
 
     public boolean match(MatcherContext<?> context) {
-        return context.getMatcher().match(context);
+        Matcher matcher = context.getMatcher();
+        boolean matched = matcher.match(context);
+        sampleRule(matcher, matched);
+        return matched;
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+/**
+ * <p>Allows parsing runs to be cancelled from another thread. A runner with an attached token (see
+ * {@link AbstractParseRunner#withCancellation(CancellationToken)}) polls the token as well as the interrupt status
+ * of the parsing thread every {@link ParseLimits#TIMEOUT_CHECK_INTERVAL} matcher invocations and aborts the run with a
+ * {@link org.parboiled.errors.ParseCancelledException} as soon as either is set. The interrupt status of the thread is
+ * left untouched.</p>
+ * <p>A token can be shared by any number of runners and runs. Once cancelled it stays cancelled.</p>
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels all runs polling this token.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.matchers.Matcher;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>Default {@link ParseMetrics} implementation accumulating all reported values into {@link LongAdder}s.
+ * Since LongAdders are striped across threads one instance can be shared by all parse runners of an application
+ * without becoming a point of contention. The accumulated values can be read at any time (e.g. by a metrics
+ * exporter polling gauges or counters) and are never reset automatically.</p>
+ * <p>Rule samples are collected into one {@link RuleCounters} instance per sampled matcher.</p>
+ */
+public class DefaultParseMetrics implements ParseMetrics {
+    private final int ruleSamplingInterval;
+    private final ConcurrentMap<Matcher, RuleCounters> ruleCounters = new ConcurrentHashMap<Matcher, RuleCounters>();
+
+    public final LongAdder runs = new LongAdder();
+    public final LongAdder matchedRuns = new LongAdder();
+    public final LongAdder failedRuns = new LongAdder();
+    public final LongAdder nanoTime = new LongAdder();
+    public final LongAdder inputChars = new LongAdder();
+    public final LongAdder errors = new LongAdder();
+    public final LongAdder passes = new LongAdder();
+    public final LongAdder recoveryIterations = new LongAdder();
+    public final LongAdder memoLookups = new LongAdder();
+    public final LongAdder memoHits = new LongAdder();
+    public final LongAdder memoEvictions = new LongAdder();
+    public final LongAccumulator memoPeakSize = new LongAccumulator(new LongBinaryOperator() {
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    }, 0L);
+
+    /**
+     * Creates a new DefaultParseMetrics instance without rule sampling.
+     */
+    public DefaultParseMetrics() {
+        this(0);
+    }
+
+    /**
+     * Creates a new DefaultParseMetrics instance sampling every n-th matcher invocation.
+     *
+     * @param ruleSamplingInterval the number of matcher invocations between two samples, zero to disable sampling
+     */
+    public DefaultParseMetrics(int ruleSamplingInterval) {
+        this.ruleSamplingInterval = ruleSamplingInterval;
+    }
+
+    public int getRuleSamplingInterval() {
+        return ruleSamplingInterval;
+    }
+
+    public void ruleSampled(Matcher matcher, boolean matched) {
+        RuleCounters counters = ruleCounters.get(matcher);
+        if (counters == null) {
+            RuleCounters newCounters = new RuleCounters(matcher);
+            counters = ruleCounters.putIfAbsent(matcher, newCounters);
+            if (counters == null) counters = newCounters;
+        }
+        counters.samples.increment();
+        if (matched) counters.matches.increment();
+    }
+
+    public void runCompleted(RunStats stats) {
+        checkArgNotNull(stats, "stats");
+        runs.increment();
+        (stats.matched ? matchedRuns : failedRuns).increment();
+        nanoTime.add(stats.nanoTime);
+        inputChars.add(stats.inputLength);
+        errors.add(stats.errorCount);
+        passes.add(stats.passes);
+        recoveryIterations.add(stats.recoveryIterations);
+        memoLookups.add(stats.memoLookups);
+        memoHits.add(stats.memoHits);
+        memoEvictions.add(stats.memoEvictions);
+        memoPeakSize.accumulate(stats.memoPeakSize);
+    }
+
+    /**
+     * @return an unmodifiable live view of the rule sample counters collected so far
+     */
+    public Map<Matcher, RuleCounters> getRuleCounters() {
+        return Collections.unmodifiableMap(ruleCounters);
+    }
+
+    /**
+     * @return the share of mismatch memo lookups that hit or NaN if there were no lookups
+     */
+    public double getMemoHitRate() {
+        return memoHits.doubleValue() / memoLookups.doubleValue();
+    }
+
+    public String print() {
+        long runCount = runs.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Runs                     : %,15d\n", runCount));
+        sb.append(String.format("Matched runs             : %,15d\n", matchedRuns.sum()));
+        sb.append(String.format("Failed runs              : %,15d\n", failedRuns.sum()));
+        sb.append(String.format("Total run time           : %,15.3f s\n", nanoTime.sum() / 1000000000.0));
+        sb.append(String.format("Mean run time            : %,15.0f ns\n", nanoTime.doubleValue() / runCount));
+        sb.append(String.format("Total input chars        : %,15d\n", inputChars.sum()));
+        sb.append(String.format("Parse errors             : %,15d\n", errors.sum()));
+        sb.append(String.format("Parsing passes           : %,15d\n", passes.sum()));
+        sb.append(String.format("Recovery iterations      : %,15d\n", recoveryIterations.sum()));
+        sb.append(String.format("Memo lookups             : %,15d\n", memoLookups.sum()));
+        sb.append(String.format("Memo hit share           : %15.2f %%\n", 100.0 * getMemoHitRate()));
+        sb.append(String.format("Memo peak entries        : %,15d\n", memoPeakSize.get()));
+        sb.append(String.format("Memo evictions           : %,15d\n", memoEvictions.sum()));
+        return sb.toString();
+    }
+
+    /**
+     * The sample counters of one matcher.
+     */
+    public static class RuleCounters {
+        public final Matcher matcher;
+        public final LongAdder samples = new LongAdder();
+        public final LongAdder matches = new LongAdder();
+
+        public RuleCounters(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        public double getMatchShare() {
+            return matches.doubleValue() / samples.doubleValue();
+        }
+    }
+}
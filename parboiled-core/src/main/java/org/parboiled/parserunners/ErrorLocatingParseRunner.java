@@ -18,10 +18,12 @@ package org.parboiled.parserunners;
 
 import org.parboiled.MatchHandler;
 import org.parboiled.MatcherContext;
+import org.parboiled.PartialMatchHandler;
 import org.parboiled.Rule;
 import org.parboiled.buffers.InputBuffer;
 import org.parboiled.errors.BasicParseError;
 import org.parboiled.errors.InvalidInputError;
+import org.parboiled.matchers.Matcher;
 import org.parboiled.matchers.TestNotMatcher;
 import org.parboiled.support.ParsingResult;
 
@@ -33,7 +35,7 @@ import static org.parboiled.common.Preconditions.checkArgNotNull;
  * It never causes the parser to perform more than one parsing run and is rarely used directly.
  * Instead its functionality is relied upon by the {@link ReportingParseRunner} and {@link RecoveringParseRunner} classes.
  */
-public class ErrorLocatingParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+public class ErrorLocatingParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler, PartialMatchHandler {
     private final MatchHandler inner;
     private int errorIndex;
 
@@ -60,20 +62,27 @@ public class ErrorLocatingParseRunner<V> extends AbstractParseRunner<V> implemen
 
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
+        long timeStamp = startRun();
         resetValueStack();
         errorIndex = 0;
         
-        // run without fast string matching to properly get the error location
-        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, false);
+        // strings only need to be matched char by char where they might move the error location,
+        // an inner handler (like the one used for error recovery) however relies on character level matches throughout
+        MatcherContext<V> rootContext = inner == null ?
+                createRootContext(inputBuffer, this, (PartialMatchHandler) this) :
+                createRootContext(inputBuffer, this, false);
         boolean matched = match(rootContext);
         if (!matched) {
             getParseErrors().add(new BasicParseError(inputBuffer, errorIndex, null));
         }
-        return createParsingResult(matched, rootContext);
+        return completeRun(timeStamp, createParsingResult(matched, rootContext), 0);
     }
 
     public boolean match(MatcherContext<?> context) {
-        if (inner == null && context.getMatcher().match(context) || inner != null && inner.match(context)) {
+        Matcher matcher = context.getMatcher();
+        boolean matched = inner == null && matcher.match(context) || inner != null && inner.match(context);
+        sampleRule(matcher, matched);
+        if (matched) {
             if (errorIndex < context.getCurrentIndex() && notTestNot(context)) {
                 errorIndex = context.getCurrentIndex();
             }
@@ -82,6 +91,10 @@ public class ErrorLocatingParseRunner<V> extends AbstractParseRunner<V> implemen
         return false;
     }
 
+    public boolean requiresCharLevelMatching(int startIndex, int matchEndIndex, int furthestIndex) {
+        return furthestIndex > errorIndex && furthestIndex > matchEndIndex;
+    }
+
     private boolean notTestNot(MatcherContext context) {
         return !(context.getMatcher() instanceof TestNotMatcher) &&
                 (context.getParent() == null || notTestNot(context.getParent()));
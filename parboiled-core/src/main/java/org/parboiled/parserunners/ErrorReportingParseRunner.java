@@ -18,9 +18,11 @@ package org.parboiled.parserunners;
 
 import org.parboiled.MatchHandler;
 import org.parboiled.MatcherContext;
+import org.parboiled.PartialMatchHandler;
 import org.parboiled.Rule;
 import org.parboiled.buffers.InputBuffer;
 import org.parboiled.errors.InvalidInputError;
+import org.parboiled.matchers.Matcher;
 import org.parboiled.matchervisitors.IsSingleCharMatcherVisitor;
 import org.parboiled.support.MatcherPath;
 import org.parboiled.support.ParsingResult;
@@ -36,7 +38,7 @@ import static org.parboiled.common.Preconditions.checkArgNotNull;
  * It never causes the parser to perform more than one parsing run and is rarely used directly.
  * Instead its functionality is relied upon by the {@link ReportingParseRunner} and {@link RecoveringParseRunner} classes.
  */
-public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler, PartialMatchHandler {
     private final IsSingleCharMatcherVisitor isSingleCharMatcherVisitor = new IsSingleCharMatcherVisitor();
     private final int errorIndex;
     private final MatchHandler inner;
@@ -69,21 +71,27 @@ public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> impleme
 
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
-        resetValueStack();        
+        long timeStamp = startRun();
+        resetValueStack();
         failedMatchers.clear();
         seeking = errorIndex > 0;
 
-        // run without fast string matching to properly get to the error location
-        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, false);
+        // strings only need to be matched char by char in the vicinity of the error location,
+        // an inner handler (like the one used for error recovery) however relies on character level matches throughout
+        MatcherContext<V> rootContext = inner == null ?
+                createRootContext(inputBuffer, this, (PartialMatchHandler) this) :
+                createRootContext(inputBuffer, this, false);
         boolean matched = match(rootContext);
         if (!matched) {
             getParseErrors().add(new InvalidInputError(inputBuffer, errorIndex, failedMatchers, null));
         }
-        return createParsingResult(matched, rootContext);
+        return completeRun(timeStamp, createParsingResult(matched, rootContext), 0);
     }
 
     public boolean match(MatcherContext<?> context) {
-        boolean matched = inner == null && context.getMatcher().match(context) || inner != null && inner.match(context);
+        Matcher matcher = context.getMatcher();
+        boolean matched = inner == null && matcher.match(context) || inner != null && inner.match(context);
+        sampleRule(matcher, matched);
         if (context.getCurrentIndex() == errorIndex) {
             if (matched && seeking) {
                 seeking = false;
@@ -94,5 +102,8 @@ public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> impleme
         }
         return matched;
     }
-}
 
+    public boolean requiresCharLevelMatching(int startIndex, int matchEndIndex, int furthestIndex) {
+        return startIndex <= errorIndex && errorIndex <= furthestIndex;
+    }
+}
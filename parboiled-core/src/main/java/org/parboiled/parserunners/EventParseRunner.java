@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Predicate;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.ParsingResult;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>A {@link ParseRunner} streaming the matches of selected rules to a {@link ParseEventListener} while parsing,
+ * rather than having them collected in a parse tree or on the value stack. Together with a parser not building a
+ * parse tree (i.e. not annotated with {@code @BuildParseTree}) and rules without actions this makes for an extraction
+ * mode whose memory footprint only depends on the input size and the rule nesting depth.</p>
+ * <p>By default events are fired for all rules with a custom label, which includes all rules created by rule methods
+ * but also string and character literals. Use {@link #withLabels(String...)} or {@link #withFilter(Predicate)} to
+ * restrict the events to the rules of interest.</p>
+ * <p>Like the {@link BasicParseRunner} this runner performs a single parsing run and neither reports nor recovers
+ * from parse errors.</p>
+ */
+public class EventParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+    private final ParseEventListener listener;
+    private Predicate<Matcher> filter = new Predicate<Matcher>() {
+        public boolean apply(Matcher matcher) {
+            return matcher.hasCustomLabel();
+        }
+    };
+
+    /**
+     * Creates a new EventParseRunner instance for the given rule.
+     *
+     * @param rule     the parser rule
+     * @param listener the listener to send the rule events to
+     */
+    public EventParseRunner(Rule rule, ParseEventListener listener) {
+        super(rule);
+        this.listener = checkArgNotNull(listener, "listener");
+    }
+
+    /**
+     * Restricts the events to the rules with the given labels.
+     *
+     * @param labels the labels of the rules to fire events for
+     * @return this instance
+     */
+    public EventParseRunner<V> withLabels(String... labels) {
+        checkArgNotNull(labels, "labels");
+        final Set<String> selected = new HashSet<String>(Arrays.asList(labels));
+        return withFilter(new Predicate<Matcher>() {
+            public boolean apply(Matcher matcher) {
+                return selected.contains(matcher.getLabel());
+            }
+        });
+    }
+
+    /**
+     * Restricts the events to the rules accepted by the given filter.
+     *
+     * @param filter the filter selecting the rules to fire events for
+     * @return this instance
+     */
+    public EventParseRunner<V> withFilter(Predicate<Matcher> filter) {
+        this.filter = checkArgNotNull(filter, "filter");
+        return this;
+    }
+
+    public ParseEventListener getListener() {
+        return listener;
+    }
+
+    public ParsingResult<V> run(InputBuffer inputBuffer) {
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        long timeStamp = startRun();
+        resetValueStack();
+
+        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
+        boolean matched = rootContext.runMatcher();
+        return completeRun(timeStamp, createParsingResult(matched, rootContext), 0);
+    }
+
+    public boolean match(MatcherContext<?> context) {
+        Matcher matcher = context.getMatcher();
+        if (context.inPredicate() || !filter.apply(matcher)) {
+            boolean matched = matcher.match(context);
+            sampleRule(matcher, matched);
+            return matched;
+        }
+
+        int startIndex = context.getCurrentIndex();
+        listener.enter(matcher, startIndex);
+        boolean matched = matcher.match(context);
+        sampleRule(matcher, matched);
+        if (matched) listener.match(matcher, startIndex, context.getCurrentIndex());
+        listener.exit(matcher, startIndex, matched);
+        return matched;
+    }
+}
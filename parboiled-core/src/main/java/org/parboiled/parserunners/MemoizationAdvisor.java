@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.Rule;
+import org.parboiled.matchers.ActionMatcher;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.MismatchMemo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Recommends the rules whose mismatches are worth memoizing, based on the re-invocation figures of a
+ * {@link ProfilingParseRunner.Report}.</p>
+ * <p>For every rule the advisor estimates the time memoization would save, i.e. the mean time of an invocation
+ * times the number of re-invocations the memo would answer, minus the cost of a memo lookup for every invocation,
+ * as well as the memory the memo entries would take. Rules saving at least the configured minimum are recommended,
+ * with the most profitable ones first:</p>
+ * <ul>
+ * <li>{@link Kind#MEMO_MISMATCHES} recommendations can be applied right away, either by marking the rule with
+ * {@code @MemoMismatches} or, for the existing rule graph, with {@link #apply(AbstractParseRunner, List)}.</li>
+ * <li>{@link Kind#FULL_MEMOIZATION} recommendations point to rules that are mostly rematched at the same input
+ * location. Since parboiled does not memoize matches such rules usually call for left-factoring the alternatives
+ * they appear in, so these recommendations are informational only.</li>
+ * </ul>
+ * <p>Re-invocations are only tracked by the default (non-sampling) mode of the ProfilingParseRunner, reports created
+ * in sampling mode never result in any recommendations.</p>
+ */
+public class MemoizationAdvisor {
+    private double lookupNanos = 20.0;
+    private int mismatchEntryBytes = 2 * 8; // one long slot at up to 50% load in a MismatchMemo segment
+    private int matchEntryBytes = 64; // a match would also need to store the end index, value and parse tree node
+    private long minSavedNanos = 100000L;
+
+    public enum Kind {
+        MEMO_MISMATCHES, FULL_MEMOIZATION
+    }
+
+    /**
+     * Sets the estimated cost of one memo lookup.
+     *
+     * @param lookupNanos the cost in nanoseconds
+     * @return this instance
+     */
+    public MemoizationAdvisor withLookupCost(double lookupNanos) {
+        checkArgument(lookupNanos >= 0, "lookupNanos must not be negative");
+        this.lookupNanos = lookupNanos;
+        return this;
+    }
+
+    /**
+     * Sets the estimated memory cost of one memoized mismatch and one memoized match.
+     *
+     * @param mismatchEntryBytes the bytes per memoized mismatch
+     * @param matchEntryBytes    the bytes per memoized match
+     * @return this instance
+     */
+    public MemoizationAdvisor withEntrySizes(int mismatchEntryBytes, int matchEntryBytes) {
+        checkArgument(mismatchEntryBytes > 0 && matchEntryBytes > 0, "entry sizes must be positive");
+        this.mismatchEntryBytes = mismatchEntryBytes;
+        this.matchEntryBytes = matchEntryBytes;
+        return this;
+    }
+
+    /**
+     * Sets the time a rule must save at least in order to be recommended.
+     *
+     * @param minSavedNanos the minimum saving in nanoseconds over all runs of the report
+     * @return this instance
+     */
+    public MemoizationAdvisor withMinimumSaving(long minSavedNanos) {
+        checkArgument(minSavedNanos >= 0, "minSavedNanos must not be negative");
+        this.minSavedNanos = minSavedNanos;
+        return this;
+    }
+
+    /**
+     * Profiles the given rule on the given sample inputs and returns the recommendations for the resulting report.
+     *
+     * @param rule   the root rule
+     * @param inputs the sample inputs, should be representative of the production traffic
+     * @return the recommendations, most profitable first
+     */
+    public List<Recommendation> advise(Rule rule, String... inputs) {
+        checkArgNotNull(rule, "rule");
+        checkArgNotNull(inputs, "inputs");
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(rule);
+        for (String input : inputs) {
+            runner.run(input);
+        }
+        return advise(runner.getReport());
+    }
+
+    /**
+     * Returns the recommendations for the given profiling report.
+     *
+     * @param report the report
+     * @return the recommendations, most profitable first
+     */
+    public List<Recommendation> advise(ProfilingParseRunner.Report report) {
+        checkArgNotNull(report, "report");
+        List<Recommendation> recommendations = new ArrayList<Recommendation>();
+        int runs = Math.max(report.totalRuns, 1);
+        for (ProfilingParseRunner.RuleReport rep : report.ruleReports) {
+            Matcher matcher = rep.getMatcher();
+            if (matcher instanceof ActionMatcher || rep.getInvocations() == 0) continue;
+            double nanosPerInvocation = rep.getNanoTime() / (double) rep.getInvocations();
+            double lookupCost = rep.getInvocations() * lookupNanos;
+
+            if (!matcher.areMismatchesMemoed()) {
+                long saved = (long) (rep.getRemismatches() * nanosPerInvocation - lookupCost);
+                if (rep.getRemismatches() > 0 && saved >= minSavedNanos) {
+                    long bytes = (long) (rep.getMismatches() - rep.getRemismatches()) * mismatchEntryBytes / runs;
+                    recommendations.add(new Recommendation(Kind.MEMO_MISMATCHES, rep, saved, bytes));
+                }
+            }
+            long saved = (long) (rep.getReinvocations() * nanosPerInvocation - lookupCost);
+            if (rep.getRematches() > rep.getRemismatches() && saved >= minSavedNanos) {
+                long bytes = ((long) (rep.getMismatches() - rep.getRemismatches()) * mismatchEntryBytes +
+                        (long) (rep.getMatches() - rep.getRematches()) * matchEntryBytes) / runs;
+                recommendations.add(new Recommendation(Kind.FULL_MEMOIZATION, rep, saved, bytes));
+            }
+        }
+        Collections.sort(recommendations, new Comparator<Recommendation>() {
+            public int compare(Recommendation a, Recommendation b) {
+                return a.savedNanos < b.savedNanos ? 1 : a.savedNanos > b.savedNanos ? -1 : 0;
+            }
+        });
+        return recommendations;
+    }
+
+    /**
+     * Enables mismatch memoization on the given runner for all rules with a {@link Kind#MEMO_MISMATCHES}
+     * recommendation, see {@link AbstractParseRunner#withMemoizedMismatches(java.util.Collection)}.
+     *
+     * @param runner          the runner
+     * @param recommendations the recommendations to apply
+     * @return the given runner
+     */
+    public static <R extends AbstractParseRunner<?>> R apply(R runner, List<Recommendation> recommendations) {
+        checkArgNotNull(runner, "runner");
+        checkArgNotNull(recommendations, "recommendations");
+        List<Rule> rules = new ArrayList<Rule>();
+        for (Recommendation recommendation : recommendations) {
+            if (recommendation.kind == Kind.MEMO_MISMATCHES) rules.add(recommendation.rule);
+        }
+        runner.withMemoizedMismatches(rules);
+        return runner;
+    }
+
+    /**
+     * Prints the given recommendations as a table.
+     *
+     * @param recommendations the recommendations
+     * @return the table
+     */
+    public static String print(List<Recommendation> recommendations) {
+        checkArgNotNull(recommendations, "recommendations");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Rule                 | Memoization      | Invocations | Re-matches | Re-mismatches | " +
+                "Saved time | Memory\n");
+        sb.append("---------------------|------------------|-------------|------------|---------------|" +
+                "------------|---------\n");
+        for (Recommendation rec : recommendations) {
+            sb.append(String.format("%-20s | %-16s | %,11d | %,10d | %,13d | %,7.3f ms | %,5d KB\n",
+                    rec.rule.getLabel(), rec.kind, rec.invocations, rec.rematches, rec.remismatches,
+                    rec.savedNanos / 1000000.0, (rec.memoryBytes + 1023) / 1024));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A single recommendation.
+     */
+    public static class Recommendation {
+        public final Kind kind;
+        public final Matcher rule;
+        public final int invocations;
+        public final int rematches;
+        public final int remismatches;
+
+        /**
+         * The estimated time memoization would have saved over all runs of the report.
+         */
+        public final long savedNanos;
+
+        /**
+         * The estimated memory the memo entries of the rule would have taken in one run (averaged over all runs of
+         * the report), if no entries are evicted (see {@link MismatchMemo}).
+         */
+        public final long memoryBytes;
+
+        Recommendation(Kind kind, ProfilingParseRunner.RuleReport report, long savedNanos, long memoryBytes) {
+            this.kind = kind;
+            this.rule = report.getMatcher();
+            this.invocations = report.getInvocations();
+            this.rematches = report.getRematches();
+            this.remismatches = report.getRemismatches();
+            this.savedNanos = savedNanos;
+            this.memoryBytes = memoryBytes;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + rule.getLabel();
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.common.Factory;
+import org.parboiled.errors.ParseCancelledException;
+import org.parboiled.errors.ParseError;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.matchers.ActionMatcher;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.ProxyMatcher;
+import org.parboiled.support.Chars;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.Position;
+import org.parboiled.support.ValueStack;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+import static org.parboiled.common.Preconditions.checkState;
+
+/**
+ * <p>A {@link ParseRunner} for inputs consisting of a sequence of independent records, like log lines or
+ * ";"-terminated statements. The runner cuts the input into shards of roughly {@link #withShardSize(int) shard size}
+ * characters, each ending at a record boundary, and parses the shards concurrently on a {@link ForkJoinPool}.</p>
+ * <p>Record boundaries are found either with a delimiter char, which terminates every record, or with a splitter
+ * rule, which matches the separator between two records. In both cases the boundaries are only searched for near the
+ * shard ends, the input in between is never looked at before the actual parsing, so the splitting is cheap even
+ * for very large inputs.</p>
+ * <p>The rule given to this runner is run on every shard and must therefore match any sequence of complete records
+ * (e.g. {@code Sequence(ZeroOrMore(Record()), EOI)}). Every shard is parsed by a runner of its own, with its own
+ * value stack and parse error list. By default these are {@link BasicParseRunner}s for the given rule, a
+ * {@link #withShardRunners(Factory) shard runner factory} can provide any other {@link AbstractParseRunner}, e.g.
+ * a {@link ReportingParseRunner}. All shard runners parse the shared input buffer (starting at their shard's start
+ * index and seeing EOI at its end), so all indices they report are indices into the complete input. Input buffers that
+ * cannot be read by several threads at once (see {@link InputBufferUtils#isThreadSafe(InputBuffer)}) are copied
+ * before parsing. The limits and the cancellation token of this runner apply to its run as a whole, i.e. all shard
+ * runs share one deadline and one matcher invocation budget, and as soon as one shard fails with an exception the
+ * remaining shards are cancelled. The memoization settings and the metrics of this runner apply to every shard
+ * runner, with the shard runs being reported to the metrics as part of the run of this runner.</p>
+ * <p>The shard results are merged in input order: the run matched if all shards matched, the resulting value stack
+ * holds the values of all shard value stacks (the values of the last shard on top) and the parse errors of all shards
+ * are collected in the parse error list of this runner. Parse trees are not merged, the parse tree root of the result
+ * is always null.</p>
+ * <p>Note that the shards are parsed concurrently. Rules with context aware actions (as the actions of parboiled for
+ * Java parsers are) cannot be shared across threads, for them the shard runner factory has to create a runner for a
+ * new parser instance. The factory is called at most once per worker thread and run.</p>
+ *
+ * @param <V> the type of the value field of a parse tree node
+ */
+public class ParallelRecordParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+    private final char delimiter;
+    private final Matcher splitter;
+    private Factory<? extends AbstractParseRunner<V>> shardRunners;
+    private int shardSize = 1 << 20;
+    private ForkJoinPool pool;
+    private Boolean ruleShareable; // whether the rule can be run by several threads at once, determined lazily
+
+    /**
+     * Creates a new ParallelRecordParseRunner instance for the given rule, splitting the input after the given
+     * record delimiter.
+     *
+     * @param rule      the parser rule matching a sequence of records
+     * @param delimiter the char terminating every record
+     */
+    public ParallelRecordParseRunner(Rule rule, char delimiter) {
+        super(rule);
+        this.delimiter = delimiter;
+        this.splitter = null;
+    }
+
+    /**
+     * Creates a new ParallelRecordParseRunner instance for the given rule, splitting the input after the matches of
+     * the given splitter rule.
+     *
+     * @param rule     the parser rule matching a sequence of records
+     * @param splitter the rule matching the separator between two records
+     */
+    public ParallelRecordParseRunner(Rule rule, Rule splitter) {
+        super(rule);
+        this.delimiter = Chars.EOI;
+        this.splitter = ProxyMatcher.unwrap(checkArgNotNull((Matcher) splitter, "splitter"));
+    }
+
+    /**
+     * Sets the factory creating the runners parsing the individual shards.
+     *
+     * @param shardRunners the factory
+     * @return this instance
+     */
+    public ParallelRecordParseRunner<V> withShardRunners(Factory<? extends AbstractParseRunner<V>> shardRunners) {
+        this.shardRunners = checkArgNotNull(shardRunners, "shardRunners");
+        return this;
+    }
+
+    /**
+     * Sets the number of input characters after which a shard is to be ended at the next record boundary.
+     *
+     * @param shardSize the minimum shard size, 1M chars by default
+     * @return this instance
+     */
+    public ParallelRecordParseRunner<V> withShardSize(int shardSize) {
+        checkArgument(shardSize > 0, "shardSize must be positive");
+        this.shardSize = shardSize;
+        return this;
+    }
+
+    /**
+     * Sets the pool to parse the shards on.
+     *
+     * @param pool the pool, the common pool by default
+     * @return this instance
+     */
+    public ParallelRecordParseRunner<V> withPool(ForkJoinPool pool) {
+        this.pool = checkArgNotNull(pool, "pool");
+        return this;
+    }
+
+    public ParsingResult<V> run(InputBuffer inputBuffer) {
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        if (shardRunners == null && ruleShareable == null) {
+            ruleShareable = !hasContextAwareActions(getRootMatcher(), new IdentityHashMap<Matcher, Boolean>());
+        }
+        checkState(shardRunners != null || ruleShareable, "The rule contains context aware actions and cannot be " +
+                "shared across threads, please provide a shard runner factory creating a runner for a new parser");
+        long timeStamp = startRun();
+        resetValueStack();
+
+        List<IndexRange> shards = split(inputBuffer);
+        // splitting has converted lazy buffers completely, all others that are not thread-safe have to be copied
+        InputBuffer sharedBuffer = InputBufferUtils.isThreadSafe(inputBuffer) ? inputBuffer :
+                new SnapshotInputBuffer(inputBuffer);
+        ShardRun shardRun = new ShardRun(sharedBuffer);
+        ForkJoinPool shardPool = pool != null ? pool : ForkJoinPool.commonPool();
+        List<Future<ParsingResult<V>>> futures = new ArrayList<Future<ParsingResult<V>>>(shards.size());
+
+        boolean matched = true;
+        ValueStack<V> valueStack = getValueStack();
+        List<ParseError> parseErrors = getParseErrors();
+        try {
+            for (IndexRange shard : shards) {
+                futures.add(shardPool.submit(new ShardTask(shardRun, shard)));
+            }
+            for (Future<ParsingResult<V>> future : futures) {
+                ParsingResult<V> result = getResult(future, shardRun);
+                matched &= result.matched;
+                LinkedList<V> values = new LinkedList<V>();
+                for (V value : result.valueStack) values.addFirst(value);
+                for (V value : values) valueStack.push(value);
+                parseErrors.addAll(result.parseErrors);
+            }
+        } finally {
+            // stops the shards still running or waiting after a failure, a no-op if all shards have completed
+            shardRun.abort.cancel();
+            for (Future<ParsingResult<V>> future : futures) future.cancel(false);
+        }
+        return completeRun(timeStamp, new ParsingResult<V>(matched, null, valueStack, parseErrors, inputBuffer),
+                shardRun.shardMetrics != null ? shardRun.shardMetrics.getRecoveryIterations() : 0);
+    }
+
+    /**
+     * Cuts the input into shards ending at record boundaries.
+     *
+     * @param inputBuffer the input
+     * @return the shards in input order
+     */
+    protected List<IndexRange> split(InputBuffer inputBuffer) {
+        int length = InputBufferUtils.getLength(inputBuffer);
+        List<IndexRange> shards = new ArrayList<IndexRange>();
+        int start = getStartIndex();
+        while (start < length) {
+            int end = length - start > shardSize ? nextBoundary(inputBuffer, start + shardSize, length) : length;
+            shards.add(new IndexRange(start, end));
+            start = end;
+        }
+        if (shards.isEmpty()) shards.add(new IndexRange(start, start)); // empty inputs still have to be parsed
+        return shards;
+    }
+
+    private int nextBoundary(InputBuffer inputBuffer, int index, int length) {
+        for (; index < length; index++) {
+            if (splitter == null) {
+                if (inputBuffer.charAt(index) == delimiter) return index + 1;
+            } else {
+                MatcherContext<V> context = new MatcherContext<V>(inputBuffer, new DefaultValueStack<V>(),
+                        new ArrayList<ParseError>(), this, splitter, true);
+                context.setStartIndex(index);
+                context.setCurrentIndex(index);
+                if (context.runMatcher()) return context.getCurrentIndex();
+            }
+        }
+        return length;
+    }
+
+    public boolean match(MatcherContext<?> context) {
+        return context.getMatcher().match(context);
+    }
+
+    private ParsingResult<V> getResult(Future<ParsingResult<V>> future, ShardRun shardRun) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParseCancelledException(true, getStartIndex());
+        } catch (ExecutionException e) {
+            // the shard might merely have been cancelled because of the failure of another one
+            Throwable cause = shardRun.failure.get() != null ? shardRun.failure.get() : e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ParserRuntimeException(cause);
+        }
+    }
+
+    private static boolean hasContextAwareActions(Matcher matcher, Map<Matcher, Boolean> visited) {
+        matcher = ProxyMatcher.unwrap(matcher);
+        if (visited.containsKey(matcher)) return false;
+        visited.put(matcher, true);
+        if (matcher instanceof ActionMatcher) {
+            // synthetic actions generated by the parboiled for Java transformation manage the context themselves
+            ActionMatcher actionMatcher = (ActionMatcher) matcher;
+            if (actionMatcher.action.getClass().isSynthetic() || !actionMatcher.contextAwares.isEmpty()) return true;
+        }
+        for (Matcher child : matcher.getChildren()) {
+            if (hasContextAwareActions(child, visited)) return true;
+        }
+        return false;
+    }
+
+    // the state shared by the shard tasks of one run
+    private class ShardRun {
+        private final InputBuffer inputBuffer;
+        private final ThreadLocal<AbstractParseRunner<V>> runners = new ThreadLocal<AbstractParseRunner<V>>();
+        private final ShardMetrics shardMetrics = getMetrics() != null ? new ShardMetrics(getMetrics()) : null;
+        private final CancellationToken abort = new CancellationToken();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // the first one
+
+        private ShardRun(InputBuffer inputBuffer) {
+            this.inputBuffer = inputBuffer;
+        }
+
+        private void failed(Throwable t) {
+            failure.compareAndSet(null, t);
+            abort.cancel();
+        }
+    }
+
+    // parses one shard with the shard runner of the current worker thread
+    private class ShardTask implements Callable<ParsingResult<V>> {
+        private final ShardRun shardRun;
+        private final IndexRange shard;
+
+        private ShardTask(ShardRun shardRun, IndexRange shard) {
+            this.shardRun = shardRun;
+            this.shard = shard;
+        }
+
+        public ParsingResult<V> call() {
+            try {
+                return parse();
+            } catch (RuntimeException e) {
+                shardRun.failed(e);
+                throw e;
+            } catch (Error e) {
+                shardRun.failed(e);
+                throw e;
+            }
+        }
+
+        private ParsingResult<V> parse() {
+            AbstractParseRunner<V> runner = shardRun.runners.get();
+            if (runner == null) {
+                runner = shardRunners != null ? shardRunners.create() : new BasicParseRunner<V>(getRootMatcher());
+                ParseGuard guard = getGuard();
+                runner.withGuard(guard != null ? guard.share(shardRun.abort) : new ParseGuard(null, shardRun.abort));
+                if (getMemoCapacity() > 0) runner.withMemoCapacity(getMemoCapacity());
+                if (!getMemoizedMismatches().isEmpty()) runner.withMemoizedMismatches(getMemoizedMismatches());
+                if (shardRun.shardMetrics != null) runner.withMetrics(shardRun.shardMetrics);
+                shardRun.runners.set(runner);
+            }
+            runner.withValueStack(new DefaultValueStack<V>());
+            runner.withParseErrors(new ArrayList<ParseError>());
+            runner.withStartIndex(shard.start);
+            return runner.run(new ShardInputBuffer(shardRun.inputBuffer, shard.end));
+        }
+    }
+
+    // passes the rule samples of the shard runners on to the metrics of this runner and collects the statistics of
+    // the shard runs, which are reported as part of the run of this runner
+    private class ShardMetrics implements ParseMetrics {
+        private final ParseMetrics metrics;
+        private int recoveryIterations;
+
+        private ShardMetrics(ParseMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public int getRuleSamplingInterval() {
+            return metrics.getRuleSamplingInterval();
+        }
+
+        public void ruleSampled(Matcher matcher, boolean matched) {
+            metrics.ruleSampled(matcher, matched);
+        }
+
+        public synchronized void runCompleted(RunStats stats) {
+            addRunStats(stats);
+            recoveryIterations += stats.recoveryIterations;
+        }
+
+        private synchronized int getRecoveryIterations() {
+            return recoveryIterations;
+        }
+    }
+
+    // an immutable copy of the chars of an input buffer that cannot be read by several threads at once,
+    // all other methods are delegated to the original buffer
+    private static class SnapshotInputBuffer implements InputBuffer {
+        private final InputBuffer buffer;
+        private final DefaultInputBuffer chars;
+
+        private SnapshotInputBuffer(InputBuffer buffer) {
+            this.buffer = buffer;
+            char[] chars = new char[InputBufferUtils.getLength(buffer)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = buffer.charAt(i);
+            }
+            this.chars = new DefaultInputBuffer(chars);
+        }
+
+        public char charAt(int index) {
+            return chars.charAt(index);
+        }
+
+        public boolean test(int index, char[] characters) {
+            return chars.test(index, characters);
+        }
+
+        public synchronized String extract(int start, int end) {
+            return buffer.extract(start, end);
+        }
+
+        public synchronized String extract(IndexRange range) {
+            return buffer.extract(range);
+        }
+
+        public synchronized Position getPosition(int index) {
+            return buffer.getPosition(index);
+        }
+
+        public synchronized int getOriginalIndex(int index) {
+            return buffer.getOriginalIndex(index);
+        }
+
+        public synchronized String extractLine(int lineNumber) {
+            return buffer.extractLine(lineNumber);
+        }
+
+        public synchronized int getLineCount() {
+            return buffer.getLineCount();
+        }
+    }
+
+    // a view of the input buffer ending at the end of a shard, the (rarely used) line index based methods of the
+    // underlying buffer are synchronized since they are not necessarily thread-safe
+    private static class ShardInputBuffer implements InputBuffer {
+        private final InputBuffer buffer;
+        private final int end;
+
+        private ShardInputBuffer(InputBuffer buffer, int end) {
+            this.buffer = buffer;
+            this.end = end;
+        }
+
+        public char charAt(int index) {
+            return index < end ? buffer.charAt(index) :
+                    index - end > 100000 ? throwParsingException() : Chars.EOI;
+        }
+
+        private char throwParsingException() {
+            throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                    "verify that your grammar does not consume EOI indefinitely!");
+        }
+
+        public boolean test(int index, char[] characters) {
+            return index + characters.length <= end && buffer.test(index, characters);
+        }
+
+        public String extract(int start, int end) {
+            return buffer.extract(start, Math.min(end, this.end));
+        }
+
+        public String extract(IndexRange range) {
+            return extract(range.start, range.end);
+        }
+
+        public Position getPosition(int index) {
+            synchronized (buffer) {
+                return buffer.getPosition(index);
+            }
+        }
+
+        public int getOriginalIndex(int index) {
+            return buffer.getOriginalIndex(index);
+        }
+
+        public String extractLine(int lineNumber) {
+            synchronized (buffer) {
+                return buffer.extractLine(lineNumber);
+            }
+        }
+
+        public int getLineCount() {
+            synchronized (buffer) {
+                return buffer.getLineCount();
+            }
+        }
+    }
+}
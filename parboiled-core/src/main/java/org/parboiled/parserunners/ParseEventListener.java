@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.matchers.Matcher;
+
+/**
+ * <p>Receives the rule events of an {@link EventParseRunner}, similar to a SAX content handler.</p>
+ * <p>For every selected rule invocation outside of predicates the listener first receives an
+ * {@link #enter(Matcher, int)} event, then, if the rule matched, a {@link #match(Matcher, int, int)} event and finally
+ * an {@link #exit(Matcher, int, boolean)} event. Events of nested rules are properly nested within the ones of their
+ * parents.</p>
+ * <p>Since parboiled backtracks, a match reported for a rule is only final once all of its enclosing rules have
+ * exited successfully. A listener extracting data should therefore discard whatever it collected since the
+ * corresponding {@link #enter(Matcher, int)} event whenever a rule exits unsuccessfully.</p>
+ */
+public interface ParseEventListener {
+
+    /**
+     * Called when the given rule is about to be matched.
+     *
+     * @param rule       the rule
+     * @param startIndex the input index the rule starts matching at
+     */
+    void enter(Matcher rule, int startIndex);
+
+    /**
+     * Called when the given rule has matched.
+     *
+     * @param rule       the rule
+     * @param startIndex the index of the first input char matched by the rule
+     * @param endIndex   the index after the last input char matched by the rule
+     */
+    void match(Matcher rule, int startIndex, int endIndex);
+
+    /**
+     * Called after the given rule has been matched or failed to match.
+     *
+     * @param rule       the rule
+     * @param startIndex the input index the rule started matching at
+     * @param matched    whether the rule matched
+     */
+    void exit(Matcher rule, int startIndex, boolean matched);
+
+    /**
+     * A ParseEventListener ignoring all events, for listeners only interested in some of them.
+     */
+    public static class Adapter implements ParseEventListener {
+        public void enter(Matcher rule, int startIndex) {}
+
+        public void match(Matcher rule, int startIndex, int endIndex) {}
+
+        public void exit(Matcher rule, int startIndex, boolean matched) {}
+    }
+}
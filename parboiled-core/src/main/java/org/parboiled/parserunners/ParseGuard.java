@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchGuard;
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.errors.ParseCancelledException;
+import org.parboiled.errors.ParseLimitExceededException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.parboiled.parserunners.ParseLimits.Limit.*;
+
+/**
+ * Enforces the {@link ParseLimits} and the {@link CancellationToken} of one parsing run, across all parsing passes
+ * of the run, all handlers forked off the run by speculative matchers and all runners parsing parts of the run's
+ * input on other threads.
+ */
+class ParseGuard implements MatchGuard {
+    private final ParseLimits limits;
+    private final CancellationToken cancellationToken;
+    private final ParseGuard run; // the guard of the run whose limits this guard shares, null for run guards
+    private final long startTimeStamp;
+    private final AtomicLong sharedInvocations; // the invocations of all threads but the parsing thread of the run
+    private long invocations; // the invocations of the parsing thread, which waits while forked handlers run
+    private int pollCountdown = ParseLimits.TIMEOUT_CHECK_INTERVAL;
+
+    ParseGuard(ParseLimits limits, CancellationToken cancellationToken) {
+        this.limits = limits != null ? limits : new ParseLimits();
+        this.cancellationToken = cancellationToken;
+        this.run = null;
+        this.startTimeStamp = System.nanoTime();
+        this.sharedInvocations = new AtomicLong();
+    }
+
+    private ParseGuard(ParseGuard run, CancellationToken cancellationToken) {
+        this.limits = run.limits;
+        this.cancellationToken = cancellationToken;
+        this.run = run;
+        this.startTimeStamp = run.startTimeStamp;
+        this.sharedInvocations = run.sharedInvocations;
+    }
+
+    /**
+     * Creates a guard for a runner parsing a part of the input of this guard's run on another thread. The new guard
+     * enforces the limits and the cancellation of this guard's run, sharing its deadline and its matcher invocation
+     * budget, and additionally polls the given token.
+     *
+     * @param cancellationToken the additional token to poll, may be null
+     * @return the new guard
+     */
+    ParseGuard share(CancellationToken cancellationToken) {
+        return new ParseGuard(this, cancellationToken);
+    }
+
+    /**
+     * Wraps the given MatchHandler of the parsing thread with one that checks the limits before every matcher
+     * invocation.
+     *
+     * @param handler the handler to wrap
+     * @return the wrapping handler
+     */
+    MatchHandler guard(final MatchHandler handler) {
+        return new MatchHandler() {
+            public boolean match(MatcherContext<?> context) {
+                check(context);
+                return handler.match(context);
+            }
+        };
+    }
+
+    public MatchHandler guard(final MatchHandler handler, final int level) {
+        return new MatchHandler() {
+            private int pollCountdown = ParseLimits.TIMEOUT_CHECK_INTERVAL;
+
+            public boolean match(MatcherContext<?> context) {
+                check(context, invocations + sharedInvocations.incrementAndGet(), level + context.getLevel());
+                if (--pollCountdown == 0) {
+                    pollCountdown = ParseLimits.TIMEOUT_CHECK_INTERVAL;
+                    poll(context);
+                }
+                return handler.match(context);
+            }
+        };
+    }
+
+    void check(MatcherContext<?> context) {
+        long total = run != null ? sharedInvocations.incrementAndGet() : ++invocations + sharedInvocations.get();
+        check(context, total, context.getLevel());
+        if (--pollCountdown == 0) {
+            pollCountdown = ParseLimits.TIMEOUT_CHECK_INTERVAL;
+            poll(context);
+        }
+    }
+
+    private void check(MatcherContext<?> context, long invocations, int level) {
+        if (invocations > limits.getMaxInvocations()) {
+            throw new ParseLimitExceededException(MATCHER_INVOCATIONS, context.getCurrentIndex());
+        }
+        if (level > limits.getMaxDepth()) {
+            throw new ParseLimitExceededException(DEPTH, context.getCurrentIndex());
+        }
+        if (context.getMemoSize() > limits.getMaxMemoEntries()) {
+            throw new ParseLimitExceededException(MEMO_ENTRIES, context.getCurrentIndex());
+        }
+    }
+
+    private void poll(MatcherContext<?> context) {
+        if (System.nanoTime() - startTimeStamp > limits.getTimeoutNanos()) {
+            throw new ParseLimitExceededException(TIMEOUT, context.getCurrentIndex());
+        }
+        if (isCancelled(cancellationToken) || run != null && isCancelled(run.cancellationToken)) {
+            throw new ParseCancelledException(false, context.getCurrentIndex());
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ParseCancelledException(true, context.getCurrentIndex());
+        }
+    }
+
+    private static boolean isCancelled(CancellationToken cancellationToken) {
+        return cancellationToken != null && cancellationToken.isCancelled();
+    }
+}
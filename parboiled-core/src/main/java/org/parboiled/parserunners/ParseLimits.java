@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Resource limits for parsing runs, attached to a runner with
+ * {@link AbstractParseRunner#withLimits(ParseLimits)}. Whenever a run exceeds one of the configured limits it is
+ * aborted with a {@link org.parboiled.errors.ParseLimitExceededException}.</p>
+ * <p>All limits apply to a complete parsing run, i.e. for runners performing several parsing passes (like the
+ * {@link ReportingParseRunner} or the {@link RecoveringParseRunner}) the matcher invocations of all passes are
+ * counted against the same budget. The timeout (as well as an attached {@link CancellationToken}) is checked only
+ * every {@link #TIMEOUT_CHECK_INTERVAL} matcher invocations in order to keep the overhead of the checks low.</p>
+ */
+public class ParseLimits {
+    public static final int TIMEOUT_CHECK_INTERVAL = 256;
+
+    /**
+     * The kinds of limits a parsing run can exceed.
+     */
+    public enum Limit {
+        MATCHER_INVOCATIONS, DEPTH, MEMO_ENTRIES, TIMEOUT
+    }
+
+    private long maxInvocations = Long.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxMemoEntries = Integer.MAX_VALUE;
+    private long timeoutNanos = Long.MAX_VALUE;
+
+    /**
+     * Limits the number of matcher invocations per parsing run.
+     *
+     * @param maxInvocations the maximum number of matcher invocations
+     * @return this instance
+     */
+    public ParseLimits withMaxInvocations(long maxInvocations) {
+        checkArgument(maxInvocations > 0, "maxInvocations must be positive");
+        this.maxInvocations = maxInvocations;
+        return this;
+    }
+
+    /**
+     * Limits the rule nesting depth, i.e. the {@link org.parboiled.MatcherContext#getLevel()} of the matcher
+     * contexts. This protects against stack overflows on deeply nested input.
+     *
+     * @param maxDepth the maximum context level
+     * @return this instance
+     */
+    public ParseLimits withMaxDepth(int maxDepth) {
+        checkArgument(maxDepth > 0, "maxDepth must be positive");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Limits the number of entries in the mismatch memo of rules marked with @MemoMismatches per parsing pass.
+     *
+     * @param maxMemoEntries the maximum number of memoized mismatches
+     * @return this instance
+     */
+    public ParseLimits withMaxMemoEntries(int maxMemoEntries) {
+        checkArgument(maxMemoEntries > 0, "maxMemoEntries must be positive");
+        this.maxMemoEntries = maxMemoEntries;
+        return this;
+    }
+
+    /**
+     * Limits the wall-clock time of a parsing run.
+     *
+     * @param timeoutMillis the timeout in milliseconds
+     * @return this instance
+     */
+    public ParseLimits withTimeout(long timeoutMillis) {
+        checkArgument(timeoutMillis > 0, "timeoutMillis must be positive");
+        this.timeoutNanos = timeoutMillis > Long.MAX_VALUE / 1000000 ? Long.MAX_VALUE : timeoutMillis * 1000000;
+        return this;
+    }
+
+    public long getMaxInvocations() {
+        return maxInvocations;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxMemoEntries() {
+        return maxMemoEntries;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+}
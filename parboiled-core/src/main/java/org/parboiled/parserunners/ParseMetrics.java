@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.matchers.Matcher;
+
+/**
+ * <p>A lightweight listener interface through which {@link AbstractParseRunner} implementations report metrics about
+ * their parsing runs. In contrast to the {@link ProfilingParseRunner} a ParseMetrics instance is meant to be attached
+ * to runners in production, so implementations should be cheap and thread-safe, since one instance is typically
+ * shared by many runners on many threads.</p>
+ * <p>Each call to one of the "run" methods of a runner with attached metrics results in exactly one
+ * {@link #runCompleted(RunStats)} call, independently of the number of parsing passes the runner performs internally.
+ * Additionally every n-th matcher invocation (with n being the {@link #getRuleSamplingInterval()}) is reported via
+ * {@link #ruleSampled(Matcher, boolean)}.</p>
+ *
+ * @see DefaultParseMetrics
+ */
+public interface ParseMetrics {
+
+    /**
+     * Returns the number of matcher invocations between two {@link #ruleSampled(Matcher, boolean)} calls.
+     * A value of zero or less disables rule sampling completely.
+     *
+     * @return the rule sampling interval
+     */
+    int getRuleSamplingInterval();
+
+    /**
+     * Called for every n-th matcher invocation, with n being the {@link #getRuleSamplingInterval()}.
+     *
+     * @param matcher the matcher that was just run
+     * @param matched true if the matcher matched
+     */
+    void ruleSampled(Matcher matcher, boolean matched);
+
+    /**
+     * Called once at the end of each parsing run.
+     *
+     * @param stats the statistics of the run
+     */
+    void runCompleted(RunStats stats);
+
+    /**
+     * Simple container for the statistics of one parsing run.
+     */
+    public static class RunStats {
+
+        /**
+         * The type of the ParseRunner having performed the run.
+         */
+        public final Class<?> runnerType;
+
+        /**
+         * The wall-clock time the run took in nanoseconds.
+         */
+        public final long nanoTime;
+
+        /**
+         * The number of characters in the input buffer.
+         */
+        public final int inputLength;
+
+        /**
+         * Indicates whether the input was successfully parsed.
+         */
+        public final boolean matched;
+
+        /**
+         * The number of parse errors in the run result.
+         */
+        public final int errorCount;
+
+        /**
+         * The number of parsing passes over the input (1 for error-free input).
+         */
+        public final int passes;
+
+        /**
+         * The number of error recovery iterations (only non-zero for the {@link RecoveringParseRunner}).
+         */
+        public final int recoveryIterations;
+
+        /**
+         * The number of lookups into the mismatch memo of rules marked with @MemoMismatches.
+         */
+        public final long memoLookups;
+
+        /**
+         * The number of mismatch memo lookups that hit.
+         */
+        public final long memoHits;
+
+        /**
+         * The largest number of entries the mismatch memo held at any one time in any of the parsing passes.
+         */
+        public final int memoPeakSize;
+
+        /**
+         * The number of mismatch memo entries evicted, either due to commits or due to the memo capacity.
+         */
+        public final long memoEvictions;
+
+        public RunStats(Class<?> runnerType, long nanoTime, int inputLength, boolean matched, int errorCount,
+                        int passes, int recoveryIterations, long memoLookups, long memoHits) {
+            this(runnerType, nanoTime, inputLength, matched, errorCount, passes, recoveryIterations, memoLookups,
+                    memoHits, 0, 0L);
+        }
+
+        public RunStats(Class<?> runnerType, long nanoTime, int inputLength, boolean matched, int errorCount,
+                        int passes, int recoveryIterations, long memoLookups, long memoHits, int memoPeakSize,
+                        long memoEvictions) {
+            this.runnerType = runnerType;
+            this.nanoTime = nanoTime;
+            this.inputLength = inputLength;
+            this.matched = matched;
+            this.errorCount = errorCount;
+            this.passes = passes;
+            this.recoveryIterations = recoveryIterations;
+            this.memoLookups = memoLookups;
+            this.memoHits = memoHits;
+            this.memoPeakSize = memoPeakSize;
+            this.memoEvictions = memoEvictions;
+        }
+
+        /**
+         * @return the share of mismatch memo lookups that hit or NaN if there were no lookups
+         */
+        public double getMemoHitRate() {
+            return ((double) memoHits) / memoLookups;
+        }
+    }
+}
@@ -29,7 +29,7 @@ import org.parboiled.support.ParsingResult;
 import java.text.DecimalFormat;
 import java.util.*;
 
-import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.*;
 import static org.parboiled.common.Utils.humanize;
 
 /**
@@ -37,6 +37,13 @@ import static org.parboiled.common.Utils.humanize;
  * of inputs and collects all sorts of statistical data on the what rules have matched how many times, the number
  * of reincovations of rules at identical input locations, and so on.</p>
  * <p>The ProfilingParseRunner is typically used during parser debugging and optimization, not in production.</p>
+ * <p>In its default mode the runner measures every single rule invocation, which perturbs the measured timings
+ * considerably. When switched to sampling mode with {@link #withSampling(int)} only every n-th rule invocation is
+ * measured. The runner then neither tracks invocations per input position nor walks the rule tree before each run,
+ * so re-invocation figures are not available, match counts and times are estimates scaled up by the sampling
+ * interval and times are gross (i.e. include the time spent in sub rules). In exchange the overhead is small enough
+ * to profile real traffic and the report contains the sampled rule stacks in "collapsed stack" format
+ * (see {@link Report#printFlameGraph()}).</p>
  *
  * @param <V>
  */
@@ -51,6 +58,16 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
     private long totalNanoTime;
     private long timeCorrection;
 
+    // sampling mode state, per-rule counters are indexed by the matcher ids assigned in sampledMatcherIds
+    private int samplingInterval;
+    private int samplingCountdown;
+    private final Map<Matcher, Integer> sampledMatcherIds = new IdentityHashMap<Matcher, Integer>();
+    private Matcher[] sampledMatchers = new Matcher[16];
+    private long[] sampledMatches = new long[16];
+    private long[] sampledMismatches = new long[16];
+    private long[] sampledNanoTimes = new long[16];
+    private final Map<String, Long> collapsedStacks = new HashMap<String, Long>();
+
     private final DoWithMatcherVisitor.Action updateStatsAction = new DoWithMatcherVisitor.Action() {
         public void process(Matcher matcher) {
             RuleStats ruleStats = (RuleStats) matcher.getTag();
@@ -85,15 +102,40 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         super(rule);
     }
 
+    /**
+     * Switches this runner into sampling mode, in which only every n-th rule invocation is measured.
+     * Must be called before the first run.
+     *
+     * @param interval the number of rule invocations between two samples, must be positive
+     * @return this instance
+     */
+    public ProfilingParseRunner<V> withSampling(int interval) {
+        checkArgument(interval > 0, "interval must be positive");
+        checkState(totalRuns == 0, "Sampling mode must be enabled before the first run");
+        samplingInterval = interval;
+        samplingCountdown = interval;
+        return this;
+    }
+
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
+        long metricsTimeStamp = startRun();
         resetValueStack();
         totalRuns++;
 
+        if (samplingInterval > 0) {
+            MatcherContext<V> rootContext = createRootContext(inputBuffer, new Sampler(), true);
+            long timeStamp = System.nanoTime();
+            boolean matched = rootContext.runMatcher();
+            totalNanoTime += System.nanoTime() - timeStamp;
+            return completeRun(metricsTimeStamp, createParsingResult(matched, rootContext), 0);
+        }
+
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
         rootContext.getMatcher().accept(new DoWithMatcherVisitor(new DoWithMatcherVisitor.Action() {
             public void process(Matcher matcher) {
-                RuleStats ruleStats = (RuleStats) matcher.getTag();
+                Object tag = matcher.getTag();
+                RuleStats ruleStats = tag instanceof RuleStats ? (RuleStats) tag : null;
                 if (ruleStats == null) {
                     ruleStats = new RuleStats();
                     matcher.setTag(ruleStats);
@@ -109,14 +151,38 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         totalNanoTime += System.nanoTime() - timeCorrection - timeStamp;
 
         getRootMatcher().accept(new DoWithMatcherVisitor(updateStatsAction));
-        return createParsingResult(matched, rootContext);
+        return completeRun(metricsTimeStamp, createParsingResult(matched, rootContext), 0);
     }
 
     public Report getReport() {
+        if (samplingInterval > 0) return getSampledReport();
         return new Report(totalRuns, totalMatches, totalMismatches, totalRematches, totalRemismatches,
                 totalNanoTime, new ArrayList<RuleReport>(ruleReports.values()));
     }
 
+    private Report getSampledReport() {
+        List<RuleReport> reports = new ArrayList<RuleReport>(sampledMatcherIds.size());
+        long matches = 0, mismatches = 0;
+        for (int id = 0; id < sampledMatcherIds.size(); id++) {
+            RuleReport ruleReport = new RuleReport(sampledMatchers[id]);
+            long ruleMatches = sampledMatches[id] * samplingInterval;
+            long ruleMismatches = sampledMismatches[id] * samplingInterval;
+            ruleReport.update(saturate(ruleMatches), 0, saturate(ruleMismatches), 0, 0, 0, 0, 0,
+                    sampledNanoTimes[id] * samplingInterval);
+            reports.add(ruleReport);
+            matches += ruleMatches;
+            mismatches += ruleMismatches;
+        }
+        return new Report(totalRuns, saturate(matches), saturate(mismatches), 0, 0, totalNanoTime, reports,
+                new HashMap<String, Long>(collapsedStacks));
+    }
+
+    // the extrapolated counts of long sampling sessions can exceed the int counters of the reports,
+    // we cap them at a value that still allows for adding up matches and mismatches
+    private static int saturate(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE / 2);
+    }
+
     public boolean match(MatcherContext<?> context) {
         long timeStamp = System.nanoTime();
         Matcher matcher = context.getMatcher();
@@ -138,6 +204,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         time = System.nanoTime();
         ruleStats.nanoTime += time - timeCorrection - timeStamp;
         timeStamp = time;
+        sampleRule(matcher, matched);
 
         subMatches += runMatches;
 
@@ -170,6 +237,68 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         return matched;
     }
 
+    /**
+     * The MatchHandler used in sampling mode.
+     */
+    private class Sampler implements MatchHandler {
+        public boolean match(MatcherContext<?> context) {
+            Matcher matcher = context.getMatcher();
+            if (--samplingCountdown > 0) {
+                boolean matched = matcher.match(context);
+                sampleRule(matcher, matched);
+                return matched;
+            }
+            samplingCountdown = samplingInterval;
+
+            int id = getSampledMatcherId(matcher);
+            String stack = getCollapsedStack(context);
+            long timeStamp = System.nanoTime();
+            boolean matched = matcher.match(context);
+            sampledNanoTimes[id] += System.nanoTime() - timeStamp;
+            sampleRule(matcher, matched);
+            if (matched) {
+                sampledMatches[id]++;
+            } else {
+                sampledMismatches[id]++;
+            }
+            Long count = collapsedStacks.get(stack);
+            collapsedStacks.put(stack, count == null ? 1L : count + 1);
+            return matched;
+        }
+
+        private int getSampledMatcherId(Matcher matcher) {
+            Integer id = sampledMatcherIds.get(matcher);
+            if (id == null) {
+                id = sampledMatcherIds.size();
+                sampledMatcherIds.put(matcher, id);
+                if (id == sampledMatchers.length) {
+                    int size = id * 2;
+                    sampledMatchers = Arrays.copyOf(sampledMatchers, size);
+                    sampledMatches = Arrays.copyOf(sampledMatches, size);
+                    sampledMismatches = Arrays.copyOf(sampledMismatches, size);
+                    sampledNanoTimes = Arrays.copyOf(sampledNanoTimes, size);
+                }
+                sampledMatchers[id] = matcher;
+            }
+            return id;
+        }
+
+        private String getCollapsedStack(MatcherContext<?> context) {
+            StringBuilder sb = new StringBuilder();
+            appendFrames(context, sb);
+            return sb.toString();
+        }
+
+        private void appendFrames(MatcherContext<?> context, StringBuilder sb) {
+            if (context.getParent() != null) {
+                appendFrames(context.getParent(), sb);
+                sb.append(';');
+            }
+            // frames must contain neither frame separators nor the space separating the stack from the count
+            sb.append(context.getMatcher().getLabel().replace(';', ',').replace(' ', '_'));
+        }
+    }
+
     private static class RuleStats {
         private int matches;
         private int mismatches;
@@ -225,9 +354,16 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public final double reinvocationShare;
         public final long totalNanoTime;
         public final List<RuleReport> ruleReports;
+        public final Map<String, Long> collapsedStacks;
 
         public Report(int totalRuns, int totalMatches, int totalMismatches, int rematches, int remismatches,
                       long totalNanoTime, List<RuleReport> ruleReports) {
+            this(totalRuns, totalMatches, totalMismatches, rematches, remismatches, totalNanoTime, ruleReports,
+                    Collections.<String, Long>emptyMap());
+        }
+
+        public Report(int totalRuns, int totalMatches, int totalMismatches, int rematches, int remismatches,
+                      long totalNanoTime, List<RuleReport> ruleReports, Map<String, Long> collapsedStacks) {
             this.totalRuns = totalRuns;
             this.totalInvocations = totalMatches + totalMismatches;
             this.totalMatches = totalMatches;
@@ -239,6 +375,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             this.reinvocationShare = ((double) reinvocations) / totalInvocations;
             this.totalNanoTime = totalNanoTime;
             this.ruleReports = ruleReports;
+            this.collapsedStacks = collapsedStacks;
         }
 
         public String print() {
@@ -283,6 +420,23 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             return sb.toString();
         }
 
+        /**
+         * Prints the rule stacks sampled in sampling mode in the "collapsed stack" format understood by the common
+         * flame graph tools (one line per distinct stack, frames separated by ';', followed by a space and the
+         * number of samples). Returns an empty string for reports created in non-sampling mode.
+         *
+         * @return the collapsed stacks
+         */
+        public String printFlameGraph() {
+            List<String> stacks = new ArrayList<String>(collapsedStacks.keySet());
+            Collections.sort(stacks);
+            StringBuilder sb = new StringBuilder();
+            for (String stack : stacks) {
+                sb.append(stack).append(' ').append(collapsedStacks.get(stack)).append('\n');
+            }
+            return sb.toString();
+        }
+
         public String printTopRules(int count, Predicate<RuleReport> filter) {
             checkArgNotNull(filter, "filter");
             StringBuilder sb = new StringBuilder();
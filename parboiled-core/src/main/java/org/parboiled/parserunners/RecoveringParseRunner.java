@@ -74,6 +74,7 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
     private MutableInputBuffer buffer;
     private ParsingResult<V> lastParsingResult;
     private Matcher rootMatcherWithoutPTB; // the root matcher with parse tree building disabled
+    private int recoveryIterations;
 
     /**
      * Create a new RecoveringParseRunner instance with the given rule and input text and returns the result of
@@ -119,14 +120,15 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
 
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
+        long metricsTimeStamp = startRun();
         startTimeStamp = System.nanoTime();
+        recoveryIterations = 0;
         resetValueStack();
 
         // first, run a basic match
-        ParseRunner<V> basicRunner = new BasicParseRunner<V>(getRootMatcher())
-                .withParseErrors(getParseErrors())
-                .withValueStack(getValueStack());
-        lastParsingResult = basicRunner.run(inputBuffer);
+        BasicParseRunner<V> basicRunner = new BasicParseRunner<V>(getRootMatcher());
+        basicRunner.withParseErrors(getParseErrors()).withValueStack(getValueStack());
+        lastParsingResult = runPass(basicRunner, inputBuffer);
 
         if (!lastParsingResult.matched) {
             // for better performance disable parse tree building during the recovery runs
@@ -144,8 +146,10 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
 
             // fix and report until done
             while (!fixError(errorIndex)) {
+                recoveryIterations++;
                 performReportingRun();
             }
+            recoveryIterations++;
 
             // rerun once more with parse tree building enabled to create a parse tree for the fixed input
             if (!getRootMatcher().isNodeSuppressed()) {
@@ -153,15 +157,15 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
                 checkState(lastParsingResult.matched);
             }
         }
-        return lastParsingResult;
+        return completeRun(metricsTimeStamp, lastParsingResult, recoveryIterations);
     }
 
     private boolean performLocatingRun(InputBuffer inputBuffer) {
         resetValueStack();
-        ParseRunner<V> locatingRunner = new ErrorLocatingParseRunner<V>(rootMatcherWithoutPTB, getInnerHandler())
-                .withParseErrors(getParseErrors())
-                .withValueStack(getValueStack());
-        lastParsingResult = locatingRunner.run(inputBuffer);
+        ErrorLocatingParseRunner<V> locatingRunner =
+                new ErrorLocatingParseRunner<V>(rootMatcherWithoutPTB, getInnerHandler());
+        locatingRunner.withParseErrors(getParseErrors()).withValueStack(getValueStack());
+        lastParsingResult = runPass(locatingRunner, inputBuffer);
         errorIndex = lastParsingResult.matched ? -1 :
                 getParseErrors().remove(getParseErrors().size() - 1).getStartIndex();
         return lastParsingResult.matched;
@@ -169,11 +173,10 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
 
     private void performReportingRun() {
         resetValueStack();
-        ParseRunner<V> reportingRunner = new ErrorReportingParseRunner<V>(rootMatcherWithoutPTB, errorIndex,
-                getInnerHandler())
-                .withParseErrors(getParseErrors())
-                .withValueStack(getValueStack());
-        ParsingResult<V> result = reportingRunner.run(buffer);
+        ErrorReportingParseRunner<V> reportingRunner =
+                new ErrorReportingParseRunner<V>(rootMatcherWithoutPTB, errorIndex, getInnerHandler());
+        reportingRunner.withParseErrors(getParseErrors()).withValueStack(getValueStack());
+        ParsingResult<V> result = runPass(reportingRunner, buffer);
         Preconditions.checkState(!result.matched); // we failed before so we should really be failing again
         currentError = (InvalidInputError) getParseErrors().get(getParseErrors().size() - 1);
     }
@@ -60,11 +60,12 @@ public class ReportingParseRunner<V> extends AbstractParseRunner<V> {
 
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
+        long timeStamp = startRun();
         resetValueStack();
 
         // first, run a basic match
         ParsingResult<V> result = runBasicMatch(inputBuffer);
-        if (result.matched) return result; // all good
+        if (result.matched) return completeRun(timeStamp, result, 0); // all good
 
         // ok, we have a parse error, so determine the error location
         resetValueStack();
@@ -76,27 +77,26 @@ public class ReportingParseRunner<V> extends AbstractParseRunner<V> {
         resetValueStack();
         result = runReportingMatch(inputBuffer, result.parseErrors.get(0).getStartIndex());
         Preconditions.checkState(!result.matched); // we failed before so we should really be failing again
-        return result;
+        return completeRun(timeStamp, result, 0);
     }
 
     protected ParsingResult<V> runBasicMatch(InputBuffer inputBuffer) {
-        ParseRunner<V> basicRunner = new BasicParseRunner<V>(getRootMatcher())
-            .withParseErrors(getParseErrors())
-            .withValueStack(getValueStack());
-        return basicRunner.run(inputBuffer);
+        BasicParseRunner<V> basicRunner = new BasicParseRunner<V>(getRootMatcher());
+        basicRunner.withParseErrors(getParseErrors()).withValueStack(getValueStack());
+        return runPass(basicRunner, inputBuffer);
     }
 
     protected ParsingResult<V> runLocatingMatch(InputBuffer inputBuffer) {
-        ParseRunner<V> locatingRunner = new ErrorLocatingParseRunner<V>(getRootMatcher())
-                .withValueStack(getValueStack());
-        return locatingRunner.run(inputBuffer);
+        ErrorLocatingParseRunner<V> locatingRunner = new ErrorLocatingParseRunner<V>(getRootMatcher());
+        locatingRunner.withValueStack(getValueStack());
+        return runPass(locatingRunner, inputBuffer);
     }
 
     protected ParsingResult<V> runReportingMatch(InputBuffer inputBuffer, int errorIndex) {
-        ParseRunner<V> reportingRunner = new ErrorReportingParseRunner<V>(getRootMatcher(), errorIndex)
-                .withParseErrors(getParseErrors())
-                .withValueStack(getValueStack());
-        return reportingRunner.run(inputBuffer);
+        ErrorReportingParseRunner<V> reportingRunner =
+                new ErrorReportingParseRunner<V>(getRootMatcher(), errorIndex);
+        reportingRunner.withParseErrors(getParseErrors()).withValueStack(getValueStack());
+        return runPass(reportingRunner, inputBuffer);
     }
 }
 
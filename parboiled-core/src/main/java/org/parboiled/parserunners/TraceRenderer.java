@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Sink;
+import org.parboiled.support.Position;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.parserunners.AsyncTraceWriter.*;
+
+/**
+ * <p>Renders a binary trace written by a {@link TracingParseRunner} configured with
+ * {@link TracingParseRunner#withTraceOutput(java.io.OutputStream)} into the same text format the runner produces
+ * when logging directly.</p>
+ * <p>A trace is a sequence of records, each starting with a one-byte tag:</p>
+ * <ul>
+ * <li>'R': start of a parsing run, resets the matcher table</li>
+ * <li>'D' + int byte count + UTF-8 bytes: defines the label of the next matcher id (ids are assigned sequentially
+ * per run)</li>
+ * <li>'E' + int matcher id: a matcher invocation starts</li>
+ * <li>'M' / 'F' + int input index: the innermost invocation matched / failed, leaving the cursor at the given
+ * index, and was selected by the runners filter</li>
+ * <li>'X': the innermost invocation ended but was not selected by the runners filter</li>
+ * </ul>
+ * <p>Since the trace only contains input indices the input buffer of the traced run has to be supplied
+ * for rendering.</p>
+ */
+public class TraceRenderer {
+    private final InputBuffer inputBuffer;
+    private final Sink<String> log;
+    private final List<String> labels = new ArrayList<String>();
+    private int[] frameIds = new int[64];
+    private long[] frameSerials = new long[64];
+    private long[] lastSerials = new long[64];
+    private int depth;
+    private int lastDepth = -1;
+    private long serial;
+
+    /**
+     * Creates a new TraceRenderer.
+     *
+     * @param inputBuffer the input buffer of the traced parsing run(s)
+     * @param log         the log receiving the rendered trace
+     */
+    public TraceRenderer(InputBuffer inputBuffer, Sink<String> log) {
+        this.inputBuffer = checkArgNotNull(inputBuffer, "inputBuffer");
+        this.log = checkArgNotNull(log, "log");
+    }
+
+    /**
+     * Renders the given binary trace into the given log.
+     *
+     * @param trace       the binary trace
+     * @param inputBuffer the input buffer of the traced parsing run(s)
+     * @param log         the log receiving the rendered trace
+     */
+    public static void render(InputStream trace, InputBuffer inputBuffer, Sink<String> log) {
+        new TraceRenderer(inputBuffer, log).render(trace);
+    }
+
+    /**
+     * Renders the given binary trace.
+     *
+     * @param trace the binary trace
+     */
+    public void render(InputStream trace) {
+        checkArgNotNull(trace, "trace");
+        DataInputStream in = new DataInputStream(new BufferedInputStream(trace, 65536));
+        try {
+            while (true) {
+                int tag = in.read();
+                switch (tag) {
+                    case -1:
+                        return;
+                    case RUN_RECORD:
+                        log.receive("Starting new parsing run\n");
+                        labels.clear();
+                        depth = 0;
+                        lastDepth = -1;
+                        break;
+                    case DEFINITION_RECORD:
+                        byte[] label = new byte[in.readInt()];
+                        in.readFully(label);
+                        labels.add(new String(label, UTF8));
+                        break;
+                    case ENTER_RECORD:
+                        enter(in.readInt());
+                        break;
+                    case MATCHED_RECORD:
+                    case FAILED_RECORD:
+                        print(tag == MATCHED_RECORD, in.readInt());
+                        depth--;
+                        break;
+                    case SKIPPED_EXIT_RECORD:
+                        depth--;
+                        break;
+                    default:
+                        throw new IOException("Illegal trace record tag " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            throw new RuntimeException("Unexpected end of parse trace", e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void enter(int id) {
+        if (depth == frameIds.length) {
+            frameIds = Arrays.copyOf(frameIds, depth * 2);
+            frameSerials = Arrays.copyOf(frameSerials, depth * 2);
+        }
+        frameIds[depth] = id;
+        frameSerials[depth] = serial++;
+        depth++;
+    }
+
+    // mirrors the MatcherPath based formatting of TracingParseRunner, with each invocation identified by its serial
+    private void print(boolean matched, int index) {
+        int prefix = 0;
+        int max = Math.min(depth, lastDepth);
+        while (prefix < max && frameSerials[prefix] == lastSerials[prefix]) prefix++;
+        if (prefix > 1) log.receive("..(" + (prefix - 1) + ")../");
+
+        StringBuilder sb = new StringBuilder();
+        int start = Math.max(prefix - 1, 0);
+        for (int i = start; i < depth; i++) {
+            if (i > start) sb.append('/');
+            sb.append(labels.get(frameIds[i]));
+        }
+        log.receive(sb.toString());
+
+        Position pos = inputBuffer.getPosition(index);
+        String line = inputBuffer.extractLine(pos.line);
+        log.receive(", " + (matched ? "matched" : "failed") + ", cursor at " + pos.line + ':' + pos.column +
+                " after \"" + line.substring(0, Math.min(line.length(), pos.column - 1)) + "\"\n");
+
+        if (lastSerials.length < depth) lastSerials = new long[frameSerials.length];
+        System.arraycopy(frameSerials, 0, lastSerials, 0, depth);
+        lastDepth = depth;
+    }
+}
@@ -27,7 +27,10 @@ import org.parboiled.support.MatcherPath;
 import org.parboiled.support.ParsingResult;
 import org.parboiled.support.Position;
 
+import java.io.OutputStream;
+
 import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
 
 /**
  * A {@link org.parboiled.parserunners.ParseRunner} implementation used for debugging purposes.
@@ -39,6 +42,9 @@ public class TracingParseRunner<V> extends ReportingParseRunner<V> implements Ma
     private Sink<String> log;
     private MatcherPath lastPath;
     private int line;
+    private OutputStream traceOutput;
+    private int traceBufferSize = 1 << 16;
+    private AsyncTraceWriter traceWriter;
 
     /**
      * Creates a new TracingParseRunner instance without filter and a console log for the given rule.
@@ -93,8 +99,47 @@ public class TracingParseRunner<V> extends ReportingParseRunner<V> implements Ma
         return log;
     }
 
+    /**
+     * Switches this TracingParseRunner to binary trace output. Instead of formatting a log line for every selected
+     * matcher invocation the runner then writes a compact event stream into a ring buffer, which is drained into the
+     * given stream by a background thread. Each run waits for the trace of the run to be completely written before
+     * returning, the given stream is flushed but not closed.
+     * Use a {@link TraceRenderer} to turn the binary trace into the regular text format.
+     *
+     * @param traceOutput the stream to write the binary trace to
+     * @return this instance
+     */
+    public TracingParseRunner<V> withTraceOutput(OutputStream traceOutput) {
+        this.traceOutput = checkArgNotNull(traceOutput, "traceOutput");
+        return this;
+    }
+
+    /**
+     * Sets the number of trace events the ring buffer used for binary trace output can hold (default: 65536).
+     *
+     * @param traceBufferSize the number of events, rounded up to the next power of two
+     * @return this instance
+     */
+    public TracingParseRunner<V> withTraceBufferSize(int traceBufferSize) {
+        checkArgument(traceBufferSize > 0, "traceBufferSize must be positive");
+        this.traceBufferSize = traceBufferSize;
+        return this;
+    }
+
     @Override
     protected ParsingResult<V> runBasicMatch(InputBuffer inputBuffer) {
+        if (traceOutput != null) {
+            traceWriter = new AsyncTraceWriter(traceOutput, traceBufferSize);
+            try {
+                MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
+                boolean matched = rootContext.runMatcher();
+                return createParsingResult(matched, rootContext);
+            } finally {
+                traceWriter.close();
+                traceWriter = null;
+            }
+        }
+
         getLog().receive("Starting new parsing run\n");
         lastPath = null;
 
@@ -106,7 +151,17 @@ public class TracingParseRunner<V> extends ReportingParseRunner<V> implements Ma
     @SuppressWarnings( {"unchecked"})
     public boolean match(MatcherContext<?> context) {
         Matcher matcher = context.getMatcher();
+        if (traceWriter != null) {
+            traceWriter.enter(matcher);
+            boolean matched = matcher.match(context);
+            sampleRule(matcher, matched);
+            boolean selected = filter == null || filter.apply(new Tuple2<Context<?>, Boolean>(context, matched));
+            if (selected) line++;
+            traceWriter.exit(context.getCurrentIndex(), matched, selected);
+            return matched;
+        }
         boolean matched = matcher.match(context);
+        sampleRule(matcher, matched);
         if (getFilter().apply(new Tuple2<Context<?>, Boolean>(context, matched))) {
             line++;
             print(context, matched); // set line-dependent breakpoint here
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+/**
+ * A {@link Var} holding a primitive boolean value, see {@link PrimitiveVar}.
+ */
+public class BooleanVar extends PrimitiveVar<Boolean> {
+
+    /**
+     * Initializes a new BooleanVar with an initial value of false.
+     */
+    public BooleanVar() {
+        this(false);
+    }
+
+    /**
+     * Initializes a new BooleanVar with the given initial value.
+     *
+     * @param value the initial value
+     */
+    public BooleanVar(boolean value) {
+        super(value ? 1L : 0L);
+    }
+
+    /**
+     * @return the current value
+     * @throws IllegalStateException if the variable is not set
+     */
+    public boolean getBoolean() {
+        return getValue() != 0L;
+    }
+
+    /**
+     * Sets the current value.
+     *
+     * @param value the new value
+     * @return true
+     */
+    public boolean set(boolean value) {
+        return setValue(value ? 1L : 0L);
+    }
+
+    /**
+     * Inverts the current value.
+     *
+     * @return true
+     * @throws IllegalStateException if the variable is not set
+     */
+    public boolean toggle() {
+        return set(!getBoolean());
+    }
+
+    @Override
+    protected Boolean box(long value) {
+        return value != 0L;
+    }
+
+    @Override
+    protected long unbox(Boolean value) {
+        return value ? 1L : 0L;
+    }
+}
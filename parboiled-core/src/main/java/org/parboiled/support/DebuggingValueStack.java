@@ -76,6 +76,45 @@ public class DebuggingValueStack<V> extends DefaultValueStack<V> {
         return v;
     }
 
+    @Override
+    public void pushInt(int value) {
+        super.pushInt(value);
+        log("push");
+    }
+
+    @Override
+    public int popInt() {
+        int v = super.popInt();
+        log("pop");
+        return v;
+    }
+
+    @Override
+    public void pushLong(long value) {
+        super.pushLong(value);
+        log("push");
+    }
+
+    @Override
+    public long popLong() {
+        long v = super.popLong();
+        log("pop");
+        return v;
+    }
+
+    @Override
+    public void pushDouble(double value) {
+        super.pushDouble(value);
+        log("push");
+    }
+
+    @Override
+    public double popDouble() {
+        double v = super.popDouble();
+        log("pop");
+        return v;
+    }
+
     @Override
     public void poke(int down, V value) {
         super.poke(down, value);
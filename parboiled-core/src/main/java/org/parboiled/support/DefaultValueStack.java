@@ -38,11 +38,142 @@ public class DefaultValueStack<V> implements ValueStack<V> {
             this.value = value;
             this.tail = tail;
         }
+
+        protected Object getValue() {
+            return value;
+        }
+
+        protected int intValue() {
+            Number number = (Number) getValue();
+            return isIntegral(number) ? toInt(number.longValue()) : toInt(number.doubleValue());
+        }
+
+        protected long longValue() {
+            Number number = (Number) getValue();
+            return isIntegral(number) ? number.longValue() : toLong(number.doubleValue());
+        }
+
+        protected double doubleValue() {
+            return ((Number) getValue()).doubleValue();
+        }
+    }
+
+    // the elements of the primitive lanes, which hold their value unboxed until it is requested as an object
+
+    protected static class IntElement extends Element {
+        protected final int intValue;
+
+        protected IntElement(int value, Element tail) {
+            super(null, tail);
+            this.intValue = value;
+        }
+
+        @Override
+        protected Object getValue() {
+            return intValue;
+        }
+
+        @Override
+        protected int intValue() {
+            return intValue;
+        }
+
+        @Override
+        protected long longValue() {
+            return intValue;
+        }
+
+        @Override
+        protected double doubleValue() {
+            return intValue;
+        }
+    }
+
+    protected static class LongElement extends Element {
+        protected final long longValue;
+
+        protected LongElement(long value, Element tail) {
+            super(null, tail);
+            this.longValue = value;
+        }
+
+        @Override
+        protected Object getValue() {
+            return longValue;
+        }
+
+        @Override
+        protected int intValue() {
+            return toInt(longValue);
+        }
+
+        @Override
+        protected long longValue() {
+            return longValue;
+        }
+
+        @Override
+        protected double doubleValue() {
+            return longValue;
+        }
+    }
+
+    protected static class DoubleElement extends Element {
+        protected final double doubleValue;
+
+        protected DoubleElement(double value, Element tail) {
+            super(null, tail);
+            this.doubleValue = value;
+        }
+
+        @Override
+        protected Object getValue() {
+            return doubleValue;
+        }
+
+        @Override
+        protected int intValue() {
+            return toInt(doubleValue);
+        }
+
+        @Override
+        protected long longValue() {
+            return toLong(doubleValue);
+        }
+
+        @Override
+        protected double doubleValue() {
+            return doubleValue;
+        }
     }
 
     protected Element head;
     protected V tempValue;
 
+    // the narrowing conversions of the primitive accessors, which truncate fractions but never overflow
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    private static int toInt(long value) {
+        if ((int) value != value) throw new ArithmeticException("Value out of int range: " + value);
+        return (int) value;
+    }
+
+    private static int toInt(double value) {
+        if (!(value > Integer.MIN_VALUE - 1.0 && value < Integer.MAX_VALUE + 1.0)) {
+            throw new ArithmeticException("Value out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long toLong(double value) {
+        // 0x1p63 is the smallest double above Long.MAX_VALUE, -0x1p63 is Long.MIN_VALUE itself
+        if (!(value >= -0x1p63 && value < 0x1p63)) throw new ArithmeticException("Value out of long range: " + value);
+        return (long) value;
+    }
+
     /**
      * Initializes an empty value stack.
      */
@@ -99,7 +230,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
     private static Element push(int down, Object value, Element head) {
         if (down == 0) return new Element(value, head);
         checkArgument(head != null, "Cannot push beyond the bottom of the stack");
-        if (down > 0) return new Element(head.value, push(down - 1, value, head.tail));
+        if (down > 0) return new Element(head.getValue(), push(down - 1, value, head.tail));
         throw new IllegalArgumentException("Argument 'down' must not be negative");
     }
 
@@ -128,13 +259,125 @@ public class DefaultValueStack<V> implements ValueStack<V> {
     private Element pop(int down, Element head) {
         checkArgument(head != null, "Cannot pop from beyond the bottom of the stack");
         if (down == 0) {
-            tempValue = (V) head.value;
+            tempValue = (V) head.getValue();
             return head.tail;
         }
-        if (down > 0) return new Element(head.value, pop(down - 1, head.tail));
+        if (down > 0) return new Element(head.getValue(), pop(down - 1, head.tail));
         throw new IllegalArgumentException("Argument 'down' must not be negative");
     }
 
+    /**
+     * Pushes the given int onto the stack without boxing it.
+     * The value can be retrieved without unboxing with {@link #popInt()} or {@link #peekInt()}, all other methods
+     * see it as an {@link Integer}.
+     *
+     * @param value the value
+     */
+    public void pushInt(int value) {
+        head = new IntElement(value, head);
+    }
+
+    /**
+     * Pushes the given long onto the stack without boxing it.
+     * The value can be retrieved without unboxing with {@link #popLong()} or {@link #peekLong()}, all other methods
+     * see it as a {@link Long}.
+     *
+     * @param value the value
+     */
+    public void pushLong(long value) {
+        head = new LongElement(value, head);
+    }
+
+    /**
+     * Pushes the given double onto the stack without boxing it.
+     * The value can be retrieved without unboxing with {@link #popDouble()} or {@link #peekDouble()}, all other
+     * methods see it as a {@link Double}.
+     *
+     * @param value the value
+     */
+    public void pushDouble(double value) {
+        head = new DoubleElement(value, head);
+    }
+
+    /**
+     * Removes the value at the top of the stack and returns it as an int.
+     * If the value was not pushed with {@link #pushInt(int)} it must be a {@link Number}.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     * @throws ArithmeticException      if the value does not fit into an int
+     */
+    public int popInt() {
+        checkArgument(head != null, "Cannot pop from beyond the bottom of the stack");
+        int value = head.intValue();
+        head = head.tail;
+        return value;
+    }
+
+    /**
+     * Removes the value at the top of the stack and returns it as a long.
+     * If the value was not pushed with {@link #pushLong(long)} it must be a {@link Number}.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     * @throws ArithmeticException      if the value does not fit into a long
+     */
+    public long popLong() {
+        checkArgument(head != null, "Cannot pop from beyond the bottom of the stack");
+        long value = head.longValue();
+        head = head.tail;
+        return value;
+    }
+
+    /**
+     * Removes the value at the top of the stack and returns it as a double.
+     * If the value was not pushed with {@link #pushDouble(double)} it must be a {@link Number}.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     */
+    public double popDouble() {
+        checkArgument(head != null, "Cannot pop from beyond the bottom of the stack");
+        double value = head.doubleValue();
+        head = head.tail;
+        return value;
+    }
+
+    /**
+     * Returns the value at the top of the stack as an int without removing it.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     * @throws ArithmeticException      if the value does not fit into an int
+     */
+    public int peekInt() {
+        checkArgument(head != null, "Cannot peek beyond the bottom of the stack");
+        return head.intValue();
+    }
+
+    /**
+     * Returns the value at the top of the stack as a long without removing it.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     * @throws ArithmeticException      if the value does not fit into a long
+     */
+    public long peekLong() {
+        checkArgument(head != null, "Cannot peek beyond the bottom of the stack");
+        return head.longValue();
+    }
+
+    /**
+     * Returns the value at the top of the stack as a double without removing it.
+     *
+     * @return the current top value
+     * @throws IllegalArgumentException if the stack is empty
+     */
+    public double peekDouble() {
+        checkArgument(head != null, "Cannot peek beyond the bottom of the stack");
+        return head.doubleValue();
+    }
+
     public V peek() {
         return peek(0);
     }
@@ -147,7 +390,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
     @SuppressWarnings({"ConstantConditions"})
     private static Object peek(int down, Element head) {
         checkArgument(head != null, "Cannot peek beyond the bottom of the stack");
-        if (down == 0) return head.value;
+        if (down == 0) return head.getValue();
         if (down > 0) return peek(down - 1, head.tail);
         throw new IllegalArgumentException("Argument 'down' must not be negative");
     }
@@ -163,7 +406,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
     private static Element poke(int down, Object value, Element head) {
         checkArgument(head != null, "Cannot poke beyond the bottom of the stack");
         if (down == 0) return new Element(value, head.tail);
-        if (down > 0) return new Element(head.value, poke(down - 1, value, head.tail));
+        if (down > 0) return new Element(head.getValue(), poke(down - 1, value, head.tail));
         throw new IllegalArgumentException("Argument 'down' must not be negative");
     }
 
@@ -174,14 +417,14 @@ public class DefaultValueStack<V> implements ValueStack<V> {
     public void swap() {
         Checks.ensure(isSizeGTE(2, head), "Swap not allowed on stack with less than two elements");
         Element down1 = head.tail;
-        head = new Element(down1.value, new Element(head.value, down1.tail));
+        head = new Element(down1.getValue(), new Element(head.getValue(), down1.tail));
     }
 
     public void swap3() {
         Checks.ensure(isSizeGTE(3, head), "Swap3 not allowed on stack with less than 3 elements");
         Element down1 = head.tail;
         Element down2 = down1.tail;
-        head = new Element(down2.value, new Element(down1.value, new Element(head.value, down2.tail)));
+        head = new Element(down2.getValue(), new Element(down1.getValue(), new Element(head.getValue(), down2.tail)));
     }
 
     public void swap4() {
@@ -189,8 +432,8 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down1 = head.tail;
         Element down2 = down1.tail;
         Element down3 = down2.tail;
-        head = new Element(down3.value, new Element(down2.value, new Element(down1.value, new Element(head.value,
-                down3.tail))));
+        head = new Element(down3.getValue(), new Element(down2.getValue(), new Element(down1.getValue(),
+                new Element(head.getValue(), down3.tail))));
     }
 
     public void swap5() {
@@ -199,8 +442,8 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down2 = down1.tail;
         Element down3 = down2.tail;
         Element down4 = down3.tail;
-        head = new Element(down4.value, new Element(down3.value, new Element(down2.value, new Element(down1.value,
-                new Element(head.value, down4.tail)))));
+        head = new Element(down4.getValue(), new Element(down3.getValue(), new Element(down2.getValue(),
+                new Element(down1.getValue(), new Element(head.getValue(), down4.tail)))));
     }
 
     public void swap6() {
@@ -210,8 +453,9 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down3 = down2.tail;
         Element down4 = down3.tail;
         Element down5 = down4.tail;
-        head = new Element(down5.value, new Element(down4.value, new Element(down3.value, new Element(down2.value,
-                new Element(down1.value, new Element(head.value, down5.tail))))));
+        head = new Element(down5.getValue(), new Element(down4.getValue(), new Element(down3.getValue(),
+                new Element(down2.getValue(), new Element(down1.getValue(),
+                        new Element(head.getValue(), down5.tail))))));
     }
 
     private static boolean isSizeGTE(int minSize, Element head) {
@@ -226,7 +470,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
             }
             @SuppressWarnings({"unchecked"})
             public V next() {
-                V value = (V) next.value;
+                V value = (V) next.getValue();
                 next = next.tail;
                 return value;
             }
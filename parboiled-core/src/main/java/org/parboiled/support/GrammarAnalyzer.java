@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.Rule;
+import org.parboiled.matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Static analysis of the matcher graph of a rule, determining for every rule of the graph</p>
+ * <ul>
+ * <li>whether it is nullable, i.e. can succeed without consuming any input,</li>
+ * <li>its FIRST set, i.e. the chars a non-empty match of the rule can start with,</li>
+ * <li>its FOLLOW set, i.e. the chars the grammar allows to directly follow a match of the rule.</li>
+ * </ul>
+ * <p>Furthermore all LL(1) conflicts are collected, i.e. the pairs of alternatives of a FirstOf rule that cannot be
+ * told apart by the next input char. These are the places where the parser potentially backtracks: the first
+ * alternative of the pair may have to be matched (partially) before the second one is tried at the same
+ * location. FirstOf rules over literals only are not checked since their alternatives are determined with a single
+ * input scan.</p>
+ * <p>All sets are conservative approximations: a rule might never actually start with some of the chars in its FIRST
+ * set (e.g. because of syntactic predicates, failing actions or the chars of large char ranges, which are
+ * approximated by {@link Characters#ALL}), but it never starts with a char not contained in it. A rule can
+ * therefore be skipped safely whenever it is not nullable and the next input char is not in its FIRST set.
+ * Similarly, the FOLLOW sets do not include the input following a match of the root rule, this is indicated by
+ * {@link #canEndRoot(Rule)} instead.</p>
+ * <p>If created with a lookahead depth k greater than one the analyzer also determines the chars each rule can
+ * consume at each of the first k input locations (a linear approximation of the rule's LL(k) lookahead), as well as
+ * how many chars a rule can consume at least before running any actions, see {@link #getPredictionDepth(Rule)}.</p>
+ */
+public class GrammarAnalyzer {
+    private static final int MAX_RANGE = 256; // larger char ranges are approximated by Characters.ALL
+    private static final int MAX_DEPTH = 16;
+
+    private final Matcher root;
+    private final int depth;
+    private final Map<Matcher, Info> infos = new IdentityHashMap<Matcher, Info>();
+    private final List<Matcher> matchers = new ArrayList<Matcher>(); // all matchers of the graph in pre-order
+    private final List<Conflict> conflicts = new ArrayList<Conflict>();
+
+    /**
+     * Analyzes the matcher graph of the given rule.
+     *
+     * @param rule the root rule
+     * @return the analysis
+     */
+    public static GrammarAnalyzer analyze(Rule rule) {
+        return analyze(rule, 1);
+    }
+
+    /**
+     * Analyzes the matcher graph of the given rule with the given lookahead depth.
+     *
+     * @param rule  the root rule
+     * @param depth the number of input chars to determine the lookahead sets for, between 1 and 16
+     * @return the analysis
+     */
+    public static GrammarAnalyzer analyze(Rule rule, int depth) {
+        checkArgNotNull(rule, "rule");
+        checkArgument(depth > 0 && depth <= MAX_DEPTH, "depth must be between 1 and " + MAX_DEPTH);
+        return new GrammarAnalyzer(MatcherUtils.unwrap((Matcher) rule), depth);
+    }
+
+    private GrammarAnalyzer(Matcher root, int depth) {
+        this.root = root;
+        this.depth = depth;
+        collect(root);
+        computeLookaheads();
+        computeFollowSets();
+        collectConflicts();
+    }
+
+    public Rule getRootRule() {
+        return root;
+    }
+
+    /**
+     * @return the number of input chars the lookahead sets have been determined for
+     */
+    public int getLookaheadDepth() {
+        return depth;
+    }
+
+    /**
+     * @return all matchers of the analyzed graph (without proxy, var framing or memo wrappers) in pre-order
+     */
+    public List<Matcher> getMatchers() {
+        return Collections.unmodifiableList(matchers);
+    }
+
+    /**
+     * @param rule a rule of the analyzed graph
+     * @return true if the rule can succeed without consuming input
+     */
+    public boolean isNullable(Rule rule) {
+        return info(rule).shape.minLength() == 0;
+    }
+
+    /**
+     * @param rule a rule of the analyzed graph
+     * @return the chars a non-empty match of the rule can start with
+     */
+    public Characters getFirst(Rule rule) {
+        return info(rule).shape.chars[0];
+    }
+
+    /**
+     * @param rule a rule of the analyzed graph
+     * @return the chars the grammar allows to directly follow a match of the rule
+     */
+    public Characters getFollow(Rule rule) {
+        return info(rule).follow;
+    }
+
+    /**
+     * @param rule a rule of the analyzed graph
+     * @return true if a match of the rule can end the match of the root rule, so that any input not covered by the
+     *         FOLLOW set of the rule might follow it as well
+     */
+    public boolean canEndRoot(Rule rule) {
+        return info(rule).endsRoot;
+    }
+
+    /**
+     * Returns the chars the given rule can succeed with at the current input location: the FIRST set of the rule,
+     * if the rule is not nullable, all chars otherwise.
+     *
+     * @param rule a rule of the analyzed graph
+     * @return the chars the rule might succeed on
+     */
+    public Characters getLookahead(Rule rule) {
+        return getLookahead(rule, 0);
+    }
+
+    /**
+     * Returns the chars the input can hold at the given offset from the current location if the given rule is to
+     * succeed: all chars, if the rule can succeed with a match not reaching the offset, otherwise the chars the
+     * rule can consume at the offset.
+     *
+     * @param rule   a rule of the analyzed graph
+     * @param offset the offset, must be smaller than the lookahead depth
+     * @return the chars the rule might succeed on
+     */
+    public Characters getLookahead(Rule rule, int offset) {
+        checkArgument(offset >= 0 && offset < depth, "offset must be smaller than the lookahead depth");
+        Shape shape = info(rule).shape;
+        return shape.minLength() <= offset ? Characters.ALL : shape.chars[offset];
+    }
+
+    /**
+     * Returns the number of input chars that can be used to rule out the given rule before running it. This is the
+     * lookahead depth, limited by the minimum length of a match of the rule and by the minimum number of chars the
+     * rule consumes before it can run an action or a custom matcher. If one of the input chars within the prediction
+     * depth does not lie in the respective {@link #getLookahead(Rule, int)} set, running the rule at the current
+     * location would fail without any side effects.
+     *
+     * @param rule a rule of the analyzed graph
+     * @return the prediction depth, between zero and the lookahead depth
+     */
+    public int getPredictionDepth(Rule rule) {
+        Shape shape = info(rule).shape;
+        return Math.min(Math.min(depth, shape.minLength()), shape.actionOffset);
+    }
+
+    /**
+     * @return all LL(1) conflicts of the analyzed graph
+     */
+    public List<Conflict> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * @param rule a FirstOf rule of the analyzed graph
+     * @return the LL(1) conflicts between the alternatives of the given rule
+     */
+    public List<Conflict> getConflicts(Rule rule) {
+        Matcher matcher = MatcherUtils.unwrap((Matcher) checkArgNotNull(rule, "rule"));
+        List<Conflict> list = new ArrayList<Conflict>();
+        for (Conflict conflict : conflicts) {
+            if (conflict.firstOf == matcher) list.add(conflict);
+        }
+        return list;
+    }
+
+    /**
+     * Prints nullability, FIRST and FOLLOW sets of all rules with a custom label, followed by all LL(1) conflicts.
+     *
+     * @return the report
+     */
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        for (Matcher matcher : matchers) {
+            if (!matcher.hasCustomLabel()) continue;
+            Info info = infos.get(matcher);
+            sb.append(matcher.getLabel()).append(info.shape.minLength() == 0 ? " (nullable)" : "")
+                    .append(": FIRST ").append(info.shape.chars[0])
+                    .append(", FOLLOW ").append(info.follow).append(info.endsRoot ? " + end" : "").append('\n');
+        }
+        for (Conflict conflict : conflicts) {
+            sb.append(conflict).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return print();
+    }
+
+    private Info info(Rule rule) {
+        Matcher matcher = MatcherUtils.unwrap((Matcher) checkArgNotNull(rule, "rule"));
+        Info info = infos.get(matcher);
+        if (info == null) {
+            throw new IllegalArgumentException("Rule '" + rule + "' is not part of the analyzed rule graph");
+        }
+        return info;
+    }
+
+    private void collect(Matcher matcher) {
+        if (infos.containsKey(matcher)) return;
+        infos.put(matcher, new Info());
+        matchers.add(matcher);
+        for (Matcher child : matcher.getChildren()) {
+            collect(MatcherUtils.unwrap(child));
+        }
+    }
+
+    private Shape childShape(Matcher matcher, int index) {
+        return infos.get(MatcherUtils.unwrap(matcher.getChildren().get(index))).shape;
+    }
+
+    private Info childInfo(Matcher matcher, int index) {
+        return infos.get(MatcherUtils.unwrap(matcher.getChildren().get(index)));
+    }
+
+    // all lookahead sets only ever grow (and the action offsets only ever shrink), so we iterate until nothing
+    // changes anymore
+    private void computeLookaheads() {
+        for (Matcher matcher : matchers) {
+            infos.get(matcher).shape = isComposite(matcher) ? Shape.never(depth) : leafShape(matcher);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Matcher matcher : matchers) {
+                if (!isComposite(matcher)) continue;
+                Info info = infos.get(matcher);
+                Shape shape = compositeShape(matcher);
+                if (!shape.equals(info.shape)) {
+                    info.shape = shape;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isComposite(Matcher matcher) {
+        return matcher instanceof SequenceMatcher || matcher instanceof FirstOfMatcher ||
+                matcher instanceof OneOrMoreMatcher || matcher instanceof ZeroOrMoreMatcher ||
+                matcher instanceof OptionalMatcher || matcher instanceof TestMatcher ||
+                matcher instanceof TestNotMatcher;
+    }
+
+    private Shape compositeShape(Matcher matcher) {
+        int count = matcher.getChildren().size();
+        if (matcher instanceof SequenceMatcher) {
+            Shape shape = Shape.empty(depth);
+            for (int i = 0; i < count; i++) {
+                shape = shape.then(childShape(matcher, i));
+            }
+            return shape;
+        }
+        if (matcher instanceof FirstOfMatcher) {
+            Shape shape = Shape.never(depth);
+            for (int i = 0; i < count; i++) {
+                shape = shape.or(childShape(matcher, i));
+            }
+            return shape;
+        }
+        Shape child = childShape(matcher, 0);
+        if (matcher instanceof OptionalMatcher) return child.or(Shape.empty(depth));
+        if (matcher instanceof ZeroOrMoreMatcher) return repeated(child);
+        if (matcher instanceof OneOrMoreMatcher) return child.then(repeated(child));
+        return Shape.empty(depth).withActionOffset(child.actionOffset); // predicates never consume any input
+    }
+
+    // ZeroOrMore(x) = Optional(Sequence(x, ZeroOrMore(x))), unrolled up to the lookahead depth
+    private Shape repeated(Shape shape) {
+        Shape repeated = Shape.empty(depth);
+        for (int i = 0; i <= depth; i++) {
+            repeated = Shape.empty(depth).or(shape.then(repeated));
+        }
+        return repeated;
+    }
+
+    private Shape leafShape(Matcher matcher) {
+        if (matcher instanceof ActionMatcher) return Shape.empty(depth).withActionOffset(0);
+        if (matcher instanceof EmptyMatcher) return Shape.empty(depth);
+        if (matcher instanceof NothingMatcher) return Shape.never(depth);
+        if (matcher instanceof CustomMatcher) {
+            // we know neither how many chars a custom matcher consumes nor whether it has side effects
+            CustomMatcher custom = (CustomMatcher) matcher;
+            return Shape.unknown(depth, probeFirst(custom), custom.canMatchEmpty());
+        }
+        Characters chars = singleChars(matcher);
+        return chars != null ? Shape.single(depth, chars) : Shape.unknown(depth, Characters.ALL, true);
+    }
+
+    private static Characters singleChars(Matcher matcher) {
+        if (matcher instanceof CharMatcher) return Characters.of(((CharMatcher) matcher).character);
+        if (matcher instanceof CharIgnoreCaseMatcher) {
+            CharIgnoreCaseMatcher m = (CharIgnoreCaseMatcher) matcher;
+            return Characters.of(m.charLow, m.charUp);
+        }
+        if (matcher instanceof CharRangeMatcher) {
+            CharRangeMatcher m = (CharRangeMatcher) matcher;
+            if (m.cHigh - m.cLow >= MAX_RANGE) return Characters.ALL;
+            char[] chars = new char[m.cHigh - m.cLow + 1];
+            for (int i = 0; i < chars.length; i++) chars[i] = (char) (m.cLow + i);
+            return Characters.of(chars);
+        }
+        if (matcher instanceof AnyOfMatcher) return ((AnyOfMatcher) matcher).characters;
+        if (matcher instanceof AnyMatcher) return Characters.allBut(Chars.EOI);
+        return null; // an unknown matcher type
+    }
+
+    // custom matchers only tell us whether they can start with a given char, so we have to try them all
+    private static Characters probeFirst(CustomMatcher matcher) {
+        StringBuilder starters = new StringBuilder();
+        StringBuilder others = new StringBuilder();
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            StringBuilder sb = matcher.isStarterChar((char) c) ? starters : others;
+            if (sb.length() <= MAX_RANGE) sb.append((char) c);
+        }
+        if (starters.length() <= MAX_RANGE) return Characters.of(starters.toString());
+        return others.length() <= MAX_RANGE ? Characters.allBut(others.toString()) : Characters.ALL;
+    }
+
+    // FOLLOW sets (and the endsRoot flags) only ever grow as well
+    private void computeFollowSets() {
+        infos.get(root).endsRoot = true;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Matcher matcher : matchers) {
+                Info info = infos.get(matcher);
+                List<Matcher> children = matcher.getChildren();
+                if (matcher instanceof SequenceMatcher) {
+                    Characters follow = info.follow;
+                    boolean endsRoot = info.endsRoot;
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        Info child = childInfo(matcher, i);
+                        changed |= child.addFollow(follow, endsRoot);
+                        if (child.shape.minLength() == 0) {
+                            follow = follow.add(child.shape.chars[0]);
+                        } else {
+                            follow = child.shape.chars[0];
+                            endsRoot = false;
+                        }
+                    }
+                } else if (matcher instanceof FirstOfMatcher || matcher instanceof OptionalMatcher) {
+                    for (int i = 0; i < children.size(); i++) {
+                        changed |= childInfo(matcher, i).addFollow(info.follow, info.endsRoot);
+                    }
+                } else if (matcher instanceof OneOrMoreMatcher || matcher instanceof ZeroOrMoreMatcher) {
+                    Info child = childInfo(matcher, 0);
+                    changed |= child.addFollow(info.follow.add(child.shape.chars[0]), info.endsRoot);
+                } else {
+                    // the input after a match of a predicate's (or custom matcher's) sub rule is not restricted
+                    for (int i = 0; i < children.size(); i++) {
+                        changed |= childInfo(matcher, i).addFollow(Characters.ALL, false);
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectConflicts() {
+        for (Matcher matcher : matchers) {
+            if (!(matcher instanceof FirstOfMatcher) || matcher instanceof FirstOfLiteralsMatcher ||
+                    matcher instanceof FirstOfStringsMatcher) {
+                continue;
+            }
+            Info info = infos.get(matcher);
+            int count = matcher.getChildren().size();
+            Characters[] lookaheads = new Characters[count];
+            for (int i = 0; i < count; i++) {
+                Shape child = childShape(matcher, i);
+                lookaheads[i] = child.minLength() == 0 ? child.chars[0].add(info.follow) : child.chars[0];
+            }
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    Characters overlap = lookaheads[i].remove(lookaheads[i].remove(lookaheads[j]));
+                    if (!overlap.equals(Characters.NONE)) conflicts.add(new Conflict(matcher, i, j, overlap));
+                }
+            }
+        }
+    }
+
+    private static class Info {
+        private Shape shape;
+        private Characters follow = Characters.NONE;
+        private boolean endsRoot;
+
+        private boolean addFollow(Characters chars, boolean endsRoot) {
+            Characters newFollow = follow.add(chars);
+            if (newFollow.equals(follow) && (this.endsRoot || !endsRoot)) return false;
+            follow = newFollow;
+            this.endsRoot |= endsRoot;
+            return true;
+        }
+    }
+
+    // the lookahead of a rule: its possible match lengths, the chars it can consume at each offset (on any path,
+    // successful or not) and the smallest offset it can run an action or custom matcher at
+    private static class Shape {
+        private final int depth;
+        private final int lengths; // bit n: can match n chars, the bit at the depth stands for "depth chars or more"
+        private final Characters[] chars;
+        private final int actionOffset; // the depth if there are no actions within the lookahead depth
+
+        private Shape(int depth, int lengths, Characters[] chars, int actionOffset) {
+            this.depth = depth;
+            this.lengths = lengths;
+            this.chars = chars;
+            this.actionOffset = actionOffset;
+        }
+
+        private static Shape empty(int depth) {
+            return new Shape(depth, 1, none(depth), depth);
+        }
+
+        private static Shape never(int depth) {
+            return new Shape(depth, 0, none(depth), depth);
+        }
+
+        private static Shape single(int depth, Characters first) {
+            Characters[] chars = none(depth);
+            chars[0] = first;
+            return new Shape(depth, 1 << 1, chars, depth);
+        }
+
+        private static Shape unknown(int depth, Characters first, boolean nullable) {
+            Characters[] chars = new Characters[depth];
+            Arrays.fill(chars, Characters.ALL);
+            chars[0] = first;
+            int lengths = (1 << (depth + 1)) - 1;
+            return new Shape(depth, nullable ? lengths : lengths & ~1, chars, 0);
+        }
+
+        private static Characters[] none(int depth) {
+            Characters[] chars = new Characters[depth];
+            Arrays.fill(chars, Characters.NONE);
+            return chars;
+        }
+
+        // the smallest number of chars a match consumes, the depth if the rule can never match
+        private int minLength() {
+            return lengths == 0 ? depth : Integer.numberOfTrailingZeros(lengths);
+        }
+
+        private Shape withActionOffset(int actionOffset) {
+            return new Shape(depth, lengths, chars, actionOffset);
+        }
+
+        // the shape of this rule followed by the given one
+        private Shape then(Shape next) {
+            if (lengths == 0) return this; // the next rule is never reached
+            int newLengths = 0;
+            Characters[] newChars = chars.clone();
+            for (int a = 0; a <= depth; a++) {
+                if ((lengths & (1 << a)) == 0) continue;
+                for (int b = 0; b <= depth; b++) {
+                    if ((next.lengths & (1 << b)) != 0) newLengths |= 1 << Math.min(a + b, depth);
+                }
+                for (int j = a; j < depth; j++) {
+                    newChars[j] = newChars[j].add(next.chars[j - a]);
+                }
+            }
+            int newActionOffset = Math.min(actionOffset, Math.min(depth, minLength() + next.actionOffset));
+            return new Shape(depth, newLengths, newChars, newActionOffset);
+        }
+
+        // the shape of a choice between this rule and the given one
+        private Shape or(Shape other) {
+            Characters[] newChars = new Characters[depth];
+            for (int j = 0; j < depth; j++) {
+                newChars[j] = chars[j].add(other.chars[j]);
+            }
+            return new Shape(depth, lengths | other.lengths, newChars, Math.min(actionOffset, other.actionOffset));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Shape)) return false;
+            Shape that = (Shape) o;
+            return lengths == that.lengths && actionOffset == that.actionOffset && Arrays.equals(chars, that.chars);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * lengths + actionOffset) + Arrays.hashCode(chars);
+        }
+    }
+
+    /**
+     * Two alternatives of a FirstOf rule that can both succeed on the same next input char.
+     */
+    public static class Conflict {
+        public final Matcher firstOf;
+        public final int alternative1;
+        public final int alternative2;
+        public final Characters chars;
+
+        public Conflict(Matcher firstOf, int alternative1, int alternative2, Characters chars) {
+            this.firstOf = firstOf;
+            this.alternative1 = alternative1;
+            this.alternative2 = alternative2;
+            this.chars = chars;
+        }
+
+        @Override
+        public String toString() {
+            List<Matcher> alternatives = firstOf.getChildren();
+            return String.format("%s: alternatives %s ('%s') and %s ('%s') conflict on %s", firstOf.getLabel(),
+                    alternative1 + 1, alternatives.get(alternative1), alternative2 + 1,
+                    alternatives.get(alternative2), chars);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+/**
+ * A {@link Var} holding a primitive int value, see {@link PrimitiveVar}.
+ */
+public class IntVar extends PrimitiveVar<Integer> {
+
+    /**
+     * Initializes a new IntVar with an initial value of 0.
+     */
+    public IntVar() {
+        this(0);
+    }
+
+    /**
+     * Initializes a new IntVar with the given initial value.
+     *
+     * @param value the initial value
+     */
+    public IntVar(int value) {
+        super(value);
+    }
+
+    /**
+     * @return the current value
+     * @throws IllegalStateException if the variable is not set
+     */
+    public int getInt() {
+        return (int) getValue();
+    }
+
+    /**
+     * Sets the current value.
+     *
+     * @param value the new value
+     * @return true
+     */
+    public boolean set(int value) {
+        return setValue(value);
+    }
+
+    /**
+     * Adds the given delta to the current value.
+     *
+     * @param delta the delta
+     * @return true
+     * @throws IllegalStateException if the variable is not set
+     */
+    public boolean add(int delta) {
+        return set(getInt() + delta);
+    }
+
+    /**
+     * Increments the current value by one.
+     *
+     * @return true
+     * @throws IllegalStateException if the variable is not set
+     */
+    public boolean increment() {
+        return add(1);
+    }
+
+    /**
+     * Decrements the current value by one.
+     *
+     * @return true
+     * @throws IllegalStateException if the variable is not set
+     */
+    public boolean decrement() {
+        return add(-1);
+    }
+
+    @Override
+    protected Integer box(long value) {
+        return (int) value;
+    }
+
+    @Override
+    protected long unbox(Integer value) {
+        return value;
+    }
+}
@@ -30,6 +30,14 @@ public class MatcherPosition {
         return new MatcherPosition(matcher, index);
     }
 
+    public Matcher getMatcher() {
+        return matcher;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public int hashCode() {
         return 31 * matcher.hashCode() * index;
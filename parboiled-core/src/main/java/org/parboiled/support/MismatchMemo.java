@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.matchers.Matcher;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>The store of the mismatches memoized for rules marked with @MemoMismatches during one parsing pass.</p>
+ * <p>Entries are kept in segments, one per window of {@link #WINDOW_SIZE} input characters, each segment being an
+ * open addressing hash set of primitive longs, so that neither lookups nor insertions allocate. Segments are evicted
+ * as a whole:</p>
+ * <ul>
+ * <li>on {@link #commit(int)} all windows completely behind the committed index are dropped, entries for such windows
+ * are not stored anymore,</li>
+ * <li>if a capacity is set and the number of entries exceeds it, the windows with the lowest input indices are
+ * dropped until the capacity is met again.</li>
+ * </ul>
+ * <p>Since the memo only serves to cut down on rematching, evicting entries never changes the parsing result.</p>
+ */
+public class MismatchMemo {
+    public static final int WINDOW_BITS = 12;
+    public static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+
+    private final Map<Matcher, Integer> matcherIds = new IdentityHashMap<Matcher, Integer>();
+    private int capacity = Integer.MAX_VALUE;
+    private Segment[] segments = new Segment[16]; // ring buffer, the segment of window w lives at w & (length - 1)
+    private int floorWindow; // the lowest window entries are still stored for, raised by commits
+    private int lowestWindow; // no window below this one holds any entries
+    private int endWindow; // no window at or above this one holds any entries
+    private int size;
+    private int peakSize;
+    private long lookups;
+    private long hits;
+    private long evictions;
+
+    /**
+     * Limits the number of entries, the windows with the lowest input indices are evicted first.
+     *
+     * @param capacity the maximum number of entries
+     */
+    public void setCapacity(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        evictToCapacity();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Determines whether a mismatch of the given matcher has been memoized at the given input index.
+     *
+     * @param matcher the matcher
+     * @param index   the input index
+     * @return true if the matcher is known to mismatch at the index
+     */
+    public boolean contains(Matcher matcher, int index) {
+        lookups++;
+        int window = index >>> WINDOW_BITS;
+        if (window < lowestWindow || window >= endWindow) return false;
+        Segment segment = segments[window & (segments.length - 1)];
+        if (segment == null) return false;
+        Integer id = matcherIds.get(matcher);
+        if (id == null || !segment.contains(key(id, index))) return false;
+        hits++;
+        return true;
+    }
+
+    /**
+     * Memoizes a mismatch of the given matcher at the given input index.
+     *
+     * @param matcher the matcher
+     * @param index   the input index
+     */
+    public void add(Matcher matcher, int index) {
+        checkArgNotNull(matcher, "matcher");
+        int window = index >>> WINDOW_BITS;
+        if (window < floorWindow) return;
+        Integer id = matcherIds.get(matcher);
+        if (id == null) {
+            id = matcherIds.size();
+            matcherIds.put(matcher, id);
+        }
+        if (size == 0) {
+            lowestWindow = endWindow = window;
+        }
+        int newLowest = Math.min(lowestWindow, window);
+        int newEnd = Math.max(endWindow, window + 1);
+        if (newEnd - newLowest > segments.length) grow(newEnd - newLowest);
+        lowestWindow = newLowest;
+        endWindow = newEnd;
+
+        int slot = window & (segments.length - 1);
+        Segment segment = segments[slot];
+        if (segment == null) segment = segments[slot] = new Segment();
+        if (segment.add(key(id, index))) {
+            if (++size > peakSize) peakSize = size;
+            evictToCapacity();
+        }
+    }
+
+    /**
+     * Evicts all entries of the windows completely before the given index, and stops storing entries for them.
+     *
+     * @param index the lowest input index the parser can still backtrack to
+     */
+    public void commit(int index) {
+        int window = index >>> WINDOW_BITS;
+        if (window <= floorWindow) return;
+        floorWindow = window;
+        while (size > 0 && lowestWindow < window) {
+            evictLowestWindow();
+        }
+    }
+
+    /**
+     * @return the number of memoized mismatches
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the largest number of entries the memo has held at any one time
+     */
+    public int getPeakSize() {
+        return peakSize;
+    }
+
+    /**
+     * @return the number of memo lookups performed so far
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the number of memo lookups that hit
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of entries evicted so far
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private void evictToCapacity() {
+        while (size > capacity) {
+            evictLowestWindow();
+        }
+    }
+
+    private void evictLowestWindow() {
+        int slot = lowestWindow & (segments.length - 1);
+        Segment segment = segments[slot];
+        if (segment != null) {
+            segments[slot] = null;
+            size -= segment.size;
+            evictions += segment.size;
+        }
+        lowestWindow++;
+        if (size == 0) endWindow = lowestWindow;
+    }
+
+    private void grow(int windows) {
+        int length = segments.length;
+        while (length < windows) length <<= 1;
+        Segment[] grown = new Segment[length];
+        for (int window = lowestWindow; window < endWindow; window++) {
+            grown[window & (length - 1)] = segments[window & (segments.length - 1)];
+        }
+        segments = grown;
+    }
+
+    private static long key(int matcherId, int index) {
+        return ((long) matcherId << WINDOW_BITS | (index & (WINDOW_SIZE - 1))) + 1; // zero marks free slots
+    }
+
+    // an open addressing hash set of positive longs
+    private static class Segment {
+        private long[] keys = new long[16];
+        private int size;
+
+        boolean contains(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return true;
+                if (k == 0) return false;
+            }
+        }
+
+        boolean add(long key) {
+            if (size * 2 >= keys.length) rehash();
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return false;
+                if (k == 0) {
+                    keys[i] = key;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        private void rehash() {
+            long[] old = keys;
+            keys = new long[old.length * 2];
+            int mask = keys.length - 1;
+            for (long key : old) {
+                if (key == 0) continue;
+                int i = hash(key) & mask;
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = key;
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
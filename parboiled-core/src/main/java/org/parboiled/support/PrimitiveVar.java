@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import java.util.Arrays;
+
+import static org.parboiled.common.Preconditions.checkState;
+
+/**
+ * Base class of the {@link Var} specializations holding a primitive value. The values of the frames are kept
+ * unboxed in a primitive array, so entering and exiting frames does not allocate once the maximum frame depth has
+ * been reached. Like every Var the variable is not set after {@link #clear()} or after having been set to null,
+ * the primitive accessors of the subclasses throw an IllegalStateException in this case.
+ *
+ * @param <T> the boxed type of the value
+ */
+public abstract class PrimitiveVar<T> extends Var<T> {
+    private final long initialValue;
+    private long value;
+    private boolean isSet = true;
+    private long[] stack; // the values of the outer frames, the outermost one at index 0
+    private boolean[] stackSet; // whether the values of the outer frames were set
+    private int level;
+
+    protected PrimitiveVar(long initialValue) {
+        this.initialValue = initialValue;
+        this.value = initialValue;
+    }
+
+    /**
+     * @return the current value in its long representation
+     * @throws IllegalStateException if the variable is not set
+     */
+    protected final long getValue() {
+        checkState(isSet, "Var is not set");
+        return value;
+    }
+
+    /**
+     * Sets the current value.
+     *
+     * @param value the new value in its long representation
+     * @return true
+     */
+    protected final boolean setValue(long value) {
+        this.value = value;
+        isSet = true;
+        return true;
+    }
+
+    /**
+     * Converts the given long representation of a value into its boxed form.
+     *
+     * @param value the value
+     * @return the boxed value
+     */
+    protected abstract T box(long value);
+
+    /**
+     * Converts the given boxed value into its long representation.
+     *
+     * @param value the value, not null
+     * @return the long representation
+     */
+    protected abstract long unbox(T value);
+
+    @Override
+    public T get() {
+        return isSet ? box(value) : null;
+    }
+
+    @Override
+    public boolean set(T value) {
+        return value != null ? setValue(unbox(value)) : clear();
+    }
+
+    @Override
+    public boolean clear() {
+        isSet = false;
+        return true;
+    }
+
+    @Override
+    public T getAndSet(T value) {
+        T previous = get();
+        set(value);
+        return previous;
+    }
+
+    @Override
+    public T setAndGet(T value) {
+        set(value);
+        return get();
+    }
+
+    @Override
+    public boolean isSet() {
+        return isSet;
+    }
+
+    @Override
+    public boolean isNotSet() {
+        return !isSet;
+    }
+
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public boolean enterFrame() {
+        if (level++ > 0) {
+            int index = level - 2;
+            if (stack == null) {
+                stack = new long[8];
+                stackSet = new boolean[8];
+            } else if (index == stack.length) {
+                stack = Arrays.copyOf(stack, index * 2);
+                stackSet = Arrays.copyOf(stackSet, index * 2);
+            }
+            stack[index] = value;
+            stackSet[index] = isSet;
+        }
+        return setValue(initialValue);
+    }
+
+    @Override
+    public boolean exitFrame() {
+        if (--level > 0) {
+            value = stack[level - 1];
+            isSet = stackSet[level - 1];
+        }
+        return true;
+    }
+}
@@ -19,7 +19,7 @@ package org.parboiled.support;
 import org.parboiled.common.Factory;
 import org.parboiled.common.Reference;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
 import static org.parboiled.common.Preconditions.checkArgNotNull;
 
@@ -33,13 +33,16 @@ import static org.parboiled.common.Preconditions.checkArgNotNull;
  * When rule method A() passes a Var defined in its scope to another rule method B() as a parameter and an action
  * in rule method B() writes to this Var all actions in rule method A() running after B() will "see" this newly written
  * value (since values in Var<T> objects are passed by reference)</p>
+ * <p>For variables holding primitive values the {@link IntVar}, {@link LongVar} and {@link BooleanVar}
+ * specializations avoid boxing the values of the individual frames.</p>
  *
  * @param <T> the type wrapped by this Var
  */
 public class Var<T> extends Reference<T> {
 
-    private Factory<T> initialValueFactory;
-    private LinkedList<T> stack;
+    private Factory<T> initialValueFactory; // null if the initial value is constant
+    private T initialValue;
+    private Object[] stack; // the values of the outer frames, the outermost one at index 0
     private int level;
     private String name;
 
@@ -55,13 +58,9 @@ public class Var<T> extends Reference<T> {
      *
      * @param value the value
      */
-    public Var(final T value) {
+    public Var(T value) {
         super(value);
-        initialValueFactory = new Factory<T>() {
-            public T create() {
-                return value;
-            }
-        };
+        initialValue = value;
     }
 
     /**
@@ -110,10 +109,15 @@ public class Var<T> extends Reference<T> {
      */
     public boolean enterFrame() {
         if (level++ > 0) {
-            if (stack == null) stack = new LinkedList<T>();
-            stack.add(get());
+            int index = level - 2;
+            if (stack == null) {
+                stack = new Object[8];
+            } else if (index == stack.length) {
+                stack = Arrays.copyOf(stack, index * 2);
+            }
+            stack[index] = get();
         }
-        return set(initialValueFactory.create());
+        return set(initialValueFactory != null ? initialValueFactory.create() : initialValue);
     }
 
     /**
@@ -122,9 +126,12 @@ public class Var<T> extends Reference<T> {
      *
      * @return true
      */
+    @SuppressWarnings({"unchecked"})
     public boolean exitFrame() {
         if (--level > 0) {
-            set(stack.removeLast());
+            int index = level - 1;
+            set((T) stack[index]);
+            stack[index] = null;
         }
         return true;
     }
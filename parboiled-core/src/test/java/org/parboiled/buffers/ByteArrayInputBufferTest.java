@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.buffers;
+
+import org.parboiled.support.Chars;
+import org.parboiled.support.Position;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ByteArrayInputBufferTest {
+
+    @Test
+    public void testOneliner() throws Exception {
+        ByteArrayInputBuffer buf = new ByteArrayInputBuffer("abc\u00e9\u00ff".getBytes("ISO-8859-1"));
+        assertEquals(buf.charAt(-4), Chars.EOI);
+        assertEquals(buf.charAt(0), 'a');
+        assertEquals(buf.charAt(3), '\u00e9');
+        assertEquals(buf.charAt(4), '\u00ff');
+        assertEquals(buf.charAt(5), Chars.EOI);
+
+        assertTrue(buf.test(2, "c\u00e9".toCharArray()));
+        assertFalse(buf.test(4, "\u00ffx".toCharArray()));
+        assertTrue(buf.test(3, ByteArrayInputBuffer.encode("\u00e9\u00ff".toCharArray())));
+        assertNull(ByteArrayInputBuffer.encode("\u20ac".toCharArray()));
+
+        assertEquals(buf.extractLine(1), "abc\u00e9\u00ff");
+        assertEquals(buf.extract(2, 10), "c\u00e9\u00ff");
+        assertEquals(buf.getPosition(4), new Position(1, 5));
+    }
+
+    @Test
+    public void testMultiliner() throws Exception {
+        InputBuffer buf = new ByteArrayInputBuffer(("" +
+                "abcd\n" +
+                "ef\r\n" +
+                "\n" +
+                "gh\n" +
+                "\n").getBytes("ISO-8859-1")
+        );
+        assertEquals(buf.extractLine(1), "abcd");
+        assertEquals(buf.extractLine(2), "ef");
+        assertEquals(buf.extractLine(3), "");
+        assertEquals(buf.extractLine(4), "gh");
+        assertEquals(buf.extractLine(5), "");
+        assertEquals(buf.getLineCount(), 6);
+
+        assertEquals(buf.getPosition(4), new Position(1, 5));
+        assertEquals(buf.getPosition(5), new Position(2, 1));
+        assertEquals(buf.getPosition(8), new Position(2, 4));
+        assertEquals(buf.getPosition(9), new Position(3, 1));
+        assertEquals(buf.getPosition(13), new Position(5, 1));
+    }
+
+}
@@ -21,7 +21,10 @@ import org.parboiled.support.Position;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Random;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 public class DefaultInputBufferTest {
 
@@ -76,4 +79,33 @@ public class DefaultInputBufferTest {
         assertEquals(buf.getPosition(13), new Position(5,1));
     }
 
+    @Test
+    public void testPositionLookups() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            sb.append(random.nextInt(5) == 0 ? '\n' : 'x');
+        }
+        char[] chars = sb.toString().toCharArray();
+        DefaultInputBuffer buf = new DefaultInputBuffer(chars);
+        DefaultInputBuffer shared = new DefaultInputBuffer(chars, buf.getLineIndex());
+        assertSame(shared.getLineIndex(), buf.getLineIndex());
+
+        // sequential lookups
+        int line = 1, column = 1;
+        for (int i = 0; i < chars.length; i++) {
+            assertEquals(buf.getPosition(i), new Position(line, column));
+            if (chars[i] == '\n') {
+                line++;
+                column = 1;
+            } else column++;
+        }
+        assertEquals(buf.getLineCount(), line);
+
+        // random lookups
+        for (int i = 0; i < 500; i++) {
+            int index = random.nextInt(chars.length);
+            assertEquals(shared.getPosition(index), buf.getPosition(index));
+        }
+    }
 }
@@ -22,6 +22,8 @@ import org.parboiled.support.Chars;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Random;
+
 import static org.parboiled.buffers.InputBufferUtils.collectContent;
 import static org.testng.Assert.assertEquals;
 
@@ -204,4 +206,33 @@ public class IndentDedentInputBufferTest {
         InputBuffer buf = new IndentDedentInputBuffer(new char[0], 2, "#", false);
         assertEquals(buf.extract(0, 1), "");
     }
+
+    @Test
+    public void testLazyConversion() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            for (int j = random.nextInt(4) * 2; j > 0; j--) sb.append(' ');
+            switch (random.nextInt(5)) {
+                case 0: break; // empty line
+                case 1: sb.append("# comment"); break;
+                case 2: sb.append("line # trailing comment"); break;
+                default: sb.append("line ").append(i);
+            }
+            sb.append('\n');
+        }
+        char[] input = sb.toString().toCharArray();
+
+        for (boolean skipEmptyLines : new boolean[] {true, false}) {
+            InputBuffer eager = new IndentDedentInputBuffer(input, 2, "#", false, skipEmptyLines);
+            InputBuffer lazy = new IndentDedentInputBuffer(input, 2, "#", false, skipEmptyLines, true);
+            assertEquals(lazy.getOriginalIndex(700), eager.getOriginalIndex(700)); // random access first
+            for (int i = 0; ; i++) {
+                assertEquals(lazy.charAt(i), eager.charAt(i));
+                assertEquals(lazy.getOriginalIndex(i), eager.getOriginalIndex(i));
+                if (eager.charAt(i) == Chars.EOI) break;
+            }
+            assertEquals(collectContent(lazy), collectContent(eager));
+        }
+    }
 }
@@ -16,9 +16,14 @@
 
 package org.parboiled.buffers;
 
+import org.parboiled.support.Chars;
 import org.parboiled.support.Position;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.testng.Assert.assertEquals;
 
 public class MutableInputBufferTest {
@@ -186,4 +191,54 @@ public class MutableInputBufferTest {
         assertEquals(buf.getPosition(15), new Position(5,1));
     }
 
+    @Test
+    public void testRandomEdits() {
+        char[] input = new char[200];
+        for (int i = 0; i < input.length; i++) input[i] = (char) ('a' + i % 26);
+        MutableInputBuffer buf = new MutableInputBuffer(new DefaultInputBuffer(input));
+        // reference model: the sorted indices of the inserted chars and the chars themselves
+        List<Integer> inserts = new ArrayList<Integer>();
+        List<Character> chars = new ArrayList<Character>();
+        Random random = new Random(42);
+
+        for (int step = 0; step < 2000; step++) {
+            int length = input.length + inserts.size();
+            if (inserts.isEmpty() || random.nextInt(3) > 0) {
+                int index = random.nextInt(length + 1);
+                char c = (char) ('A' + random.nextInt(26));
+                int j = 0;
+                while (j < inserts.size() && inserts.get(j) < index) j++;
+                for (int k = j; k < inserts.size(); k++) inserts.set(k, inserts.get(k) + 1);
+                inserts.add(j, index);
+                chars.add(j, c);
+                buf.insertChar(index, c);
+            } else if (random.nextBoolean()) {
+                int j = random.nextInt(inserts.size());
+                int index = inserts.remove(j);
+                char c = chars.remove(j);
+                for (int k = j; k < inserts.size(); k++) inserts.set(k, inserts.get(k) - 1);
+                assertEquals(buf.undoCharInsertion(index), c);
+            } else {
+                int j = random.nextInt(inserts.size());
+                char c = (char) ('0' + random.nextInt(10));
+                chars.set(j, c);
+                buf.replaceInsertedChar(inserts.get(j), c);
+            }
+
+            if (step % 50 == 0) {
+                length = input.length + inserts.size();
+                int j = 0;
+                for (int index = 0; index <= length; index++) {
+                    if (j < inserts.size() && inserts.get(j) == index) {
+                        assertEquals(buf.charAt(index), (char) chars.get(j));
+                        assertEquals(buf.getOriginalIndex(index), index - j);
+                        j++;
+                    } else {
+                        assertEquals(buf.charAt(index), index - j < input.length ? input[index - j] : Chars.EOI);
+                        assertEquals(buf.getOriginalIndex(index), index - j);
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.matchers.AnyMatcher;
+import org.parboiled.matchers.CharMatcher;
+import org.parboiled.matchers.Matcher;
+import org.testng.annotations.Test;
+
+import static org.parboiled.support.MismatchMemo.WINDOW_SIZE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MismatchMemoTest {
+    private final Matcher a = new CharMatcher('a');
+    private final Matcher b = new AnyMatcher();
+
+    @Test
+    public void testLookups() {
+        MismatchMemo memo = new MismatchMemo();
+        for (int i = 0; i < 100 * WINDOW_SIZE; i += 7) {
+            memo.add(a, i);
+            if (i % 2 == 0) memo.add(b, i);
+        }
+        memo.add(a, 0); // already present
+        for (int i = 0; i < 100 * WINDOW_SIZE; i++) {
+            assertEquals(memo.contains(a, i), i % 7 == 0, "a@" + i);
+            assertEquals(memo.contains(b, i), i % 14 == 0, "b@" + i);
+        }
+        assertEquals(memo.size(), 58515 + 29258);
+        assertEquals(memo.getPeakSize(), memo.size());
+        assertEquals(memo.getLookups(), 200 * WINDOW_SIZE);
+        assertEquals(memo.getHits(), memo.size());
+        assertEquals(memo.getEvictions(), 0);
+
+        // indices far beyond the populated windows as well as backwards jumps work as well
+        memo.add(a, Integer.MAX_VALUE - 1);
+        memo.add(b, 3);
+        assertTrue(memo.contains(a, Integer.MAX_VALUE - 1));
+        assertTrue(memo.contains(b, 3));
+        assertFalse(memo.contains(b, Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testCommitEviction() {
+        MismatchMemo memo = new MismatchMemo();
+        for (int i = 0; i < 4 * WINDOW_SIZE; i++) memo.add(a, i);
+
+        memo.commit(2 * WINDOW_SIZE + 5); // evicts the first two windows only
+        assertEquals(memo.size(), 2 * WINDOW_SIZE);
+        assertEquals(memo.getEvictions(), 2 * WINDOW_SIZE);
+        assertFalse(memo.contains(a, 2 * WINDOW_SIZE - 1));
+        assertTrue(memo.contains(a, 2 * WINDOW_SIZE));
+
+        memo.add(a, 10); // behind the commit point, not stored anymore
+        assertFalse(memo.contains(a, 10));
+        memo.commit(WINDOW_SIZE); // commits never move backwards
+        assertTrue(memo.contains(a, 2 * WINDOW_SIZE));
+
+        memo.commit(10 * WINDOW_SIZE);
+        assertEquals(memo.size(), 0);
+        assertEquals(memo.getPeakSize(), 4 * WINDOW_SIZE);
+        memo.add(b, 10 * WINDOW_SIZE);
+        assertTrue(memo.contains(b, 10 * WINDOW_SIZE));
+    }
+
+    @Test
+    public void testCapacityEviction() {
+        MismatchMemo memo = new MismatchMemo();
+        memo.setCapacity(WINDOW_SIZE);
+        for (int i = 0; i < 3 * WINDOW_SIZE; i += 2) memo.add(a, i);
+        // three windows of WINDOW_SIZE / 2 entries each, the first one had to go
+        assertEquals(memo.size(), WINDOW_SIZE);
+        assertEquals(memo.getEvictions(), WINDOW_SIZE / 2);
+        assertFalse(memo.contains(a, 0));
+        assertTrue(memo.contains(a, WINDOW_SIZE));
+
+        // at capacity an entry for a lower window is the first to go again
+        memo.add(a, 0);
+        assertFalse(memo.contains(a, 0));
+        assertEquals(memo.getEvictions(), WINDOW_SIZE / 2 + 1);
+
+        memo.setCapacity(WINDOW_SIZE / 2);
+        assertEquals(memo.size(), WINDOW_SIZE / 2);
+        assertFalse(memo.contains(a, WINDOW_SIZE));
+        assertTrue(memo.contains(a, 2 * WINDOW_SIZE));
+    }
+}
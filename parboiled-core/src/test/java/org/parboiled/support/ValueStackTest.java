@@ -23,6 +23,7 @@ import java.util.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class ValueStackTest {
 
@@ -64,4 +65,69 @@ public class ValueStackTest {
         assertEquals(list, Arrays.asList(18,19,20));
     }
 
+    @Test
+    public void testPrimitiveLanes() {
+        DefaultValueStack<Object> stack = new DefaultValueStack<Object>();
+
+        stack.pushInt(42);
+        stack.pushLong(1L << 40);
+        stack.pushDouble(0.5);
+        assertEquals(stack.size(), 3);
+        Object snapshot = stack.takeSnapshot();
+
+        assertEquals(stack.peekDouble(), 0.5);
+        assertEquals(stack.popDouble(), 0.5);
+        assertEquals(stack.popLong(), 1L << 40);
+        assertEquals(stack.peekInt(), 42);
+        stack.restoreSnapshot(snapshot);
+        assertEquals(stack.size(), 3);
+
+        // primitive values appear as boxes to the regular methods and vice versa
+        assertEquals(stack.peek(2), (Object) 42);
+        stack.swap();
+        assertEquals(stack.pop(), (Object) (1L << 40));
+        assertEquals(stack.popDouble(), 0.5);
+        stack.push(7);
+        assertEquals(stack.popInt(), 7);
+        assertEquals(stack.popLong(), 42L);
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testNarrowingOverflow() {
+        DefaultValueStack<Object> stack = new DefaultValueStack<Object>();
+
+        stack.pushDouble(-2.9);
+        assertEquals(stack.peekLong(), -2L);
+        assertEquals(stack.popInt(), -2); // fractions are truncated
+
+        stack.pushLong(1L << 40);
+        assertNarrowingFails(stack, true);
+        stack.pop();
+        stack.push(1L << 40); // boxed values are checked as well
+        assertNarrowingFails(stack, true);
+        stack.pop();
+        stack.pushDouble(1e19);
+        assertNarrowingFails(stack, false);
+        stack.pop();
+        stack.pushDouble(Double.NaN);
+        assertNarrowingFails(stack, false);
+        assertEquals(stack.size(), 1); // a failed pop does not remove the value
+    }
+
+    private static void assertNarrowingFails(DefaultValueStack<Object> stack, boolean fitsLong) {
+        try {
+            stack.popInt();
+            fail("Expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            // expected
+        }
+        if (fitsLong) return;
+        try {
+            stack.peekLong();
+            fail("Expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.common.Factory;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class VarTest {
+
+    @Test
+    public void testVarFrames() {
+        Var<String> var = new Var<String>("init");
+        var.enterFrame();
+        var.set("level 1");
+        for (int i = 2; i <= 20; i++) {
+            var.enterFrame();
+            assertEquals(var.get(), "init");
+            var.set("level " + i);
+        }
+        assertEquals(var.getLevel(), 20);
+        for (int i = 20; i >= 2; i--) {
+            assertEquals(var.get(), "level " + i);
+            var.exitFrame();
+        }
+        assertEquals(var.get(), "level 1");
+        var.exitFrame();
+        assertEquals(var.getLevel(), 0);
+    }
+
+    @Test
+    public void testFactoryVar() {
+        final int[] created = new int[1];
+        Var<StringBuilder> var = new Var<StringBuilder>(new Factory<StringBuilder>() {
+            public StringBuilder create() {
+                created[0]++;
+                return new StringBuilder();
+            }
+        });
+        assertNull(var.get());
+        var.enterFrame();
+        StringBuilder outer = var.get();
+        var.enterFrame();
+        assertTrue(var.get() != outer);
+        var.exitFrame();
+        assertTrue(var.get() == outer);
+        var.exitFrame();
+        assertEquals(created[0], 2);
+    }
+
+    @Test
+    public void testPrimitiveVars() {
+        IntVar i = new IntVar(5);
+        LongVar l = new LongVar();
+        BooleanVar b = new BooleanVar(true);
+
+        for (int level = 1; level <= 20; level++) {
+            i.enterFrame();
+            l.enterFrame();
+            b.enterFrame();
+            assertEquals(i.getInt(), 5);
+            assertEquals(l.getLong(), 0L);
+            assertTrue(b.getBoolean());
+            i.add(level);
+            l.set(level * 1000000000000L);
+            if (level % 2 == 0) b.toggle();
+        }
+        for (int level = 20; level >= 1; level--) {
+            assertEquals(i.getInt(), 5 + level);
+            assertEquals(i.get(), Integer.valueOf(5 + level));
+            assertEquals(l.getLong(), level * 1000000000000L);
+            assertEquals(b.getBoolean(), level % 2 != 0);
+            i.exitFrame();
+            l.exitFrame();
+            b.exitFrame();
+        }
+        assertEquals(i.getLevel(), 0);
+
+        i.increment(); // the value of the outermost frame (6) stays after exiting it
+        i.decrement();
+        i.decrement();
+        assertEquals(i.getInt(), 5);
+        assertEquals(i.getAndSet(7), Integer.valueOf(5));
+        assertTrue(i.isSet());
+        assertFalse(b.isNotSet());
+    }
+
+    @Test
+    public void testUnsetPrimitiveVars() {
+        IntVar i = new IntVar(5);
+        assertTrue(i.clear());
+        assertTrue(i.isNotSet());
+        assertNull(i.get());
+        try {
+            i.getInt();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // the set state is part of the frame
+        i.enterFrame();
+        assertTrue(i.isSet());
+        assertEquals(i.getAndClear(), Integer.valueOf(5));
+        i.enterFrame();
+        assertEquals(i.getInt(), 5);
+        i.exitFrame();
+        assertTrue(i.isNotSet());
+        assertTrue(i.set(Integer.valueOf(3)));
+        assertEquals(i.getInt(), 3);
+        i.exitFrame();
+
+        BooleanVar b = new BooleanVar();
+        assertTrue(b.set((Boolean) null));
+        assertFalse(b.isSet());
+        assertEquals(b.setAndGet(true), Boolean.TRUE);
+    }
+}
@@ -66,6 +66,13 @@ public abstract class BaseParser<V> extends BaseActions<V> {
      */
     public static final Rule NOTHING = new NothingMatcher();
 
+    /**
+     * Matches nothing and always succeeds, committing the innermost enclosing FirstOf rule to the current
+     * alternative. If the rest of the alternative fails to match the FirstOf fails as well, without trying its
+     * remaining alternatives. See {@link CommitMatcher} for the details.
+     */
+    public static final Rule COMMIT = new CommitMatcher();
+
     /**
      * Creates a new instance of this parsers class using the no-arg constructor. If no no-arg constructor
      * exists this method will fail with a java.lang.NoSuchMethodError.
@@ -328,7 +335,14 @@ public abstract class BaseParser<V> extends BaseActions<V> {
             if (rule instanceof StringMatcher) {
                 chars[i] = ((StringMatcher) rule).characters;
             } else {
-                return new FirstOfMatcher(convertedRules);
+                // alternatives that are all literals, with at least one being a string or case-insensitive,
+                // can still be matched by a single scan
+                boolean simpleChars = true;
+                for (Rule r : convertedRules) {
+                    if (!FirstOfLiteralsMatcher.isLiteral(r)) return new FirstOfMatcher(convertedRules);
+                    if (!(r instanceof CharMatcher)) simpleChars = false;
+                }
+                return simpleChars ? new FirstOfMatcher(convertedRules) : new FirstOfLiteralsMatcher(convertedRules);
             }
         }
         return new FirstOfStringsMatcher(convertedRules, chars);
@@ -30,7 +30,8 @@ class FlagMarkingGenerator implements RuleMethodProcessor {
         checkArgNotNull(classNode, "classNode");
         checkArgNotNull(method, "method");
         return method.hasSuppressNodeAnnotation() || method.hasSuppressSubnodesAnnotation() ||
-                method.hasSkipNodeAnnotation() || method.hasMemoMismatchesAnnotation();
+                method.hasSkipNodeAnnotation() || method.hasMemoMismatchesAnnotation() ||
+                method.hasParallelAlternativesAnnotation();
     }
 
     public void process(ParserClassNode classNode, RuleMethod method) throws Exception {
@@ -52,6 +53,12 @@ class FlagMarkingGenerator implements RuleMethodProcessor {
         instructions.insertBefore(ret, new JumpInsnNode(IFNULL, isNullLabel));
         // stack: <rule>
 
+        if (method.hasParallelAlternativesAnnotation()) {
+            // must come first, memoMismatches wraps the rule
+            instructions.insertBefore(ret, new MethodInsnNode(INVOKESTATIC,
+                    Types.PARALLEL_FIRST_OF_MATCHER.getInternalName(), "parallelize",
+                    "(" + Types.RULE.getDescriptor() + ')' + Types.RULE.getDescriptor(), false));
+        }
         if (method.hasSuppressNodeAnnotation()) generateMarkerCall(instructions, ret, "suppressNode");
         if (method.hasSuppressSubnodesAnnotation()) generateMarkerCall(instructions, ret, "suppressSubnodes");
         if (method.hasSkipNodeAnnotation()) generateMarkerCall(instructions, ret, "skipNode");
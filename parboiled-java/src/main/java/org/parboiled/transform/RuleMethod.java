@@ -61,6 +61,7 @@ class RuleMethod extends MethodNode {
     private boolean hasSuppressSubnodesAnnotation;
     private boolean hasSkipNodeAnnotation;
     private boolean hasMemoMismatchesAnnotation;
+    private boolean hasParallelAlternativesAnnotation;
     private boolean hasSkipActionsInPredicatesAnnotation;
     private int numberOfReturns;
     private InstructionGraphNode returnInstructionNode;
@@ -153,6 +154,10 @@ class RuleMethod extends MethodNode {
         return hasMemoMismatchesAnnotation;
     }
 
+    public boolean hasParallelAlternativesAnnotation() {
+        return hasParallelAlternativesAnnotation;
+    }
+
     public int getNumberOfReturns() {
         return numberOfReturns;
     }
@@ -228,6 +233,10 @@ class RuleMethod extends MethodNode {
             hasMemoMismatchesAnnotation = true;
             return null; // we do not need to record this annotation
         }
+        if (Types.PARALLEL_ALTERNATIVES_DESC.equals(desc)) {
+            hasParallelAlternativesAnnotation = true;
+            return null; // we do not need to record this annotation
+        }
         if (Types.SKIP_ACTIONS_IN_PREDICATES_DESC.equals(desc)) {
             hasSkipActionsInPredicatesAnnotation = true;
             return null; // we do not need to record this annotation
@@ -334,12 +343,14 @@ class RuleMethod extends MethodNode {
         overridingMethod.hasSuppressSubnodesAnnotation |= hasSuppressSubnodesAnnotation;
         overridingMethod.hasSkipNodeAnnotation |= hasSkipNodeAnnotation;
         overridingMethod.hasMemoMismatchesAnnotation |= hasMemoMismatchesAnnotation;
+        overridingMethod.hasParallelAlternativesAnnotation |= hasParallelAlternativesAnnotation;
         hasCachedAnnotation = false;
         hasDontLabelAnnotation = true;
         hasSuppressNodeAnnotation = false;
         hasSuppressSubnodesAnnotation = false;
         hasSkipNodeAnnotation = false;
         hasMemoMismatchesAnnotation = false;
+        hasParallelAlternativesAnnotation = false;
     }
 
     public boolean isGenerationSkipped() {
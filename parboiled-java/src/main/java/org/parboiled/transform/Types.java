@@ -23,6 +23,7 @@ import org.parboiled.common.Factory;
 import org.parboiled.Action;
 import org.parboiled.BaseParser;
 import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.ParallelFirstOfMatcher;
 import org.parboiled.matchers.ProxyMatcher;
 import org.parboiled.matchers.VarFramingMatcher;
 import org.parboiled.support.Var;
@@ -35,6 +36,7 @@ interface Types {
     static final Type FACTORY = Type.getType(Factory.class);
     static final Type LABEL = Type.getType(Label.class);
     static final Type MATCHER = Type.getType(Matcher.class);
+    static final Type PARALLEL_FIRST_OF_MATCHER = Type.getType(ParallelFirstOfMatcher.class);
     static final Type PROXY_MATCHER = Type.getType(ProxyMatcher.class);
     static final Type RULE = Type.getType(Rule.class);
     static final Type VAR = Type.getType(Var.class);
@@ -54,6 +56,7 @@ interface Types {
     static final String BUILD_PARSE_TREE_DESC = Type.getType(BuildParseTree.class).getDescriptor();
     static final String SKIP_NODE_DESC = Type.getType(SkipNode.class).getDescriptor();
     static final String MEMO_MISMATCHES_DESC = Type.getType(MemoMismatches.class).getDescriptor();
+    static final String PARALLEL_ALTERNATIVES_DESC = Type.getType(ParallelAlternatives.class).getDescriptor();
     static final String MATCHER_DESC = MATCHER.getDescriptor();
     static final String RULE_DESC = RULE.getDescriptor();
     static final String VAR_DESC = VAR.getDescriptor();
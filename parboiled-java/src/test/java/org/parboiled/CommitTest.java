@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+import org.parboiled.annotations.MemoMismatches;
+import org.parboiled.annotations.ParallelAlternatives;
+import org.parboiled.matchers.FirstOfMatcher;
+import org.parboiled.matchers.MatcherInliner;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.DefaultParseMetrics;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CommitTest {
+
+    static class Parser extends BaseParser<Object> {
+        static final int LENGTH = 5000; // more than one memo window
+
+        Rule Statement() {
+            return Sequence(
+                    FirstOf(
+                            Sequence("let", COMMIT, ' ', Name(), '=', Digits()),
+                            Sequence(Name(), '=', Digits()),
+                            Sequence(Optional("x", COMMIT, 'y'), Digits())
+                    ),
+                    EOI
+            );
+        }
+
+        @ParallelAlternatives
+        Rule ParallelStatement() {
+            return FirstOf(
+                    Sequence("let", COMMIT, ' ', Name(), '=', Digits(), EOI),
+                    Sequence(Name(), '=', Digits(), EOI),
+                    Sequence(TestNot("ab", COMMIT, 'c'), Name(), EOI)
+            );
+        }
+
+        Rule SingleAlternative() {
+            Rule singleFirstOf = new FirstOfMatcher(new Rule[] {Sequence('a', COMMIT, 'b')});
+            return FirstOf(Sequence(singleFirstOf, 'c'), "ad");
+        }
+
+        Rule Lookahead(boolean commit) {
+            return Sequence(
+                    Optional(X()),
+                    commit ? Test(NTimes(LENGTH, 'a'), COMMIT) : Test(NTimes(LENGTH, 'a')),
+                    Optional(X()),
+                    Optional(X()),
+                    OneOrMore('a'),
+                    EOI
+            );
+        }
+
+        @MemoMismatches
+        Rule X() {
+            return Ch('x');
+        }
+
+        Rule Name() {
+            return OneOrMore(CharRange('a', 'z'));
+        }
+
+        Rule Digits() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+    }
+
+    @Test
+    public void testCommit() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule statement = parser.Statement();
+        assertMatches(statement, "let x=1", true);
+        assertMatches(statement, "x=1", true);
+        assertMatches(statement, "lets=1", false); // committed to the first alternative after "let"
+        assertMatches(statement, "let=1", false);
+        assertMatches(statement, "xy1", true);
+        assertMatches(statement, "x1", false); // the commit inside the Optional cancels the third alternative only
+
+        ParsingResult<?> result = new ReportingParseRunner<Object>(statement).run("lets=1");
+        assertEquals(printParseErrors(result), "" +
+                "Invalid input 's', expected ' ' (line 1, pos 4):\n" +
+                "lets=1\n" +
+                "   ^\n");
+    }
+
+    @Test
+    public void testCommitInParallelFirstOf() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule statement = parser.ParallelStatement();
+        assertMatches(statement, "let x=1", true);
+        assertMatches(statement, "lets=1", false);
+        assertMatches(statement, "x=1", true);
+        assertMatches(statement, "abd", true); // the commit in the predicate only affects the predicate
+        assertMatches(statement, "abc", false);
+    }
+
+    @Test
+    public void testCommitScopeSurvivesInlining() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule rule = parser.SingleAlternative();
+        assertMatches(rule, "ad", true);
+        assertMatches(MatcherInliner.inline(rule), "ad", true);
+    }
+
+    @Test
+    public void testCommitInPredicateKeepsMemoizations() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        char[] input = new char[Parser.LENGTH];
+        Arrays.fill(input, 'a');
+
+        // the predicate rewinds to index 0, where X is reinvoked twice
+        for (boolean commit : new boolean[] {false, true}) {
+            DefaultParseMetrics metrics = new DefaultParseMetrics();
+            assertTrue(new BasicParseRunner<Object>(parser.Lookahead(commit)).withMetrics(metrics).run(input).matched);
+            assertEquals(metrics.memoHits.sum(), 2, "commit: " + commit);
+        }
+    }
+
+    private static void assertMatches(Rule rule, String input, boolean matched) {
+        assertEquals(new BasicParseRunner<Object>(rule).run(input).matched, matched, input);
+    }
+}
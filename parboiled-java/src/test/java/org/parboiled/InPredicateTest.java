@@ -48,8 +48,27 @@ public class InPredicateTest extends TestNgParboiledTest<Object> {
             return Sequence('7', count2());
         }
 
+        public Rule CheckedParens() {
+            return Sequence(Test(Parens()), Parens(), EOI);
+        }
+
+        public Rule Parens() {
+            return FirstOf(Sequence('(', Parens(), ')', countParens()), 'x');
+        }
+
         // ********* ACTION *******
 
+        public int predicateCount = 0;
+
+        public boolean countParens() {
+            if (getContext().inPredicate()) {
+                predicateCount++;
+            } else {
+                count++;
+            }
+            return true;
+        }
+
         public boolean count1() {
             count++;
             return true;
@@ -83,4 +102,15 @@ public class InPredicateTest extends TestNgParboiledTest<Object> {
         assertEquals(parser.count, 1);
     }
 
+    @Test
+    public void testDeepNesting() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) sb.append('(');
+        sb.append('x');
+        for (int i = 0; i < 100; i++) sb.append(')');
+        test(parser.CheckedParens(), sb.toString()).hasNoErrors();
+        assertEquals(parser.predicateCount, 100);
+        assertEquals(parser.count, 100);
+    }
 }
@@ -18,6 +18,7 @@ package org.parboiled;
 
 import org.parboiled.annotations.BuildParseTree;
 import org.parboiled.annotations.SuppressNode;
+import org.parboiled.support.IntVar;
 import org.parboiled.support.Var;
 import org.parboiled.test.TestNgParboiledTest;
 import org.testng.annotations.Test;
@@ -56,6 +57,23 @@ public class VarFramingTest extends TestNgParboiledTest<Integer> {
 
     }
 
+    static class PrimitiveVarParser extends BaseParser<Integer> {
+
+        @SuppressWarnings( {"InfiniteRecursion"})
+        public Rule Nested() {
+            IntVar children = new IntVar();
+            return Sequence('(', ZeroOrMore(Nested(), drop(), children.increment()), ')', push(children.getInt()));
+        }
+    }
+
+    @Test
+    public void testPrimitiveVar() {
+        PrimitiveVarParser parser = Parboiled.createParser(PrimitiveVarParser.class);
+        test(parser.Nested(), "(()(()())())")
+                .hasNoErrors()
+                .hasResult(3);
+    }
+
     @Test
     public void test() {
         Parser parser = Parboiled.createParser(Parser.class);
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.support.ParseTreeUtils;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class FirstOfLiteralsMatcherTest {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Keyword() {
+            return FirstOf(IgnoreCase("select"), IgnoreCase("in"), "insert", IgnoreCase("set"), '*', "\u00fcber");
+        }
+
+        public Rule Statement() {
+            return Sequence(Keyword(), EOI);
+        }
+    }
+
+    @Test
+    public void testMatching() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule keyword = parser.Keyword();
+        assertTrue(keyword instanceof FirstOfLiteralsMatcher);
+
+        // a regular FirstOf over the very same alternatives serves as reference
+        List<Matcher> children = ((Matcher) keyword).getChildren();
+        Rule reference = new SequenceMatcher(new Rule[] {
+                new FirstOfMatcher(children.toArray(new Rule[children.size()])), parser.EOI
+        });
+        Rule statement = parser.Statement();
+
+        for (String input : new String[] {"select", "SeLeCt", "in", "IN", "insert", "set", "SET", "*", "\u00fcber",
+                "\u00dcber", "sel", "", "selectx", "x"}) {
+            ParsingResult<Object> expected = new BasicParseRunner<Object>(reference).run(input);
+            ParsingResult<Object> actual = new BasicParseRunner<Object>(statement).run(input);
+            assertEquals(actual.matched, expected.matched, input);
+        }
+
+        // "in" comes before "insert" and therefore shadows it
+        assertEquals(new BasicParseRunner<Object>(statement).run("insert").matched, false);
+        assertEquals(new BasicParseRunner<Object>(keyword).run("insert").matched, true);
+    }
+
+    @Test
+    public void testParseTree() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ParsingResult<Object> result = new BasicParseRunner<Object>(parser.Statement()).run("SeT");
+        assertEquals(ParseTreeUtils.printNodeTree(result), "" +
+                "[Statement] 'SeT'\n" +
+                "  [Keyword] 'SeT'\n" +
+                "    [\"set\"] 'SeT'\n" +
+                "  [EOI]\n");
+    }
+}
@@ -21,9 +21,13 @@ import org.parboiled.Parboiled;
 import org.parboiled.Rule;
 import org.parboiled.annotations.BuildParseTree;
 import org.parboiled.errors.GrammarException;
+import org.parboiled.parserunners.BasicParseRunner;
 import org.parboiled.test.TestNgParboiledTest;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
 public class FirstOfStringsMatcherTest extends TestNgParboiledTest<Object> {
 
     @BuildParseTree
@@ -40,6 +44,14 @@ public class FirstOfStringsMatcherTest extends TestNgParboiledTest<Object> {
         public Rule Test3() {
             return FirstOf("Ab", "Abc", "Bcd");
         }
+
+        public Rule Test4() {
+            return Sequence("caf\u00e9 ", Test1(), EOI);
+        }
+
+        public Rule Test5() {
+            return Sequence("\u20ac", EOI);
+        }
     }
 
     @Test
@@ -81,6 +93,18 @@ public class FirstOfStringsMatcherTest extends TestNgParboiledTest<Object> {
         test(parser.Test2(), "Bcd").hasNoErrors().hasParseTree("[Test2] 'Bcd'\n");
     }
 
+    @Test
+    public void testByteInput() throws Exception {
+        Parser parser = Parboiled.createParser(Parser.class);
+        BasicParseRunner<Object> runner = new BasicParseRunner<Object>(parser.Test4());
+        assertTrue(runner.run("caf\u00e9 Abc".getBytes("ISO-8859-1")).matched);
+        assertTrue(runner.run("caf\u00e9 Ab".getBytes("ISO-8859-1")).matched);
+        assertFalse(runner.run("caf\u00e9 Abd".getBytes("ISO-8859-1")).matched);
+        assertFalse(runner.run("cafe Abc".getBytes("ISO-8859-1")).matched);
+        // the euro sign cannot be represented in ISO-8859-1, so it never matches byte input
+        assertFalse(new BasicParseRunner<Object>(parser.Test5()).run(new byte[] {(byte) 0xA4}).matched);
+    }
+
     @Test(expectedExceptions = GrammarException.class)
     public void testFirstOfStringsFail() {
         Parser parser = Parboiled.createParser(Parser.class);
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ProfilingParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class LookaheadTableTest {
+
+    static class Parser extends BaseParser<Integer> {
+        int actions;
+
+        Rule Values() {
+            return Sequence(Value(), ZeroOrMore(',', Value()), EOI);
+        }
+
+        Rule Value() {
+            return FirstOf(
+                    Sequence("in", Number(), push(-pop())),
+                    Sequence("if", Number()),
+                    Number(),
+                    Sequence('x', count(), 'y', push(0)),
+                    Sequence(count(), 'z', push(1))
+            );
+        }
+
+        Rule Number() {
+            return Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match())));
+        }
+
+        Rule Unpredictable() {
+            return FirstOf(Sequence(count(), 'a'), Optional('b'));
+        }
+
+        boolean count() {
+            actions++;
+            return true;
+        }
+    }
+
+    @Test
+    public void testTable() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        FirstOfMatcher value = (FirstOfMatcher) MatcherInliner.inline(parser.Value());
+        LookaheadTable table = value.getLookaheadTable();
+        assertEquals(table.getDepth(0), 2);
+        assertEquals(table.getDepth(1), 2);
+        assertEquals(table.getDepth(2), 1); // a number can be a single digit
+        assertEquals(table.getDepth(3), 1); // the action is run after the 'x'
+        assertEquals(table.getDepth(4), 0); // the action is run right away
+
+        assertEquals(table.getCandidates('i'), new int[] {0, 1, 4});
+        assertEquals(table.getCandidates('7'), new int[] {2, 4});
+        assertEquals(table.getCandidates('-'), new int[] {4});
+
+        DefaultInputBuffer input = new DefaultInputBuffer("if1".toCharArray());
+        assertFalse(table.isViable(0, input, 0));
+        assertTrue(table.isViable(1, input, 0));
+
+        // alternatives starting with an action or matching empty input cannot be ruled out
+        assertNull(((FirstOfMatcher) MatcherInliner.inline(parser.Unpredictable())).getLookaheadTable());
+        assertNull(((FirstOfMatcher) MatcherInliner.inline(parser.Value(), 0)).getLookaheadTable());
+    }
+
+    @Test
+    public void testPredictiveMatching() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule original = parser.Values();
+        Rule inlined = MatcherInliner.inline(original);
+
+        for (String input : new String[] {"in1,if22,3", "xy,z,if4", "xz", "in", "if5,i6", "7,", ""}) {
+            parser.actions = 0;
+            ParsingResult<Integer> expected = new BasicParseRunner<Integer>(original).run(input);
+            int expectedActions = parser.actions;
+            parser.actions = 0;
+            ParsingResult<Integer> actual = new BasicParseRunner<Integer>(inlined).run(input);
+            assertEquals(actual.matched, expected.matched, input);
+            assertEquals(actual.valueStack.size(), expected.valueStack.size(), input);
+            for (int i = 0; i < actual.valueStack.size(); i++) {
+                assertEquals(actual.valueStack.peek(i), expected.valueStack.peek(i), input);
+            }
+            assertEquals(parser.actions, expectedActions, input);
+
+            // error reporting tries all alternatives
+            assertEquals(printParseErrors(new ReportingParseRunner<Integer>(inlined).run(input)),
+                    printParseErrors(new ReportingParseRunner<Integer>(original).run(input)), input);
+        }
+    }
+
+    @Test
+    public void testSkippedAlternatives() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule inlined = MatcherInliner.inline(parser.Values());
+        ProfilingParseRunner<Integer> predictive = new ProfilingParseRunner<Integer>(inlined);
+        ProfilingParseRunner<Integer> sequential =
+                new ProfilingParseRunner<Integer>(MatcherInliner.inline(parser.Values(), 0));
+        assertTrue(predictive.run("if1,2,3,4").matched);
+        assertTrue(sequential.run("if1,2,3,4").matched);
+        assertTrue(predictive.getReport().totalInvocations < sequential.getReport().totalInvocations);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParseTreeUtils;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MatcherInlinerTest {
+
+    static class Parser extends BaseParser<Integer> {
+
+        Rule Expression() {
+            return Sequence(Term(), ZeroOrMore('+', Term(), push(pop() + pop())), EOI);
+        }
+
+        Rule Term() {
+            return FirstOf(Number(), Parens(), Keyword());
+        }
+
+        Rule Parens() {
+            return Sequence('(', Sequence(Term(), ZeroOrMore('+', Term(), push(pop() + pop()))), ')');
+        }
+
+        Rule Number() {
+            return Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match())));
+        }
+
+        Rule Keyword() {
+            return Sequence(Sequence('t', 'e', 'n'), push(10));
+        }
+    }
+
+    static class KeywordParser extends BaseParser<Integer> {
+
+        Rule Statement() {
+            return Sequence(
+                    FirstOf(
+                            Sequence("select", ' ', Word()),
+                            Sequence("select", '*'),
+                            Sequence("set", ' ', Word()),
+                            Sequence("sel", Word(), push(1)),
+                            Sequence("sel", Word())
+                    ),
+                    EOI
+            );
+        }
+
+        Rule Word() {
+            return OneOrMore(CharRange('a', 'z'));
+        }
+    }
+
+    @BuildParseTree
+    static class TreeParser extends Parser {
+    }
+
+    @Test
+    public void testInlinedGraph() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule original = parser.Expression();
+        Rule inlined = MatcherInliner.inline(original);
+
+        assertEquals(count(inlined, ProxyMatcher.class, new IdentityHashMap<Matcher, Boolean>()), 1); // Term/Parens
+        assertEquals(count(inlined, StringMatcher.class, new IdentityHashMap<Matcher, Boolean>()), 1);
+
+        for (String input : new String[] {"1+2", "(1+ten)+3", "((7))", "ten+ten", "1+", "(1", "te"}) {
+            ParsingResult<Integer> expected = new BasicParseRunner<Integer>(original).run(input);
+            ParsingResult<Integer> actual = new BasicParseRunner<Integer>(inlined).run(input);
+            assertEquals(actual.matched, expected.matched, input);
+            assertEquals(actual.resultValue, expected.resultValue, input);
+        }
+
+        ParsingResult<Integer> result = new ReportingParseRunner<Integer>(inlined).run("(1+tex)");
+        assertFalse(result.matched);
+        assertEquals(result.parseErrors.size(), 1);
+        assertEquals(result.parseErrors.get(0).getStartIndex(), 5);
+    }
+
+    @Test
+    public void testCollapsing() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ProxyMatcher proxy = new ProxyMatcher();
+        proxy.arm((Matcher) parser.Number());
+        proxy.setLabel("Num");
+
+        Rule wrapper = new SequenceMatcher(new Rule[] {new FirstOfMatcher(new Rule[] {proxy})}).suppressNode();
+        Matcher inlined = (Matcher) MatcherInliner.inline(wrapper);
+        assertFalse(inlined instanceof ProxyMatcher);
+        assertEquals(inlined.getLabel(), "Num");
+        assertTrue(inlined.isNodeSuppressed());
+        assertTrue(new BasicParseRunner<Integer>(inlined).run("42").matched);
+
+        Rule labeled = new SequenceMatcher(new Rule[] {parser.Number()}).label("Labeled").suppressNode();
+        assertEquals(((Matcher) MatcherInliner.inline(labeled)).getLabel(), "Labeled");
+    }
+
+    @Test
+    public void testLeftFactoring() {
+        KeywordParser parser = Parboiled.createParser(KeywordParser.class);
+        Rule original = parser.Statement();
+        Matcher inlined = (Matcher) MatcherInliner.inline(original);
+
+        // the first three alternatives are factored into one, the ones with actions stay as they are
+        Matcher firstOf = inlined.getChildren().get(0);
+        assertEquals(firstOf.getChildren().size(), 3);
+        assertEquals(firstOf.getChildren().get(0).getChildren().get(0).getLabel(), "\"se\"");
+
+        for (String input : new String[] {"select a", "select*", "selectx", "set b", "selfie", "se", "sel", "s", ""}) {
+            ParsingResult<Integer> expected = new BasicParseRunner<Integer>(original).run(input);
+            ParsingResult<Integer> actual = new BasicParseRunner<Integer>(inlined).run(input);
+            assertEquals(actual.matched, expected.matched, input);
+            assertEquals(actual.resultValue, expected.resultValue, input);
+        }
+    }
+
+    @Test
+    public void testCommittingAlternativesAreNotFactored() {
+        KeywordParser parser = Parboiled.createParser(KeywordParser.class);
+        Rule firstOf = new FirstOfMatcher(new Rule[] {
+                parser.Sequence('a', BaseParser.COMMIT, 'b'), parser.Sequence('a', 'c'), parser.CharRange('a', 'z')
+        });
+        Rule original = new SequenceMatcher(new Rule[] {firstOf, parser.EMPTY}).suppressNode();
+        Rule inlined = MatcherInliner.inline(original);
+
+        for (String input : new String[] {"a", "ab", "ac", "z"}) {
+            assertEquals(new BasicParseRunner<Integer>(inlined).run(input).matched,
+                    new BasicParseRunner<Integer>(original).run(input).matched, input);
+        }
+        assertFalse(new BasicParseRunner<Integer>(inlined).run("a").matched);
+    }
+
+    @Test
+    public void testParseTreeIsPreserved() {
+        TreeParser parser = Parboiled.createParser(TreeParser.class);
+        Rule original = parser.Expression();
+        Rule inlined = MatcherInliner.inline(original);
+
+        assertEquals(count(inlined, StringMatcher.class, new IdentityHashMap<Matcher, Boolean>()), 0);
+        for (String input : new String[] {"1+2", "(1+ten)+3"}) {
+            assertEquals(
+                    ParseTreeUtils.printNodeTree(new BasicParseRunner<Integer>(inlined).run(input)),
+                    ParseTreeUtils.printNodeTree(new BasicParseRunner<Integer>(original).run(input)),
+                    input
+            );
+        }
+    }
+
+    private static int count(Rule rule, Class<?> type, Map<Matcher, Boolean> visited) {
+        Matcher matcher = (Matcher) rule;
+        if (visited.containsKey(matcher)) return 0;
+        visited.put(matcher, true);
+        int count = type.isInstance(matcher) ? 1 : 0;
+        if (matcher instanceof ProxyMatcher) return count + count(ProxyMatcher.unwrap(matcher), type, visited);
+        for (Matcher child : matcher.getChildren()) {
+            count += count(child, type, visited);
+        }
+        return count;
+    }
+}
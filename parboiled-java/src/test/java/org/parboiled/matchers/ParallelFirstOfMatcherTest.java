@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.annotations.ParallelAlternatives;
+import org.parboiled.annotations.SuppressSubnodes;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.MutableInputBuffer;
+import org.parboiled.errors.GrammarException;
+import org.parboiled.errors.ParseLimitExceededException;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ParseLimits;
+import org.parboiled.parserunners.ParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParseTreeUtils;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ParallelFirstOfMatcherTest {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Integer> {
+
+        Rule Statements() {
+            return Sequence(Statement(), ZeroOrMore(';', Statement()), EOI);
+        }
+
+        @ParallelAlternatives
+        Rule Statement() {
+            return FirstOf(Assignment(), Call(), Sum(), Sequence(Word(), push(0)));
+        }
+
+        Rule Assignment() {
+            return Sequence(Word(), '=', Sum(), push(pop() + 1000));
+        }
+
+        Rule Call() {
+            return Sequence(Word(), '(', Optional(Sum(), ZeroOrMore(',', Sum(), push(pop() + pop()))), ')');
+        }
+
+        Rule Sum() {
+            return Sequence(Number(), ZeroOrMore('+', Number(), push(pop() + pop())));
+        }
+
+        Rule Number() {
+            return Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match())));
+        }
+
+        @SuppressSubnodes
+        Rule Word() {
+            return OneOrMore(CharRange('a', 'z'));
+        }
+
+        @ParallelAlternatives
+        Rule Keyword() {
+            return FirstOf("if", "else");
+        }
+
+        @ParallelAlternatives
+        Rule Group() {
+            return FirstOf(Sequence('(', Word(), ')'), '(');
+        }
+    }
+
+    @Test
+    public void testRuleCreation() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Matcher statement = (Matcher) parser.Statement();
+        assertTrue(statement instanceof ParallelFirstOfMatcher);
+        assertEquals(statement.getLabel(), "Statement");
+        assertTrue(parser.Keyword() instanceof FirstOfStringsMatcher);
+
+        Rule parallel = ParallelFirstOfMatcher.parallelize(new FirstOfMatcher(new Rule[] {parser.Sum(), parser.Word()})
+                .label("Expr").suppressSubnodes());
+        assertEquals(((Matcher) parallel).getLabel(), "Expr");
+        assertTrue(((Matcher) parallel).areSubnodesSuppressed());
+        assertSame(ParallelFirstOfMatcher.parallelize(parallel), parallel);
+
+        try {
+            ParallelFirstOfMatcher.parallelize(parser.Sum());
+            fail();
+        } catch (GrammarException e) {
+            assertEquals(e.getMessage(), "Parallel alternatives can only be evaluated for FirstOf rules, not for 'Sum'");
+        }
+    }
+
+    @Test
+    public void testMatchingAsFirstOf() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule parallel = parser.Statements();
+
+        // a regular FirstOf over the very same alternatives serves as reference
+        List<Matcher> alternatives = ((Matcher) parser.Statement()).getChildren();
+        Rule reference = new SequenceMatcher(new Rule[] {
+                new FirstOfMatcher(alternatives.toArray(new Rule[alternatives.size()])).label("Statement"), parser.EOI
+        });
+        Rule sequential = new SequenceMatcher(new Rule[] {parser.Statement(), parser.EOI});
+
+        for (String input : new String[] {"a=1+2", "f(1,2+3)", "f()", "1+2+3", "abc", "x=y", "f(1", ""}) {
+            ParsingResult<Integer> actual = new BasicParseRunner<Integer>(sequential).run(input);
+            ParsingResult<Integer> expected = new BasicParseRunner<Integer>(reference).run(input);
+            assertEquals(actual.matched, expected.matched, input);
+            assertEquals(actual.resultValue, expected.resultValue, input);
+            assertEquals(ParseTreeUtils.printNodeTree(actual), ParseTreeUtils.printNodeTree(expected), input);
+        }
+
+        ParsingResult<Integer> result = new BasicParseRunner<Integer>(parallel).run("a=1+2;f(1,2);7");
+        assertEquals(result.valueStack.size(), 3);
+        assertEquals(result.valueStack.peek(2), Integer.valueOf(1003));
+        assertEquals(result.valueStack.peek(1), Integer.valueOf(3));
+        assertEquals(result.valueStack.peek(0), Integer.valueOf(7));
+    }
+
+    @Test
+    public void testErrorReporting() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ParsingResult<Integer> result = new ReportingParseRunner<Integer>(parser.Statements()).run("a=1;f(2,x)");
+        assertEquals(printParseErrors(result), "" +
+                "Invalid input 'x', expected Sum (line 1, pos 9):\n" +
+                "a=1;f(2,x)\n" +
+                "        ^\n");
+    }
+
+    @Test
+    public void testUnsafeInputBuffer() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        List<Matcher> alternatives = ((Matcher) parser.Statement()).getChildren();
+        Rule reference = new FirstOfMatcher(alternatives.toArray(new Rule[alternatives.size()]));
+
+        for (String input : new String[] {"a=1+2", "f(1,2+3)", "1+2+3", "abc"}) {
+            CountingInputBuffer expected = new CountingInputBuffer(input);
+            new BasicParseRunner<Integer>(reference).run(expected);
+            CountingInputBuffer actual = new CountingInputBuffer(input);
+            assertTrue(new BasicParseRunner<Integer>(parser.Statement()).run(actual).matched, input);
+
+            // the alternatives are tried sequentially, since the buffer must not be read by any forks
+            assertEquals(actual.reads, expected.reads, input);
+        }
+    }
+
+    @Test
+    public void testLimitsInForks() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        StringBuilder input = new StringBuilder("(");
+        for (int i = 0; i < 200; i++) input.append('a');
+
+        // only the fork of the first alternative consumes the input, the parsing thread just matches the '('
+        ParseLimits limits = new ParseLimits().withMaxInvocations(1000);
+        assertTrue(new BasicParseRunner<Integer>(parser.Group()).withLimits(limits).run(input.toString()).matched);
+        assertLimitExceeded(new BasicParseRunner<Integer>(parser.Group())
+                .withLimits(limits.withMaxInvocations(100)), input.toString(), ParseLimits.Limit.MATCHER_INVOCATIONS);
+
+        // the depth within the forks is measured from the root of the run
+        assertLimitExceeded(new BasicParseRunner<Integer>(parser.Group())
+                .withLimits(new ParseLimits().withMaxDepth(2)), "(a", ParseLimits.Limit.DEPTH);
+    }
+
+    private static void assertLimitExceeded(ParseRunner<Integer> runner, String input, ParseLimits.Limit limit) {
+        try {
+            runner.run(input);
+            fail("Expected ParseLimitExceededException");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.limit, limit);
+        }
+    }
+
+    private static class CountingInputBuffer extends MutableInputBuffer {
+        private int reads;
+
+        private CountingInputBuffer(String input) {
+            super(new DefaultInputBuffer(input.toCharArray()));
+        }
+
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return super.charAt(index);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class EventParseRunnerTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Lines() {
+            return Sequence(ZeroOrMore(Line(), '\n'), EOI);
+        }
+
+        Rule Line() {
+            return FirstOf(Assignment(), Field());
+        }
+
+        Rule Assignment() {
+            return Sequence(Field(), '=', Field());
+        }
+
+        Rule Field() {
+            return Sequence(TestNot(Keyword()), OneOrMore(CharRange('a', 'z')));
+        }
+
+        Rule Keyword() {
+            return Sequence("end", TestNot(CharRange('a', 'z')));
+        }
+    }
+
+    static class Recorder implements ParseEventListener {
+        final StringBuilder log = new StringBuilder();
+        final List<String> fields = new ArrayList<String>();
+        final String input;
+
+        Recorder(String input) {
+            this.input = input;
+        }
+
+        public void enter(Matcher rule, int startIndex) {
+            log.append('<').append(rule.getLabel()).append(startIndex);
+        }
+
+        public void match(Matcher rule, int startIndex, int endIndex) {
+            fields.add(input.substring(startIndex, endIndex));
+        }
+
+        public void exit(Matcher rule, int startIndex, boolean matched) {
+            log.append(matched ? ">" : "!");
+        }
+    }
+
+    @Test
+    public void testEvents() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        String input = "ab=c\nd\n";
+        Recorder recorder = new Recorder(input);
+        ParsingResult<Object> result = new EventParseRunner<Object>(parser.Lines(), recorder)
+                .withLabels("Line", "Field")
+                .run(input);
+
+        assertTrue(result.matched);
+        assertNull(result.parseTreeRoot);
+        assertTrue(result.valueStack.isEmpty());
+        // the second line first fails as an Assignment, the Keyword predicate does not create any events
+        assertEquals(recorder.log.toString(), "<Line0<Field0><Field3>><Line5<Field5><Field5>><Line7<Field7!<Field7!!");
+        assertEquals(recorder.fields, Arrays.asList("ab", "c", "ab=c", "d", "d", "d"));
+    }
+
+    @Test
+    public void testDefaultSelection() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        final List<String> labels = new ArrayList<String>();
+        new EventParseRunner<Object>(parser.Lines(), new ParseEventListener.Adapter() {
+            @Override
+            public void match(Matcher rule, int startIndex, int endIndex) {
+                if (!labels.contains(rule.getLabel())) labels.add(rule.getLabel());
+            }
+        }).run("x=y\n");
+        // CharRange, character literals and EOI carry custom labels as well
+        assertEquals(labels, Arrays.asList("a..z", "Field", "'='", "Assignment", "Line", "'\\n'", "EOI", "Lines"));
+    }
+}
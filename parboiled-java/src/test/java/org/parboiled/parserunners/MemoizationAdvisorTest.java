@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MemoizationAdvisorTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Items() {
+            return Sequence(OneOrMore(Item()), EOI);
+        }
+
+        Rule Item() {
+            return FirstOf(Sequence(Number(), 'a'), Sequence(Number(), 'b'), Sequence(Number(), 'c'), Word());
+        }
+
+        Rule Number() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+
+        Rule Word() {
+            return OneOrMore(CharRange('x', 'z'));
+        }
+    }
+
+    private static final String[] INPUTS = {"xyz12c", "12a", "zz3bxy4c", "x5c"};
+
+    @Test
+    public void testRecommendations() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        MemoizationAdvisor advisor = new MemoizationAdvisor().withLookupCost(0).withMinimumSaving(0);
+        List<MemoizationAdvisor.Recommendation> recommendations = advisor.advise(parser.Items(), INPUTS);
+
+        MemoizationAdvisor.Recommendation number =
+                find(recommendations, "Number", MemoizationAdvisor.Kind.MEMO_MISMATCHES);
+        assertTrue(number != null);
+        assertEquals(number.invocations, 36);
+        assertEquals(number.rematches, 7);
+        assertEquals(number.remismatches, 16);
+        // one entry for each of the 8 item starts without a number, averaged over the 4 runs
+        assertEquals(number.memoryBytes, 8 * 16 / 4);
+        // Number is mostly re-invoked where it mismatches, so memoizing its matches as well would not pay off
+        assertTrue(find(recommendations, "Number", MemoizationAdvisor.Kind.FULL_MEMOIZATION) == null);
+        assertTrue(find(recommendations, "Word", MemoizationAdvisor.Kind.MEMO_MISMATCHES) == null);
+
+        for (int i = 1; i < recommendations.size(); i++) {
+            assertTrue(recommendations.get(i - 1).savedNanos >= recommendations.get(i).savedNanos);
+        }
+        assertTrue(MemoizationAdvisor.print(recommendations).contains("Number               | MEMO_MISMATCHES"));
+    }
+
+    @Test
+    public void testNoRecommendationsWithoutReinvocationData() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(parser.Items()).withSampling(1);
+        for (String input : INPUTS) {
+            runner.run(input);
+        }
+        assertTrue(new MemoizationAdvisor().withMinimumSaving(0).advise(runner.getReport()).isEmpty());
+    }
+
+    @Test
+    public void testApplyingRecommendations() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule rule = parser.Items();
+        List<MemoizationAdvisor.Recommendation> recommendations =
+                new MemoizationAdvisor().withLookupCost(0).withMinimumSaving(0).advise(rule, INPUTS);
+
+        DefaultParseMetrics plainMetrics = new DefaultParseMetrics();
+        BasicParseRunner<Object> plain = new BasicParseRunner<Object>(rule);
+        plain.withMetrics(plainMetrics);
+        DefaultParseMetrics memoMetrics = new DefaultParseMetrics();
+        BasicParseRunner<Object> memoizing = MemoizationAdvisor.apply(new BasicParseRunner<Object>(rule),
+                recommendations);
+        memoizing.withMetrics(memoMetrics);
+
+        for (String input : new String[] {"xyz12c", "12a", "zz3bxy4c", "x5c", "x5d", "7"}) {
+            ParsingResult<Object> expected = plain.run(input);
+            ParsingResult<Object> actual = memoizing.run(input);
+            assertEquals(actual.matched, expected.matched, input);
+        }
+        assertEquals(plainMetrics.memoHits.sum(), 0);
+        assertTrue(memoMetrics.memoHits.sum() > 0);
+        assertFalse(((Matcher) rule).areMismatchesMemoed()); // the rule graph itself is left untouched
+    }
+
+    private static MemoizationAdvisor.Recommendation find(List<MemoizationAdvisor.Recommendation> recommendations,
+                                                          String label, MemoizationAdvisor.Kind kind) {
+        for (MemoizationAdvisor.Recommendation recommendation : recommendations) {
+            if (recommendation.kind == kind && recommendation.rule.getLabel().equals(label)) return recommendation;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.MutableInputBuffer;
+import org.parboiled.common.Factory;
+import org.parboiled.errors.ParseLimitExceededException;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ParallelRecordParseRunnerTest {
+
+    static class Parser extends BaseParser<Integer> {
+
+        Rule Records() {
+            return Sequence(ZeroOrMore(Record()), EOI);
+        }
+
+        Rule Record() {
+            return Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match())), ';');
+        }
+    }
+
+    static class LineParser extends BaseParser<Object> {
+
+        Rule Lines() {
+            return Sequence(ZeroOrMore(OneOrMore(CharRange('a', 'z')), Newline()), EOI);
+        }
+
+        Rule Newline() {
+            return FirstOf("\r\n", '\n');
+        }
+
+        Rule Endless() {
+            return Sequence(ZeroOrMore(OneOrMore(CharRange('a', 'z')), Newline()), OneOrMore(EOI));
+        }
+    }
+
+    static class FailingParser extends BaseParser<Object> {
+        static final CountDownLatch failed = new CountDownLatch(1);
+        static final AtomicInteger records = new AtomicInteger();
+
+        Rule Records() {
+            return Sequence(ZeroOrMore(Record()), EOI);
+        }
+
+        Rule Record() {
+            return Sequence(FirstOf(Sequence('x', fail()), Sequence(OneOrMore(CharRange('a', 'z')), count())), '\n');
+        }
+
+        boolean fail() {
+            failed.countDown();
+            throw new IllegalStateException("record failed");
+        }
+
+        boolean count() {
+            if (records.getAndIncrement() > 0) return true;
+            try {
+                failed.await(10, TimeUnit.SECONDS); // keeps the first shard running until the other one has failed
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+    }
+
+    private final Factory<AbstractParseRunner<Integer>> reportingRunners = new Factory<AbstractParseRunner<Integer>>() {
+        public AbstractParseRunner<Integer> create() {
+            return new ReportingParseRunner<Integer>(Parboiled.createParser(Parser.class).Records());
+        }
+    };
+
+    @Test
+    public void testValuesAreMergedInInputOrder() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 500; i++) sb.append(i).append(';');
+
+        ParsingResult<Integer> result = new ParallelRecordParseRunner<Integer>(
+                Parboiled.createParser(Parser.class).Records(), ';').withShardRunners(reportingRunners)
+                .withShardSize(50).run(sb.toString());
+        assertTrue(result.matched);
+        assertEquals(result.resultValue, (Integer) 500);
+
+        List<Integer> values = new ArrayList<Integer>();
+        for (Integer value : result.valueStack) values.add(value);
+        Collections.reverse(values);
+        assertEquals(values.size(), 500);
+        for (int i = 0; i < 500; i++) assertEquals(values.get(i), (Integer) (i + 1));
+    }
+
+    @Test
+    public void testErrorsHaveGlobalIndices() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 500; i++) sb.append(i == 123 || i == 456 ? "4x" : String.valueOf(i)).append(';');
+        String input = sb.toString();
+
+        ParsingResult<Integer> result = new ParallelRecordParseRunner<Integer>(
+                Parboiled.createParser(Parser.class).Records(), ';').withShardRunners(reportingRunners)
+                .withShardSize(100).run(input);
+        assertFalse(result.matched);
+        assertEquals(result.parseErrors.size(), 2);
+        assertEquals(result.parseErrors.get(0).getStartIndex(), input.indexOf('x'));
+        assertEquals(result.parseErrors.get(1).getStartIndex(), input.lastIndexOf('x'));
+    }
+
+    @Test
+    public void testSplitterRule() {
+        LineParser parser = Parboiled.createParser(LineParser.class);
+        String input = "abc\r\ndef\nghijkl\r\nmno\n";
+        for (int shardSize = 1; shardSize < input.length(); shardSize++) {
+            ParallelRecordParseRunner<Object> runner =
+                    new ParallelRecordParseRunner<Object>(parser.Lines(), parser.Newline());
+            assertTrue(runner.withShardSize(shardSize).run(input).matched, "shard size " + shardSize);
+            assertFalse(runner.withShardSize(shardSize).run(input + "pq").matched);
+        }
+        assertTrue(new ParallelRecordParseRunner<Object>(parser.Lines(), '\n').run("").matched);
+    }
+
+    @Test
+    public void testMutableInputBuffer() {
+        final LineParser parser = Parboiled.createParser(LineParser.class);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) sb.append("abc\n");
+        MutableInputBuffer buffer = new MutableInputBuffer(new DefaultInputBuffer(sb.toString().toCharArray()));
+        buffer.insertChar(601, '7'); // not thread-safe, so the runner has to parse a copy
+
+        ParsingResult<Object> result = new ParallelRecordParseRunner<Object>(parser.Lines(), '\n')
+                .withShardRunners(new Factory<AbstractParseRunner<Object>>() {
+                    public AbstractParseRunner<Object> create() {
+                        return new ReportingParseRunner<Object>(parser.Lines());
+                    }
+                }).withShardSize(20).run(buffer);
+        assertFalse(result.matched);
+        assertEquals(result.parseErrors.size(), 1);
+        assertEquals(result.parseErrors.get(0).getStartIndex(), 601);
+        assertEquals(result.parseErrors.get(0).getInputBuffer().getPosition(601).line, 151);
+    }
+
+    @Test
+    public void testShardRunnerConfiguration() {
+        LineParser parser = Parboiled.createParser(LineParser.class);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) sb.append("abc\n");
+        DefaultParseMetrics metrics = new DefaultParseMetrics(1);
+        ParallelRecordParseRunner<Object> runner = new ParallelRecordParseRunner<Object>(parser.Lines(), '\n');
+        runner.withShardSize(40).withMetrics(metrics);
+        runner.withMemoizedMismatches(Collections.singleton(parser.Newline()));
+
+        assertTrue(runner.run(sb.toString()).matched);
+        assertEquals(metrics.runs.sum(), 1); // the shard runs are part of the run of the ParallelRecordParseRunner
+        assertEquals(metrics.passes.sum(), 10);
+        assertEquals(metrics.memoLookups.sum(), 100); // one lookup for the Newline of every line
+        assertFalse(metrics.getRuleCounters().isEmpty());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testContextAwareActionsRequireShardRunners() {
+        new ParallelRecordParseRunner<Integer>(Parboiled.createParser(Parser.class).Records(), ';').run("1;");
+    }
+
+    @Test
+    public void testLimitsApplyToTheWholeRun() {
+        LineParser parser = Parboiled.createParser(LineParser.class);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) sb.append("abc\n");
+        DefaultParseMetrics metrics = new DefaultParseMetrics(1);
+        ParallelRecordParseRunner<Object> runner = new ParallelRecordParseRunner<Object>(parser.Lines(), '\n');
+        runner.withShardSize(40).withMetrics(metrics).run(sb.toString());
+        long invocations = 0;
+        for (DefaultParseMetrics.RuleCounters counters : metrics.getRuleCounters().values()) {
+            invocations += counters.samples.sum();
+        }
+
+        // every single one of the ten shards stays well within the budget, all of them together do not
+        runner = new ParallelRecordParseRunner<Object>(parser.Lines(), '\n');
+        runner.withShardSize(40).withLimits(new ParseLimits().withMaxInvocations(invocations / 2));
+        try {
+            runner.run(sb.toString());
+            fail("Expected ParseLimitExceededException");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.limit, ParseLimits.Limit.MATCHER_INVOCATIONS);
+        }
+        runner.withLimits(new ParseLimits().withMaxInvocations(invocations));
+        assertTrue(runner.run(sb.toString()).matched);
+    }
+
+    @Test
+    public void testRemainingShardsAreCancelledOnFailure() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append("abc\n");
+        sb.append("x\n"); // the second shard fails right away, while the first one is still running
+
+        try {
+            new ParallelRecordParseRunner<Object>(Parboiled.createParser(FailingParser.class).Records(), '\n')
+                    .withShardRunners(new Factory<AbstractParseRunner<Object>>() {
+                        public AbstractParseRunner<Object> create() {
+                            return new BasicParseRunner<Object>(Parboiled.createParser(FailingParser.class).Records());
+                        }
+                    }).withShardSize(2000 * 4 - 1).withPool(new ForkJoinPool(2)).run(sb.toString());
+            fail("Expected ParserRuntimeException");
+        } catch (ParserRuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException, String.valueOf(e.getCause()));
+        }
+        assertTrue(FailingParser.records.get() < 2000);
+    }
+
+    @Test
+    public void testEndlessEoiConsumption() {
+        LineParser parser = Parboiled.createParser(LineParser.class);
+        for (InputBuffer buffer : new InputBuffer[] {
+                new DefaultInputBuffer("abc\n".toCharArray()),
+                new MutableInputBuffer(new DefaultInputBuffer("abc\n".toCharArray()))}) {
+            try {
+                new ParallelRecordParseRunner<Object>(parser.Endless(), '\n').run(buffer);
+                fail("Expected ParserRuntimeException");
+            } catch (ParserRuntimeException e) {
+                assertTrue(e.getMessage().startsWith("Parser read more than 100K chars beyond EOI"), e.getMessage());
+            }
+        }
+    }
+}
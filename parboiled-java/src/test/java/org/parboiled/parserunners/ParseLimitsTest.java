@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.MemoMismatches;
+import org.parboiled.errors.ParseCancelledException;
+import org.parboiled.errors.ParseLimitExceededException;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ParseLimitsTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Input() {
+            return Sequence(Nested(), ZeroOrMore(FirstOf(Sequence(TestNot(X()), 'a'), 'b')), EOI);
+        }
+
+        Rule Nested() {
+            return Optional('(', Nested(), ')');
+        }
+
+        @MemoMismatches
+        Rule X() {
+            return Ch('x');
+        }
+    }
+
+    private final Parser parser = Parboiled.createParser(Parser.class);
+
+    @Test
+    public void testMaxInvocations() {
+        DefaultParseMetrics metrics = new DefaultParseMetrics(1);
+        new BasicParseRunner<Object>(parser.Input()).withMetrics(metrics).run("(())ab");
+        long invocations = 0;
+        for (DefaultParseMetrics.RuleCounters counters : metrics.getRuleCounters().values()) {
+            invocations += counters.samples.sum();
+        }
+
+        ParseLimits limits = new ParseLimits().withMaxInvocations(invocations);
+        assertTrue(new BasicParseRunner<Object>(parser.Input()).withLimits(limits).run("(())ab").matched);
+        limits.withMaxInvocations(invocations - 1);
+        assertLimitExceeded(new BasicParseRunner<Object>(parser.Input()).withLimits(limits), "(())ab",
+                ParseLimits.Limit.MATCHER_INVOCATIONS);
+    }
+
+    @Test
+    public void testMaxInvocationsAcrossPasses() {
+        ParseLimits limits = new ParseLimits().withMaxInvocations(40);
+        assertFalse(new BasicParseRunner<Object>(parser.Input()).withLimits(limits).run("ab(").matched);
+        // the reporting runner needs three passes for the same input, which together exceed the budget
+        assertLimitExceeded(new ReportingParseRunner<Object>(parser.Input()).withLimits(limits), "ab(",
+                ParseLimits.Limit.MATCHER_INVOCATIONS);
+    }
+
+    @Test
+    public void testMaxDepth() {
+        ParseLimits limits = new ParseLimits().withMaxDepth(50);
+        assertTrue(new BasicParseRunner<Object>(parser.Input()).withLimits(limits).run("((((()))))").matched);
+        assertLimitExceeded(new RecoveringParseRunner<Object>(parser.Input()).withLimits(limits),
+                repeat('(', 100) + repeat(')', 100), ParseLimits.Limit.DEPTH);
+    }
+
+    @Test
+    public void testMaxMemoEntries() {
+        ParseLimits limits = new ParseLimits().withMaxMemoEntries(10);
+        assertTrue(new BasicParseRunner<Object>(parser.Input()).withLimits(limits).run(repeat('a', 9)).matched);
+        assertLimitExceeded(new BasicParseRunner<Object>(parser.Input()).withLimits(limits), repeat('a', 20),
+                ParseLimits.Limit.MEMO_ENTRIES);
+    }
+
+    @Test
+    public void testCancellation() {
+        CancellationToken token = new CancellationToken();
+        ParseRunner<Object> runner = new BasicParseRunner<Object>(parser.Input()).withCancellation(token);
+        assertTrue(runner.run(repeat('a', 1000)).matched);
+
+        token.cancel();
+        try {
+            runner.run("ab"); // too short for the token to be polled, but already cancelled at the start
+            fail("Expected ParseCancelledException");
+        } catch (ParseCancelledException e) {
+            assertFalse(e.interrupted);
+        }
+        try {
+            runner.run(repeat('a', 1000));
+            fail("Expected ParseCancelledException");
+        } catch (ParseCancelledException e) {
+            assertFalse(e.interrupted);
+        }
+    }
+
+    @Test
+    public void testInterruption() {
+        ParseRunner<Object> runner = new RecoveringParseRunner<Object>(parser.Input())
+                .withCancellation(new CancellationToken());
+        Thread.currentThread().interrupt();
+        try {
+            runner.run(repeat('a', 1000));
+            fail("Expected ParseCancelledException");
+        } catch (ParseCancelledException e) {
+            assertTrue(e.interrupted);
+        } finally {
+            assertTrue(Thread.interrupted()); // also clears the flag again
+        }
+    }
+
+    @Test
+    public void testInterruptionWithoutToken() {
+        ParseRunner<Object> runner = new BasicParseRunner<Object>(parser.Input());
+        Thread.currentThread().interrupt();
+        try {
+            runner.run("ab");
+            fail("Expected ParseCancelledException");
+        } catch (ParseCancelledException e) {
+            assertTrue(e.interrupted);
+            assertEquals(e.index, 0);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertTrue(runner.run("ab").matched);
+    }
+
+    private static void assertLimitExceeded(ParseRunner<Object> runner, String input, ParseLimits.Limit limit) {
+        try {
+            runner.run(input);
+            fail("Expected ParseLimitExceededException");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.limit, limit);
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) sb.append(c);
+        return sb.toString();
+    }
+}
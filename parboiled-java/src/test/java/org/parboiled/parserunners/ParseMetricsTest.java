@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.MemoMismatches;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.common.StringBuilderSink;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ParseMetricsTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Clause() {
+            return Sequence(FirstOf(Zero(), One(), Two()), EOI);
+        }
+
+        Rule Zero() {
+            return Sequence(TestNot(SevenOrNine()), Ch('0'));
+        }
+
+        Rule One() {
+            return Sequence(TestNot(SevenOrNine()), Ch('1'));
+        }
+
+        Rule Two() {
+            return Sequence(TestNot(SevenOrNine()), Ch('2'));
+        }
+
+        @MemoMismatches
+        Rule SevenOrNine() {
+            return FirstOf('7', '9');
+        }
+    }
+
+    @Test
+    public void testBasicRunMetrics() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        DefaultParseMetrics metrics = new DefaultParseMetrics(1);
+        BasicParseRunner<Object> runner = new BasicParseRunner<Object>(parser.Clause());
+        runner.withMetrics(metrics);
+
+        assertTrue(runner.run("2").matched);
+        assertEquals(metrics.runs.sum(), 1);
+        assertEquals(metrics.matchedRuns.sum(), 1);
+        assertEquals(metrics.inputChars.sum(), 1);
+        assertEquals(metrics.passes.sum(), 1);
+        assertEquals(metrics.errors.sum(), 0);
+        assertEquals(metrics.memoLookups.sum(), 3);
+        assertEquals(metrics.memoHits.sum(), 2);
+        assertEquals(metrics.memoPeakSize.get(), 1);
+        assertEquals(metrics.memoEvictions.sum(), 0);
+
+        long samples = 0;
+        for (DefaultParseMetrics.RuleCounters counters : metrics.getRuleCounters().values()) {
+            samples += counters.samples.sum();
+        }
+        assertEquals(samples, 17); // the same number of invocations the ProfilingParseRunner reports
+    }
+
+    @Test
+    public void testRuleSamplingOfInstrumentedRunners() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        for (AbstractParseRunner<Object> runner : new AbstractParseRunner[] {
+                new ProfilingParseRunner<Object>(parser.Clause()),
+                new ProfilingParseRunner<Object>(parser.Clause()).withSampling(3),
+                new TracingParseRunner<Object>(parser.Clause()).withLog(new StringBuilderSink())}) {
+            DefaultParseMetrics metrics = new DefaultParseMetrics(1);
+            runner.withMetrics(metrics);
+            assertTrue(runner.run("2").matched);
+
+            long samples = 0;
+            for (DefaultParseMetrics.RuleCounters counters : metrics.getRuleCounters().values()) {
+                samples += counters.samples.sum();
+            }
+            assertEquals(samples, 17, runner.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    public void testMultiPassRunMetrics() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        DefaultParseMetrics metrics = new DefaultParseMetrics();
+
+        new ReportingParseRunner<Object>(parser.Clause()).withMetrics(metrics).run("3");
+        assertEquals(metrics.runs.sum(), 1);
+        assertEquals(metrics.failedRuns.sum(), 1);
+        assertEquals(metrics.passes.sum(), 3);
+        assertEquals(metrics.errors.sum(), 1);
+        assertEquals(metrics.recoveryIterations.sum(), 0);
+
+        new RecoveringParseRunner<Object>(parser.Clause()).withMetrics(metrics).run("13");
+        assertEquals(metrics.runs.sum(), 2);
+        assertEquals(metrics.matchedRuns.sum(), 1);
+        assertEquals(metrics.errors.sum(), 2);
+        assertEquals(metrics.recoveryIterations.sum(), 1);
+        assertTrue(metrics.passes.sum() > 6);
+        assertTrue(metrics.getRuleCounters().isEmpty());
+    }
+
+    @Test
+    public void testGetLength() {
+        assertEquals(InputBufferUtils.getLength(new DefaultInputBuffer(new char[0])), 0);
+        assertEquals(InputBufferUtils.getLength(new DefaultInputBuffer(new char[1])), 1);
+        assertEquals(InputBufferUtils.getLength(new DefaultInputBuffer(new char[1000])), 1000);
+        assertEquals(InputBufferUtils.getLength(new DefaultInputBuffer(new char[300000])), 300000);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.Parboiled;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ProfilingSamplingTest {
+
+    @Test
+    public void testSamplingEveryInvocation() {
+        ParseMetricsTest.Parser parser = Parboiled.createParser(ParseMetricsTest.Parser.class);
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(parser.Clause()).withSampling(1);
+        assertTrue(runner.run("2").matched);
+
+        ProfilingParseRunner.Report report = runner.getReport();
+        assertEquals(report.totalRuns, 1);
+        assertEquals(report.totalInvocations, 17); // with an interval of 1 every invocation is sampled
+        assertEquals(report.printFlameGraph(), "" +
+                "Clause 1\n" +
+                "Clause;EOI 1\n" +
+                "Clause;FirstOf 1\n" +
+                "Clause;FirstOf;One 1\n" +
+                "Clause;FirstOf;One;'1' 1\n" +
+                "Clause;FirstOf;One;TestNot 1\n" +
+                "Clause;FirstOf;One;TestNot;SevenOrNine 1\n" +
+                "Clause;FirstOf;Two 1\n" +
+                "Clause;FirstOf;Two;'2' 1\n" +
+                "Clause;FirstOf;Two;TestNot 1\n" +
+                "Clause;FirstOf;Two;TestNot;SevenOrNine 1\n" +
+                "Clause;FirstOf;Zero 1\n" +
+                "Clause;FirstOf;Zero;'0' 1\n" +
+                "Clause;FirstOf;Zero;TestNot 1\n" +
+                "Clause;FirstOf;Zero;TestNot;SevenOrNine 1\n" +
+                "Clause;FirstOf;Zero;TestNot;SevenOrNine;'7' 1\n" +
+                "Clause;FirstOf;Zero;TestNot;SevenOrNine;'9' 1\n");
+    }
+
+    @Test
+    public void testSampledCountsAreScaled() {
+        ParseMetricsTest.Parser parser = Parboiled.createParser(ParseMetricsTest.Parser.class);
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(parser.Clause()).withSampling(4);
+        for (int i = 0; i < 4; i++) {
+            runner.run("2");
+        }
+
+        ProfilingParseRunner.Report report = runner.getReport();
+        assertEquals(report.totalRuns, 4);
+        assertEquals(report.totalInvocations, 68); // 17 samples scaled up by the interval
+        long samples = 0;
+        for (long count : report.collapsedStacks.values()) {
+            samples += count;
+        }
+        assertEquals(samples, 17);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testSamplingAfterFirstRun() {
+        ParseMetricsTest.Parser parser = Parboiled.createParser(ParseMetricsTest.Parser.class);
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(parser.Clause());
+        runner.run("2");
+        runner.withSampling(10);
+    }
+}
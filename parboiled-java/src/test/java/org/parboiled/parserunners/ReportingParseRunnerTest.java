@@ -17,6 +17,8 @@
 package org.parboiled.parserunners;
 
 import org.parboiled.BaseParser;
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
 import org.parboiled.Parboiled;
 import org.parboiled.Rule;
 import org.parboiled.support.ParsingResult;
@@ -35,8 +37,31 @@ public class ReportingParseRunnerTest {
         Rule Line2() {
             return Sequence('a', TestNot('b'), 'c', EOI);
         }
+
+        Rule Statement() {
+            return Sequence(
+                    FirstOf("select", "set", "delete"), ' ', Name(), ZeroOrMore(", ", Name()),
+                    Optional(" where ", Name(), FirstOf(" = ", " <> "), Name()),
+                    EOI
+            );
+        }
+
+        Rule Name() {
+            return Sequence(TestNot(Keyword()), OneOrMore(CharRange('a', 'z')));
+        }
+
+        Rule Keyword() {
+            return FirstOf(IgnoreCase("from"), IgnoreCase("where"), "and");
+        }
     }
 
+    // delegating to the matchers directly through an inner handler forces character level matching
+    private static final MatchHandler CHAR_LEVEL = new MatchHandler() {
+        public boolean match(MatcherContext<?> context) {
+            return context.getMatcher().match(context);
+        }
+    };
+
     @Test
     public void testErrorLocation() {
         Parser parser = Parboiled.createParser(Parser.class);
@@ -72,4 +97,22 @@ public class ReportingParseRunnerTest {
                 "ad\n" +
                 " ^\n");
     }
+
+    @Test
+    public void testFastStringMatchingInErrorAnalysis() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule rule = parser.Statement();
+        for (String input : new String[] {"selecx a", "select a, b whera c = d", "select a where b <= c", "set where",
+                "delete a,b", "select and", "select a, b where c <> dE", "sel", "select a where from = b"}) {
+            ParsingResult<?> located = new ErrorLocatingParseRunner<Object>(rule).run(input);
+            ParsingResult<?> expectedLocated = new ErrorLocatingParseRunner<Object>(rule, CHAR_LEVEL).run(input);
+            int errorIndex = located.parseErrors.get(0).getStartIndex();
+            assertEquals(errorIndex, expectedLocated.parseErrors.get(0).getStartIndex(), input);
+
+            ParsingResult<?> reported = new ErrorReportingParseRunner<Object>(rule, errorIndex).run(input);
+            ParsingResult<?> expectedReported =
+                    new ErrorReportingParseRunner<Object>(rule, errorIndex, CHAR_LEVEL).run(input);
+            assertEquals(printParseErrors(reported), printParseErrors(expectedReported), input);
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class GrammarAnalyzerTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Statements() {
+            return Sequence(Statement(), ZeroOrMore(';', Statement()), EOI);
+        }
+
+        Rule Statement() {
+            return FirstOf(Assignment(), Call(), Number(), Block());
+        }
+
+        Rule Assignment() {
+            return Sequence(Word(), '=', Value());
+        }
+
+        Rule Call() {
+            return Sequence(Word(), '(', Optional(Value()), ')');
+        }
+
+        Rule Block() {
+            return Sequence('{', Statement(), '}');
+        }
+
+        Rule Value() {
+            return FirstOf(Sequence(Optional('-'), Number()), Sequence('-', Word()), Sequence(TestNot('x'), ANY));
+        }
+
+        Rule Number() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+
+        Rule Word() {
+            return OneOrMore(AnyOf("abc"));
+        }
+    }
+
+    @Test
+    public void testFirstAndFollowSets() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(parser.Statements());
+
+        assertFalse(analyzer.isNullable(parser.Statement()));
+        assertEquals(analyzer.getFirst(parser.Statement()), Characters.of("abc0123456789{"));
+        assertEquals(analyzer.getFollow(parser.Statement()), Characters.of(";}" + Chars.EOI));
+        assertFalse(analyzer.canEndRoot(parser.Statement()));
+        assertTrue(analyzer.canEndRoot(parser.Statements()));
+
+        assertEquals(analyzer.getFollow(parser.Word()), Characters.of("=(;})" + Chars.EOI));
+        assertEquals(analyzer.getFollow(parser.Number()), Characters.of(";})" + Chars.EOI));
+        assertEquals(analyzer.getFirst(parser.Value()), Characters.allBut(Chars.EOI));
+        assertEquals(analyzer.getLookahead(parser.Number()), Characters.of("0123456789"));
+        assertEquals(analyzer.getLookahead(parser.Statements()), Characters.of("abc0123456789{"));
+    }
+
+    @Test
+    public void testConflicts() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(parser.Statements());
+
+        List<GrammarAnalyzer.Conflict> conflicts = analyzer.getConflicts(parser.Statement());
+        assertEquals(conflicts.size(), 1);
+        assertEquals(conflicts.get(0).toString(),
+                "Statement: alternatives 1 ('Assignment') and 2 ('Call') conflict on [abc]");
+
+        conflicts = analyzer.getConflicts(parser.Value());
+        assertEquals(conflicts.size(), 3);
+        assertEquals(conflicts.get(0).chars, Characters.of('-'));
+        assertEquals(conflicts.get(1).chars, Characters.of("-0123456789"));
+        assertEquals(conflicts.get(2).chars, Characters.of('-'));
+        assertEquals(analyzer.getConflicts().size(), 4);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testForeignRule() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer.analyze(parser.Word()).getFirst(parser.Number());
+    }
+}
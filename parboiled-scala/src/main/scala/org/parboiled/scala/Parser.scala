@@ -17,8 +17,8 @@
 package org.parboiled.scala
 
 import org.parboiled.matchers._
-import _root_.scala.collection.mutable
-import org.parboiled.Context
+import java.util.concurrent.ConcurrentHashMap
+import org.parboiled.{Action, Context}
 import rules.Rule._
 import org.parboiled.support.{Chars, ValueStack, Characters}
 
@@ -28,8 +28,10 @@ import org.parboiled.support.{Chars, ValueStack, Characters}
  */
 trait Parser {
 
-  private val cache = mutable.Map.empty[RuleMethod, Rule]
+  private val cache = new ConcurrentHashMap[AnyRef, Rule] // completely constructed rules only
   private val lock = new AnyRef()
+  private val building = new java.util.HashMap[AnyRef, Rule] // the rules of the current construction, guarded by lock
+  private var buildDepth = 0 // guarded by lock
 
   /**
    * Indicates whether parboiled will create a parse tree during a parsing run of this parser.
@@ -42,8 +44,11 @@ trait Parser {
    * Defines a parser rule wrapping the given rule construction block with caching and recursion protection.
    */
   def rule[T <: Rule](block: => T)(implicit creator: Matcher => T): T = {
-    val ruleMethod = getCurrentRuleMethod
-    rule(ruleMethod.getMethodName, ruleMethod, Seq.empty, block, creator)
+    val key = getRuleKey(block)
+    cache.get(key) match {
+      case null => rule(getRuleMethodName(block), key, Seq.empty, block, creator)
+      case rule => rule.asInstanceOf[T]
+    }
   }
 
   /**
@@ -51,8 +56,11 @@ trait Parser {
    * using the given rule option(s).
    */
   def rule[T <: Rule](firstOption: RuleOption, more: RuleOption*)(block: => T)(implicit creator: Matcher => T): T = {
-    val ruleMethod = getCurrentRuleMethod
-    rule(ruleMethod.getMethodName, ruleMethod, firstOption +: more, block, creator)
+    val key = getRuleKey(block)
+    cache.get(key) match {
+      case null => rule(getRuleMethodName(block), key, firstOption +: more, block, creator)
+      case rule => rule.asInstanceOf[T]
+    }
   }
   
   /**
@@ -60,26 +68,44 @@ trait Parser {
    * Labels the constructed rule with the given label and optionally marks it according to the given rule options.
    */
   def rule[T <: Rule](label: String, options: RuleOption*)(block: => T)(implicit creator: Matcher => T): T = {
-    rule(label, getCurrentRuleMethod, options, block, creator)
+    val key = getRuleKey(block)
+    cache.get(key) match {
+      case null => rule(label, key, options, block, creator)
+      case rule => rule.asInstanceOf[T]
+    }
   }
 
-  private def rule[T <: Rule](label: String, key: RuleMethod, options: Seq[RuleOption], block: => T, creator: Matcher => T): T =
+  // cache hits are served without locking above, rule construction itself is serialized.
+  // The rules of a construction only become visible to other threads once the outermost rule is complete, since
+  // before that they might still refer to unarmed proxies of rules further up.
+  private def rule[T <: Rule](label: String, key: AnyRef, options: Seq[RuleOption], block: => T, creator: Matcher => T): T =
     lock.synchronized {
       cache.get(key) match {
-        case Some(rule) => rule.asInstanceOf[T]
-        case None => {
-          val proxy = new ProxyMatcher
-          // protect block from infinite recursion by immediately caching a new Rule of type T wrapping the proxy creator
-          cache += key -> creator(proxy)
-          var rule = withCurrentRuleLabel(label) { block.label(label) } // evaluate rule definition block
-          if (!buildParseTree || options.contains(SuppressNode)) rule = rule.suppressNode
-          if (options.contains(SuppressSubnodes)) rule = rule.suppressSubnodes
-          if (options.contains(SkipNode)) rule = rule.skipNode
-          if (options.contains(MemoMismatches)) rule = rule.memoMismatches
-          proxy.arm(rule.matcher) // arm the proxy in case it is in use
-          cache += key -> rule // replace the cache value with the actual rule (overwriting the proxy rule)
-          rule
+        case null => building.get(key) match {
+          case null => {
+            buildDepth += 1
+            try {
+              val proxy = new ProxyMatcher
+              // protect block from infinite recursion by immediately registering a new Rule of type T wrapping the proxy
+              building.put(key, creator(proxy))
+              var rule = withCurrentRuleLabel(label) { block.label(label) } // evaluate rule definition block
+              if (options.contains(ParallelAlternatives)) rule = rule.parallelAlternatives
+              if (!buildParseTree || options.contains(SuppressNode)) rule = rule.suppressNode
+              if (options.contains(SuppressSubnodes)) rule = rule.suppressSubnodes
+              if (options.contains(SkipNode)) rule = rule.skipNode
+              if (options.contains(MemoMismatches)) rule = rule.memoMismatches
+              proxy.arm(rule.matcher) // arm the proxy in case it is in use
+              building.put(key, rule) // replace the proxy rule with the actual rule
+              if (buildDepth == 1) cache.putAll(building) // all proxies of the construction are armed now
+              rule
+            } finally {
+              buildDepth -= 1
+              if (buildDepth == 0) building.clear()
+            }
+          }
+          case rule => rule.asInstanceOf[T]
         }
+        case rule => rule.asInstanceOf[T]
       }
     }
 
@@ -455,6 +481,36 @@ trait Parser {
       vs.push(c)
     }))).label(nameAction("Push3")))
 
+  /**
+   * Create a parser action whose Int result value is pushed onto the value stack without boxing it.
+   */
+  def pushInt(f: => Int): Rule1[Int] = new Rule1[Int](new ActionMatcher(new Action[Any] {
+    def run(context: Context[Any]) = {
+      rules.Rule.pushInt(context.getValueStack, f)
+      true
+    }
+  }).label(nameAction("Push1")))
+
+  /**
+   * Create a parser action whose Long result value is pushed onto the value stack without boxing it.
+   */
+  def pushLong(f: => Long): Rule1[Long] = new Rule1[Long](new ActionMatcher(new Action[Any] {
+    def run(context: Context[Any]) = {
+      rules.Rule.pushLong(context.getValueStack, f)
+      true
+    }
+  }).label(nameAction("Push1")))
+
+  /**
+   * Create a parser action whose Double result value is pushed onto the value stack without boxing it.
+   */
+  def pushDouble(f: => Double): Rule1[Double] = new Rule1[Double](new ActionMatcher(new Action[Any] {
+    def run(context: Context[Any]) = {
+      rules.Rule.pushDouble(context.getValueStack, f)
+      true
+    }
+  }).label(nameAction("Push1")))
+
   /**
    * Create a parser action from the given function whose result value is pushed onto the value stack.
    */
@@ -44,3 +44,9 @@ case object SkipNode extends RuleOption
  * Enables memoization of rule mismatches for consecutive rule applications at the same input location.
  */
 case object MemoMismatches extends RuleOption
+
+/**
+ * Speculatively evaluates the alternatives of this FirstOf rule concurrently before committing to the first one that
+ * matches (see org.parboiled.matchers.ParallelFirstOfMatcher). Only worth its overhead for expensive alternatives.
+ */
+case object ParallelAlternatives extends RuleOption
@@ -23,6 +23,7 @@ import rules.Rule._
 import support.Chars
 import io.{Codec, Source}
 import java.io.InputStream
+import java.lang.invoke.SerializedLambda
 import util.DynamicVariable
 
 package object scala {
@@ -96,6 +97,12 @@ package object scala {
    */
   lazy val EMPTY: Rule0 = new EmptyMatcher()
 
+  /**
+   * A rule that always matches but consumes no input and commits the innermost enclosing FirstOf rule to the
+   * current alternative, i.e. should the rest of the alternative fail the FirstOf fails as well.
+   */
+  lazy val COMMIT: Rule0 = new CommitMatcher()
+
   /**
    * A rule that matches any single character except EOI.
    */
@@ -143,10 +150,45 @@ package object scala {
 
   private[scala] def getCurrentRuleMethod: StackTraceElement = {
     val trace = Thread.currentThread().getStackTrace
-    val ix = trace.indexWhere(m => m.getMethodName != "rule" && m.getMethodName != "rule$", from = 2)
+    val ix = trace.indexWhere(m => m.getMethodName != "rule" && m.getMethodName != "rule$" &&
+      m.getMethodName != "getRuleMethodName", from = 2)
     trace(ix)
   }
 
+  /**
+   * Returns the key identifying the rule defined by the given rule construction block.
+   * The compiler passes the thunk of a by-name argument on unchanged, so the class of the thunk is the class of the
+   * closure created at the "rule { ... }" call site, which uniquely identifies the rule without walking the stack.
+   */
+  private[scala] def getRuleKey(block: => Any): AnyRef = {
+    val thunk: AnyRef = () => block
+    thunk.getClass
+  }
+
+  private val AnonFunName = """\$anonfun\$(.+?)\$\d+(\$adapted)?""".r
+
+  /**
+   * Returns the name of the method containing the "rule { ... }" call site of the given rule construction block.
+   * The name is taken from the serialized form of the closure, only if that is unavailable the stack is consulted.
+   */
+  private[scala] def getRuleMethodName(block: => Any): String = {
+    val thunk: AnyRef = () => block
+    val implMethodName = try {
+      val writeReplace = thunk.getClass.getDeclaredMethod("writeReplace")
+      writeReplace.setAccessible(true)
+      writeReplace.invoke(thunk) match {
+        case lambda: SerializedLambda => lambda.getImplMethodName
+        case _ => null
+      }
+    } catch {
+      case _: Exception => null
+    }
+    implMethodName match {
+      case AnonFunName(methodName, _) => methodName
+      case _ => getCurrentRuleMethod.getMethodName
+    }
+  }
+
   implicit def toTestAction(f: Context[Any] => Boolean): Rule0 = new ActionMatcher(new Action[Any] {
     def run(context: Context[Any]): Boolean = f(context)
   }).label("TestAction")
@@ -79,6 +79,14 @@ class Rule1[+A](val matcher: Matcher) extends PushRule {
   def ~~~?(f: A => Boolean) = withMatcher(append(exec(stack1(Peek), f)))
   def ~~~%(f: A => Unit) = withMatcher(append(ok(exec(stack1(Peek), f))))
   def |[AA >: A](other: Rule1[AA]) = new Rule1[AA](appendChoice(other))
+
+  // the following variants of ~~> work on the primitive lanes of the value stack and therefore do not box
+  def mapInt(f: Int => Int)(implicit ev: A <:< Int) = new Rule1[Int](append(Rule.mapInt(f)))
+  def reduceInt(f: (Int, Int) => Int)(implicit ev: A <:< Int) = new ReductionRule1[Int, Int](append(Rule.reduceInt(f)))
+  def mapLong(f: Long => Long)(implicit ev: A <:< Long) = new Rule1[Long](append(Rule.mapLong(f)))
+  def reduceLong(f: (Long, Long) => Long)(implicit ev: A <:< Long) = new ReductionRule1[Long, Long](append(Rule.reduceLong(f)))
+  def mapDouble(f: Double => Double)(implicit ev: A <:< Double) = new Rule1[Double](append(Rule.mapDouble(f)))
+  def reduceDouble(f: (Double, Double) => Double)(implicit ev: A <:< Double) = new ReductionRule1[Double, Double](append(Rule.reduceDouble(f)))
   protected def withMatcher(matcher: Matcher) = new Rule1[A](matcher).asInstanceOf[this.type]
 }
 
@@ -143,6 +151,11 @@ class Rule2[+A, +B](val matcher: Matcher) extends PushRule {
   def ~~~%(f: B => Unit) = withMatcher(append(ok(exec(stack1(Peek), f))))
   def ~~~%(f: (A, B) => Unit) = withMatcher(append(ok(exec(stack2(Peek), f))))
   def |[AA >: A, BB >: B](other: Rule2[AA, BB]) = new Rule2[AA, BB](appendChoice(other))
+
+  // the following variants of ~~> work on the primitive lanes of the value stack and therefore do not box
+  def reduceInt(f: (Int, Int) => Int)(implicit ev1: A <:< Int, ev2: B <:< Int) = new Rule1[Int](append(Rule.reduceInt(f)))
+  def reduceLong(f: (Long, Long) => Long)(implicit ev1: A <:< Long, ev2: B <:< Long) = new Rule1[Long](append(Rule.reduceLong(f)))
+  def reduceDouble(f: (Double, Double) => Double)(implicit ev1: A <:< Double, ev2: B <:< Double) = new Rule1[Double](append(Rule.reduceDouble(f)))
   protected def withMatcher(matcher: Matcher) = new Rule2[A, B](matcher).asInstanceOf[this.type]
 }
 
@@ -22,7 +22,7 @@ import org.parboiled.Action
 import org.parboiled.Context
 import java.lang.String
 import Rule._
-import org.parboiled.support.{IndexRange, ValueStack}
+import org.parboiled.support.{DefaultValueStack, IndexRange, ValueStack}
 
 /**
  * The base class of all scala parser rules.
@@ -71,6 +71,9 @@ abstract class Rule {
 
   def memoMismatches: this.type = withMatcher(matcher.memoMismatches().asInstanceOf[Matcher])
 
+  def parallelAlternatives: this.type =
+    withMatcher(ParallelFirstOfMatcher.parallelize(matcher).asInstanceOf[Matcher])
+
   override def toString = getClass.getSimpleName + ": " + matcher.toString
 
   protected def withMatcher(matcher: Matcher): this.type
@@ -245,5 +248,133 @@ object Rule {
       case _ => f(t, u, v, w, x, y, z)
     }
   }
-}
 
+  // the primitive lanes of the value stack: as long as the value stack is a DefaultValueStack the following helpers
+  // move Int, Long and Double values on and off the stack without boxing them
+
+  private[parboiled] def pushInt(vs: ValueStack[Any], value: Int): Unit = vs match {
+    case stack: DefaultValueStack[_] => stack.pushInt(value)
+    case _ => vs.push(value)
+  }
+
+  private[parboiled] def popInt(vs: ValueStack[Any]): Int = vs match {
+    case stack: DefaultValueStack[_] => stack.popInt()
+    case _ => vs.pop.asInstanceOf[Int]
+  }
+
+  private[parboiled] def pushLong(vs: ValueStack[Any], value: Long): Unit = vs match {
+    case stack: DefaultValueStack[_] => stack.pushLong(value)
+    case _ => vs.push(value)
+  }
+
+  private[parboiled] def popLong(vs: ValueStack[Any]): Long = vs match {
+    case stack: DefaultValueStack[_] => stack.popLong()
+    case _ => vs.pop.asInstanceOf[Long]
+  }
+
+  private[parboiled] def pushDouble(vs: ValueStack[Any], value: Double): Unit = vs match {
+    case stack: DefaultValueStack[_] => stack.pushDouble(value)
+    case _ => vs.push(value)
+  }
+
+  private[parboiled] def popDouble(vs: ValueStack[Any]): Double = vs match {
+    case stack: DefaultValueStack[_] => stack.popDouble()
+    case _ => vs.pop.asInstanceOf[Double]
+  }
+
+  private[parboiled] def mapInt(f: Int => Int): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      pushInt(vs, f(popInt(vs)))
+      true
+    }
+  }
+
+  private[parboiled] def reduceInt(f: (Int, Int) => Int): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      val b = popInt(vs)
+      pushInt(vs, f(popInt(vs), b))
+      true
+    }
+  }
+
+  private[parboiled] def mapLong(f: Long => Long): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      pushLong(vs, f(popLong(vs)))
+      true
+    }
+  }
+
+  private[parboiled] def reduceLong(f: (Long, Long) => Long): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      val b = popLong(vs)
+      pushLong(vs, f(popLong(vs), b))
+      true
+    }
+  }
+
+  private[parboiled] def mapDouble(f: Double => Double): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      pushDouble(vs, f(popDouble(vs)))
+      true
+    }
+  }
+
+  private[parboiled] def reduceDouble(f: (Double, Double) => Double): Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val vs = context.getValueStack
+      val b = popDouble(vs)
+      pushDouble(vs, f(popDouble(vs), b))
+      true
+    }
+  }
+
+  private[parboiled] val ParseInt: Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      val value = parseLong(context)
+      if (value.toInt != value) throw new NumberFormatException("Value out of Int range: \"" + context.getMatch + '"')
+      pushInt(context.getValueStack, value.toInt)
+      true
+    }
+  }
+
+  private[parboiled] val ParseLong: Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      pushLong(context.getValueStack, parseLong(context))
+      true
+    }
+  }
+
+  private[parboiled] val ParseDouble: Action[Any] = new Action[Any] {
+    def run(context: Context[Any]) = {
+      pushDouble(context.getValueStack, java.lang.Double.parseDouble(context.getMatch))
+      true
+    }
+  }
+
+  // parses the input text matched by the immediately preceding rule as an optionally signed decimal number,
+  // directly from the input buffer, i.e. without creating a String
+  private def parseLong(context: Context[Any]): Long = {
+    val buffer = context.getInputBuffer
+    val end = context.getMatchEndIndex
+    var ix = context.getMatchStartIndex
+    val negative = ix < end && buffer.charAt(ix) == '-'
+    if (negative || ix < end && buffer.charAt(ix) == '+') ix += 1
+    if (ix == end) throw new NumberFormatException("For input string: \"" + context.getMatch + '"')
+    var value = 0L // accumulated negatively in order to also cover Long.MinValue
+    while (ix < end) {
+      val digit = buffer.charAt(ix) - '0'
+      if (digit < 0 || digit > 9 || value < (Long.MinValue + digit) / 10)
+        throw new NumberFormatException("For input string: \"" + context.getMatch + '"')
+      value = value * 10 - digit
+      ix += 1
+    }
+    if (negative) value
+    else if (value != Long.MinValue) -value
+    else throw new NumberFormatException("For input string: \"" + context.getMatch + '"')
+  }
+}
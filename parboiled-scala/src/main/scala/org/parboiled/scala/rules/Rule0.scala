@@ -51,6 +51,25 @@ class Rule0(val matcher: Matcher) extends Rule {
   def ~~%[Y, Z](f: (Y, Z) => Unit) = new PopRule2[Y, Z](append(ok(exec(stack2(Pop), f))))
   def ~~%[X, Y, Z](f: (X, Y, Z) => Unit) = new PopRule3[X, Y, Z](append(ok(exec(stack3(Pop), f))))
   def |(other: Rule0) = new Rule0(appendChoice(other))
+
+  /**
+   * Parses the input text matched by the immediately preceding rule as a decimal Int and pushes it onto the value
+   * stack without boxing it.
+   */
+  def asInt = new Rule1[Int](append(ParseInt))
+
+  /**
+   * Parses the input text matched by the immediately preceding rule as a decimal Long and pushes it onto the value
+   * stack without boxing it.
+   */
+  def asLong = new Rule1[Long](append(ParseLong))
+
+  /**
+   * Parses the input text matched by the immediately preceding rule as a Double and pushes it onto the value
+   * stack without boxing it.
+   */
+  def asDouble = new Rule1[Double](append(ParseDouble))
+
   def -(upperBound: String): Rule0 = throw new IllegalArgumentException("char range operator '-' only allowed on single character strings")
   protected def withMatcher(matcher: Matcher) = new Rule0(matcher).asInstanceOf[this.type]
 }
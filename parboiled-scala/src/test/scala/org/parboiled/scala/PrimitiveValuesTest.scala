@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.scala
+
+import org.testng.annotations.Test
+import org.scalatestplus.testng.TestNGSuiteLike
+import org.testng.Assert.assertEquals
+
+class PrimitiveValuesTest extends TestNGSuiteLike {
+
+  class CsvParser extends Parser {
+    def Line = rule { Number ~ zeroOrMore("," ~ Number reduceLong (_ + _)) ~ EOI }
+
+    def Number = rule { SignedDigits.asLong }
+
+    def SignedDigits = rule { optional("-") ~ oneOrMore("0" - "9") }
+
+    def Scaled = rule { (Integer ~ "*" ~ Integer reduceInt (_ * _) mapInt (_ + 1)) ~ EOI }
+
+    def Integer = rule { oneOrMore("0" - "9").asInt }
+
+    def Ratio = rule { Decimal ~ "/" ~ Decimal ~ EOI reduceDouble (_ / _) }
+
+    def Decimal = rule { DecimalDigits.asDouble }
+
+    def DecimalDigits = rule { oneOrMore("0" - "9") ~ optional("." ~ oneOrMore("0" - "9")) }
+
+    def Answer = rule { pushInt(6 * 7) ~ pushInt(2) ~~> ((a: Int, b: Int) => a - b) }
+  }
+
+  val parser = new CsvParser
+
+  @Test
+  def testPrimitiveLanes(): Unit = {
+    assertEquals(BasicParseRunner(parser.Line).run("1,-20,9223372036854775000").result, Some(9223372036854774981L))
+    assertEquals(BasicParseRunner(parser.Scaled).run("6*7").result, Some(43))
+    assertEquals(BasicParseRunner(parser.Ratio).run("1/0.25").result, Some(4.0))
+  }
+
+  @Test
+  def testMixingWithBoxedValues(): Unit = {
+    assertEquals(BasicParseRunner(parser.Answer).run("").result, Some(40))
+  }
+
+  @Test(expectedExceptions = Array(classOf[NumberFormatException]), expectedExceptionsMessageRegExp = ".*99999999999.*")
+  def testOverflow(): Unit = {
+    try BasicParseRunner(parser.Scaled).run("99999999999*2")
+    catch {
+      case e: RuntimeException if e.getCause != null => throw e.getCause
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.scala
+
+import org.testng.annotations.Test
+import org.scalatestplus.testng.TestNGSuiteLike
+import org.testng.Assert.{assertEquals, assertNotSame, assertSame, assertTrue}
+import org.parboiled.scala.parserunners.ReportingParseRunner
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+class RuleCachingTest extends TestNGSuiteLike {
+
+  class CachingParser extends Parser {
+    def Digit = rule { "0" - "9" }
+    def Letter = rule { "a" - "z" }
+    def Both = rule { Digit ~ Letter }
+    def Labeled = rule("Custom", SuppressSubnodes) { Letter ~ Digit }
+    def $plus$plus = rule { Both ~ Labeled }
+  }
+
+  @Test
+  def testRuleIdentity(): Unit = {
+    val parser = new CachingParser
+    assertSame(parser.Digit.matcher, parser.Digit.matcher)
+    assertSame(parser.Both.matcher.getChildren.get(0), parser.Digit.matcher)
+    assertNotSame(parser.Digit.matcher, parser.Letter.matcher)
+    assertNotSame(parser.Digit.matcher, new CachingParser().Digit.matcher)
+  }
+
+  class SlowParser extends Parser {
+    val constructing = new CountDownLatch(1)
+    val fetched = new CountDownLatch(1)
+    def List: Rule0 = rule { Item ~ zeroOrMore("," ~ Item) }
+    def Item: Rule0 = rule {
+      constructing.countDown()
+      fetched.await(200, TimeUnit.MILLISECONDS) // give the other thread the chance to see the unfinished rule
+      "a" | "[" ~ List ~ "]"
+    }
+  }
+
+  // fetches the List rule as soon as the construction of the rule graph has started on another thread
+  class ListFetcher(parser: SlowParser) extends Thread {
+    @volatile var rule: Rule0 = _
+
+    override def run(): Unit = {
+      parser.constructing.await()
+      rule = parser.List
+      parser.fetched.countDown()
+    }
+  }
+
+  @Test
+  def testConcurrentRuleConstruction(): Unit = {
+    val parser = new SlowParser
+    val other = new ListFetcher(parser)
+    other.start()
+    val rule = parser.List
+    other.join()
+    assertSame(other.rule.matcher, rule.matcher) // the other thread waited for the construction to complete
+    assertTrue(ReportingParseRunner(other.rule).run("a,[a,a]").matched)
+  }
+
+  @Test
+  def testRuleLabels(): Unit = {
+    val parser = new CachingParser
+    assertEquals(parser.Digit.matcher.getLabel, "Digit")
+    assertEquals(parser.Both.matcher.getLabel, "Both")
+    assertEquals(parser.Labeled.matcher.getLabel, "Custom")
+    assertEquals(parser.$plus$plus.matcher.getLabel, "$plus$plus")
+  }
+
+}